@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * The parsers and synthetic input lines shared by the benchmarks. The benchmarks live in the
+ * package of the parsers so that they call the same methods as the command line does.
+ */
+final class BenchmarkInput {
+  private static final int UNIVERSE = 1 << 22;
+
+  private BenchmarkInput() {}
+
+  /**
+   * Returns the parser of a sketch type, configured as by the command line. hll is given
+   * "-lgk lgK", the other types "-k 2^lgK".
+   * @param type the sketch type, e.g. "hll", with its options if any, e.g. "quant --kll"
+   * @param lgK log2 of the sketch size parameter
+   * @return the parser
+   */
+  @SuppressWarnings("unchecked")
+  static SketchCommandLineParser<Object> newParser(final String type, final int lgK) {
+    final SketchCommandLineParser<Object> parser =
+        (SketchCommandLineParser<Object>) SketchCommandLineParser.newParser(type.split(" "));
+    if (parser == null) { throw new IllegalArgumentException("Unrecognized Sketch Type: " + type); }
+    parser.parseCommandLine(type.equals("hll")
+        ? new String[] {"-lgk", Integer.toString(lgK)}
+        : new String[] {"-k", Integer.toString(1 << lgK)});
+    return parser;
+  }
+
+  /**
+   * Returns lines as a sketch type reads them. Items are skewed, a few of them frequent and most
+   * of them rare, as in logs of user ids:
+   *
+   * <ul>
+   * <li>hll, theta and freq: an item id, e.g. "user-12345"</li>
+   * <li>quant and quant --kll: a log-normal latency in milliseconds, e.g. "23.417"</li>
+   * <li>rsamp: a numeric item id</li>
+   * <li>vsamp: a weight and an item id separated by a tab</li>
+   * </ul>
+   *
+   * @param type the sketch type, e.g. "hll"
+   * @param n the number of lines
+   * @param seed the random seed
+   * @return the UTF-8 lines, each ending with a newline
+   */
+  static byte[] lines(final String type, final int n, final long seed) {
+    final Random random = new Random(seed);
+    final StringBuilder sb = new StringBuilder(n * 12);
+    for (int i = 0; i < n; i++) {
+      final long id = (long) (UNIVERSE * Math.pow(random.nextDouble(), 4));
+      switch (type) {
+        case "quant":
+        case "quant --kll":
+          sb.append(Math.round(Math.exp(3 + random.nextGaussian()) * 1000) / 1000.0);
+          break;
+        case "rsamp":
+          sb.append(id);
+          break;
+        case "vsamp":
+          sb.append(1 + random.nextInt(100)).append('\t').append("user-").append(id);
+          break;
+        default:
+          sb.append("user-").append(id);
+          break;
+      }
+      sb.append('\n');
+    }
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Builds a sketch from the given lines, as from stdin.
+   * @param parser the parser of the sketch type
+   * @param lines the UTF-8 lines
+   * @return the sketch
+   */
+  static Object sketch(final SketchCommandLineParser<Object> parser, final byte[] lines) {
+    try (LineReader lr = LineReader.of(Channels.newChannel(new ByteArrayInputStream(lines)),
+        LineReader.DEFAULT_BUFFER_BYTES)) {
+      return parser.updateSketch(lr);
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
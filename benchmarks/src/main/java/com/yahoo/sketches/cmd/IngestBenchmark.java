@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lines per second read from a file into a new sketch by updateSketch, as by "-d FILE".
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IngestBenchmark {
+  static final int LINES = 1 << 20;
+
+  @Param({"hll", "theta", "quant", "quant --kll", "freq", "rsamp", "vsamp"})
+  String type;
+
+  @Param({"10", "12", "14"})
+  int lgK;
+
+  private SketchCommandLineParser<Object> parser;
+  private Path file;
+
+  @Setup
+  public void setUp() throws IOException {
+    parser = BenchmarkInput.newParser(type, lgK);
+    file = Files.createTempFile("ds-bench", ".txt");
+    Files.write(file, BenchmarkInput.lines(type, LINES, 1));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LINES)
+  public Object updateSketch() throws IOException {
+    try (LineReader lr = LineReader.open(file.toString())) {
+      return parser.updateSketch(lr);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Merges per second of the given number of input sketches by mergeSketches, as by "-s FILES".
+ * Each input sketch holds a different sample of the same skewed items.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MergeBenchmark {
+  static final int LINES_PER_INPUT = 256;
+
+  @Param({"hll", "theta", "quant", "quant --kll", "freq", "rsamp", "vsamp"})
+  String type;
+
+  @Param({"10", "12", "14"})
+  int lgK;
+
+  @Param({"2", "100", "10000"})
+  int inputs;
+
+  private SketchCommandLineParser<Object> parser;
+  private final List<Object> sketches = new ArrayList<>();
+
+  @Setup
+  public void setUp() {
+    parser = BenchmarkInput.newParser(type, lgK);
+    for (int i = 0; i < inputs; i++) {
+      sketches.add(BenchmarkInput.sketch(parser, BenchmarkInput.lines(type, LINES_PER_INPUT, i)));
+    }
+  }
+
+  @Benchmark
+  public Object mergeSketches() {
+    parser.sketchList.clear();
+    parser.sketchList.addAll(sketches);
+    parser.mergeSketches();
+    return parser.sketchList.get(parser.sketchList.size() - 1);
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Default queries per second by queryCurrentSketch, including formatting the output, for a
+ * sketch of {@link #LINES} lines. The output is discarded.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+  static final int LINES = 1 << 18;
+
+  @Param({"hll", "theta", "quant", "quant --kll", "freq", "rsamp", "vsamp"})
+  String type;
+
+  @Param({"10", "12", "14"})
+  int lgK;
+
+  private SketchCommandLineParser<Object> parser;
+
+  @Setup
+  public void setUp() {
+    parser = BenchmarkInput.newParser(type, lgK);
+    parser.sketchList.add(BenchmarkInput.sketch(parser, BenchmarkInput.lines(type, LINES, 1)));
+    parser.out = new PrintStream(new OutputStream() {
+      @Override
+      public void write(final int b) {}
+
+      @Override
+      public void write(final byte[] b, final int off, final int len) {}
+    });
+  }
+
+  @Benchmark
+  public void queryCurrentSketch() {
+    parser.queryCurrentSketch();
+  }
+}
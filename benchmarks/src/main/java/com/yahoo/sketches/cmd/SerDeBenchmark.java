@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sketches per second written by serializeSketch, as by "-o FILE", and read by
+ * deserializeSketch, as by "-s FILES", for a sketch of {@link #LINES} lines. The serialized size
+ * of each sketch is printed in the setup, e.g. to compare "quant" and "quant --kll".
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerDeBenchmark {
+  static final int LINES = 1 << 18;
+
+  @Param({"hll", "theta", "quant", "quant --kll", "freq", "rsamp", "vsamp"})
+  String type;
+
+  @Param({"10", "12", "14"})
+  int lgK;
+
+  private SketchSerDe<Object> serDe;
+  private Object sketch;
+  private byte[] bytes;
+
+  @Setup
+  public void setUp() {
+    final SketchCommandLineParser<Object> parser = BenchmarkInput.newParser(type, lgK);
+    serDe = parser.serDe();
+    sketch = BenchmarkInput.sketch(parser, BenchmarkInput.lines(type, LINES, 1));
+    bytes = serDe.serializeSketch(sketch);
+    System.out.println(type + " lgK=" + lgK + ": " + bytes.length + " serialized bytes");
+  }
+
+  @Benchmark
+  public byte[] serializeSketch() {
+    return serDe.serializeSketch(sketch);
+  }
+
+  @Benchmark
+  public Object deserializeSketch() {
+    return serDe.deserializeSketch(bytes);
+  }
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static com.yahoo.sketches.Util.TAB;
+import static java.lang.Math.log10;
+import static java.lang.Math.pow;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.apache.commons.cli.Option;
+
+/**
+ * The options and queries of "ds quant", shared by the classic quantiles sketch of
+ * {@link QuantilesCL} and the KLL sketch of {@link KllCL}. The queries are answered from the
+ * {@link QuantilesView} of the sketch.
+ *
+ * @param <T> the sketch type
+ */
+abstract class AbstractQuantilesCL<T> extends SketchCommandLineParser<T>
+    implements BinaryInput<T> {
+
+  private static final int DEFAULT_NUM_BINS = 10;
+  private static final DecimalFormatSymbols SYMBOLS =
+      DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+  private static final char DECIMAL_SEPARATOR = SYMBOLS.getDecimalSeparator();
+  private static final boolean ASCII_DIGITS = SYMBOLS.getZeroDigit() == '0';
+
+  AbstractQuantilesCL() {
+    super();
+    // input options
+    options.addOption(Option.builder("k")
+        .desc("parameter k")
+        .hasArg()
+        .build());
+    options.addOption(Option.builder()
+        .longOpt("kll")
+        .desc("use the KLL sketch of floats, which is smaller than the classic sketch of doubles "
+            + "for the same accuracy and faster to update. Its sketch files are not compatible "
+            + "with those of the classic sketch.")
+        .build());
+    options.addOption(Option.builder()
+        .longOpt("input-format")
+        .desc("read the input as packed little-endian binary values instead of text lines: "
+            + "f64le (double), i64le (long) or f32le (float)")
+        .hasArg()
+        .argName("FORMAT")
+        .build());
+    options.addOption(Option.builder("w")
+        .longOpt("weights")
+        .desc("Each line is a value and an integer count separated by a tab, comma, or spaces, "
+            + "e.g. a bucket of a histogram. If there is only one token it is the value with "
+            + "count = 1. A line costs about the same whatever its count.")
+        .build());
+    // output options
+    options.addOption(Option.builder("r")
+        .longOpt("rank2value")
+        .desc("query values with ranks from list DOUBLES")
+        .hasArgs() //unlimited
+        .argName("DOUBLES")
+        .build());
+    options.addOption(Option.builder("R")
+        .longOpt("rank2value-file")
+        .desc("query values with ranks from FILE")
+        .hasArg()
+        .argName("FILE")
+        .build());
+    options.addOption(Option.builder("v")
+        .longOpt("value2rank")
+        .desc("query ranks with values from list DOUBLES")
+        .hasArgs() //unlimited
+        .argName("DOUBLES")
+        .build());
+    options.addOption(Option.builder("V")
+        .longOpt("value2rank-file")
+        .desc("query ranks with values from FILE")
+        .hasArg()
+        .argName("FILE")
+        .build());
+    options.addOption(Option.builder("b")
+        .longOpt("number-histogram-bars")
+        .desc("number of bars in the histogram")
+        .hasArg()
+        .argName("INT")
+        .build());
+    options.addOption(Option.builder("h")
+        .longOpt("query-histogram")
+        .desc("query histogram")
+        .build());
+    options.addOption(Option.builder("lh")
+        .longOpt("query-loghistogram")
+        .hasArg()
+        .argName("Zero Substitution")
+        .desc("query log scale histogram")
+        .build());
+  }
+
+  @Override
+  protected void showHelp() {
+    printHelp("ds quant");
+  }
+
+  @Override
+  boolean parseCommandLine(final String[] args) {
+    if (!super.parseCommandLine(args)) { return false; }
+    if (cl.hasOption("w") && cl.hasOption("input-format")) {
+      throw new IllegalArgumentException("-w reads text lines, and cannot be used with "
+          + "--input-format");
+    }
+    return true;
+  }
+
+  /**
+   * @param line the reader positioned at a "-w" line
+   * @param valueEnd the end of the value token
+   * @return the count that follows the value, 1 if there is none
+   */
+  static long parseCount(final LineReader line, final int valueEnd) {
+    final int countStart = LineParser.skipSeparators(line, valueEnd);
+    if (countStart == line.length()) { return 1; }
+    final long count = LineParser.parseLong(line, countStart, line.length());
+    if (count < 0) {
+      throw new IllegalArgumentException("Negative count: " + line);
+    }
+    return count;
+  }
+
+  /**
+   * @param sketch the sketch
+   * @return the sorted view of the sketch
+   */
+  abstract QuantilesView view(T sketch);
+
+  /**
+   * @param sketch the sketch
+   * @param splitPoints the increasing split points
+   * @return the fractions of the stream in each interval between the split points, as by the
+   * getPMF of the sketch
+   */
+  abstract double[] getPMF(T sketch, double[] splitPoints);
+
+  @Override
+  protected void mergeSketches() {
+    sketchList.add(union(sketchList));
+  }
+
+  @Override
+  protected void queryCurrentSketch() {
+    if (sketchList.size() > 0) {
+      final T sketch = sketchList.get(sketchList.size() - 1);
+      final QuantilesView view = view(sketch);
+      boolean optionChosen = false;
+
+      if (cl.hasOption("h")) { //Histogram
+        optionChosen = true;
+        printHistogram(sketch, view,
+            getSplits(view.getMinValue(), view.getMaxValue(), splitPoints()));
+      }
+
+      if (cl.hasOption("lh")) { //log Histogram
+        optionChosen = true;
+        final double zeroSub = Double.parseDouble(cl.getOptionValue("lh"));
+        printHistogram(sketch, view, getLogSplits(view, splitPoints(), zeroSub));
+      }
+
+      final QueryPrinter printer = new QueryPrinter(view, out);
+
+      if (cl.hasOption("r")) { //ranks to value from list
+        optionChosen = true;
+        println("\nRank" + TAB + "Value");
+        for (String rank : cl.getOptionValues("r")) {
+          printer.rankToValue(rank, Double.parseDouble(rank));
+        }
+        printer.flush();
+      }
+
+      if (cl.hasOption("R")) { //ranks to value from file
+        optionChosen = true;
+        println("\nRank" + TAB + "Value");
+        queryFile(cl.getOptionValue("R"),
+            line -> printer.rankToValue(line.toString(),
+                LineParser.parseDouble(line, 0, line.length())));
+        printer.flush();
+      }
+
+      if (cl.hasOption("v")) { //values to ranks from list
+        optionChosen = true;
+        final String[] values = cl.getOptionValues("v");
+        final double[] valuesArray =
+            Arrays.stream(values).mapToDouble(Double::parseDouble).toArray();
+        Arrays.sort(valuesArray);
+        println("\nValue" + TAB + "Rank");
+        for (double value : valuesArray) {
+          printer.valueToRank(value);
+        }
+        printer.flush();
+      }
+
+      if (cl.hasOption("V")) { //values to ranks from file, in file order
+        optionChosen = true;
+        println("\nValue" + TAB + "Rank");
+        queryFile(cl.getOptionValue("V"),
+            line -> printer.valueToRank(LineParser.parseDouble(line, 0, line.length())));
+        printer.flush();
+      }
+
+      // print deciles if no other option chosen
+      if (!optionChosen) {
+        final double[] ranks = new double[] {0, 0.1, 0.2, 0.3, 0.4, 0.5, 0.6, 0.7, 0.8, 0.9, 1.0};
+        println("Print deciles as default:");
+        println("\nRank" + TAB + "Value");
+        for (double rank : ranks) {
+          final double value = view.quantile(rank);
+          println(String.format("%.1f", rank) + TAB
+              + (view.hasFloats() ? Float.toString((float) value) : Double.toString(value)));
+        }
+      }
+    }
+  }
+
+  private int splitPoints() {
+    int splitPoints = DEFAULT_NUM_BINS - 1;
+    if (cl.hasOption("b")) {
+      splitPoints = Integer.parseInt(cl.getOptionValue("b")) - 1;
+    }
+    return splitPoints;
+  }
+
+  private void printHistogram(final T sketch, final QuantilesView view, final double[] splits) {
+    final long n = view.getN();
+    final double[] splitsArr = view.hasFloats() ? toFloats(splits) : splits;
+    final double[] histArr = getPMF(sketch, splitsArr);
+    println("\nValue" + TAB + "Freq");
+    final double min = view.getMinValue();
+    String splitVal = String.format("%,f", min);
+    String freqVal = String.format("%,d", (long)(histArr[0] * n));
+    println(splitVal + TAB + freqVal);
+    for (int i = 0; i < splitsArr.length; i++) {
+      splitVal = String.format("%,f", splitsArr[i]);
+      freqVal = String.format("%,d", (long)(histArr[i + 1] * n));
+      println(splitVal + TAB + freqVal);
+    }
+  }
+
+  /**
+   * @return the values rounded to floats, as a floats sketch holds them
+   */
+  private static double[] toFloats(final double[] values) {
+    final double[] floats = new double[values.length];
+    for (int i = 0; i < values.length; i++) {
+      floats[i] = (float) values[i];
+    }
+    return floats;
+  }
+
+  /**
+   * Streams the non-empty lines of a query file to the given query.
+   */
+  private void queryFile(final String fileName, final Consumer<LineReader> query) {
+    try (LineReader line = LineReader.open(resolve(fileName))) {
+      while (line.next()) {
+        if (line.length() > 0) { query.accept(line); }
+      }
+    } catch (final IOException e) {
+      printlnErr("File Read Error: " + fileName);
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Answers rank and value queries from the sorted view of a sketch and prints a line per query
+   * through a buffer. The answers come from the few thousand retained values of the sketch and
+   * their ranks, so their text is formatted once each and reused.
+   */
+  private static final class QueryPrinter {
+    private static final int BUFFER_CHARS = 1 << 16;
+
+    private final QuantilesView view;
+    private final PrintStream out;
+    private final Map<Double, String> valueText = new HashMap<>();
+    private final Map<Double, String> rankText = new HashMap<>();
+    private final StringBuilder sb = new StringBuilder(BUFFER_CHARS + 256);
+
+    QueryPrinter(final QuantilesView view, final PrintStream out) {
+      this.view = view;
+      this.out = out;
+    }
+
+    void rankToValue(final String text, final double rank) {
+      final String value = valueText.computeIfAbsent(view.quantile(rank),
+          AbstractQuantilesCL::formatValue);
+      sb.append(text).append(TAB).append(value).append(LS);
+      if (sb.length() >= BUFFER_CHARS) { flush(); }
+    }
+
+    void valueToRank(final double value) {
+      final String rank = rankText.computeIfAbsent(view.rank(value), r -> String.format("%.6f", r));
+      sb.append(formatValue(value)).append(TAB).append(rank).append(LS);
+      if (sb.length() >= BUFFER_CHARS) { flush(); }
+    }
+
+    void flush() {
+      out.print(sb);
+      out.flush();
+      sb.setLength(0);
+    }
+  }
+
+  /**
+   * @return the value as by String.format("%.2f", value), which rounds the decimal digits of
+   * Double.toString(value) half up, without a Formatter unless the value is in exponent notation
+   * or its hundredths reach 2^52, from where every double is a whole number, so that value * 100
+   * is rounded already and cannot tell whether the value has more than two decimals
+   */
+  static String formatValue(final double value) {
+    final double hundredths = value * 100;
+    if (!(Math.abs(hundredths) < (1L << 52))) { //also NaN
+      return String.format("%.2f", value);
+    }
+    long units = (long) hundredths;
+    if (units != hundredths) { //more than two decimals
+      final String digits = Double.toString(Math.abs(value));
+      final int point = digits.indexOf('.');
+      if ((point < 0) || (digits.indexOf('E') >= 0)) {
+        return String.format("%.2f", value);
+      }
+      units = 0;
+      for (int i = 0; i < (point + 2); i++) { //the integer digits and two decimals
+        final int index = (i < point) ? i : i + 1;
+        units = (units * 10) + ((index < digits.length()) ? digits.charAt(index) - '0' : 0);
+      }
+      if (((point + 3) < digits.length()) && (digits.charAt(point + 3) >= '5')) { units++; }
+      if (value < 0) { units = -units; }
+    }
+    if ((units == 0) || !ASCII_DIGITS) { //the sign of zero
+      return String.format("%.2f", value);
+    }
+    final long abs = Math.abs(units);
+    final long fraction = abs % 100;
+    return ((units < 0) ? "-" : "") + (abs / 100) + DECIMAL_SEPARATOR + (fraction / 10)
+        + (fraction % 10);
+  }
+
+  private static double[] getLogSplits(final QuantilesView view, final int splitPoints,
+      final double zeroSub) {
+    double min = view.getMinValue();
+    min = (min == 0) ? zeroSub : min;
+    if (min < 0) {
+      throw new IllegalArgumentException(
+          "Log Histogram cannot be produced with negative values in the stream.");
+    }
+    final double max = view.getMaxValue();
+    final double logMin = log10(min);
+    final double logMax = log10(max);
+    final double[] logArr = getSplits(logMin, logMax, splitPoints);
+    final double[] expArr = new double[logArr.length];
+    for (int i = 0; i < logArr.length; i++) {
+      expArr[i] = pow(10.0, logArr[i]);
+    }
+    return expArr;
+  }
+
+  private static double[] getSplits(final double min, final double max, final int splitPoints) {
+    final double range = max - min;
+    final double delta = range / (splitPoints + 1);
+    final double[] splits = new double[splitPoints];
+    for (int i = 0; i < splitPoints; i++) {
+      splits[i] = min + (delta * (i + 1));
+    }
+    return splits;
+  }
+
+}
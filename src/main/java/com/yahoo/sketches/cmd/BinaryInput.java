@@ -0,0 +1,26 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.io.IOException;
+
+/**
+ * Builds sketches from packed binary values instead of text lines. Implemented by the parsers of
+ * the sketch types of numbers, which add the "--input-format" option.
+ *
+ * @param <T> Sketch Type
+ */
+interface BinaryInput<T> {
+
+  /**
+   * Updates a new sketch from all values of the BinaryReader. Used instead of
+   * {@link SketchCommandLineParser#updateSketch(LineReader)} when "--input-format" is given.
+   * @param br the given BinaryReader
+   * @return the new sketch
+   * @throws IOException if reading from the BinaryReader fails
+   */
+  T updateSketch(BinaryReader br) throws IOException;
+}
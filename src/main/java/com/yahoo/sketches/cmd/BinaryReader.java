@@ -0,0 +1,231 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads packed little-endian numbers from a memory-mapped file or from a channel, e.g. an array
+ * of doubles written by another program. Each call to {@link #next()} advances to the next value,
+ * which is read from the current window without any text parsing.
+ */
+final class BinaryReader implements Closeable {
+  static final long MAP_WINDOW_BYTES = LineReader.MAP_WINDOW_BYTES;
+
+  /**
+   * The supported value formats, as given to "--input-format".
+   */
+  enum Format {
+    F64LE(Double.BYTES), I64LE(Long.BYTES), F32LE(Float.BYTES);
+
+    final int width;
+
+    Format(final int width) {
+      this.width = width;
+    }
+
+    /**
+     * @param name one of f64le, i64le or f32le, in any case
+     * @return the format of the given name
+     */
+    static Format of(final String name) {
+      for (Format format : values()) {
+        if (format.name().equalsIgnoreCase(name)) { return format; }
+      }
+      throw new IllegalArgumentException("Unrecognized input format: " + name
+          + ", expected f64le, i64le or f32le");
+    }
+  }
+
+  private final Format format;
+  private final int width;
+  private final ReadableByteChannel channel; //streamed input, null if mapped
+  private final FileChannel fileChannel;     //mapped input, null if streamed
+  private final long end;                    //end of the mapped byte range
+  private final boolean ownsChannel;
+  private long windowStart;                  //file position of window index 0, if mapped
+  private ByteBuffer window;
+  private boolean eof;
+  private int pos;                           //start of the next value in the window
+  private int valuePos;
+
+  private BinaryReader(final Format format, final ReadableByteChannel channel,
+      final FileChannel fileChannel, final long start, final long end, final boolean ownsChannel,
+      final ByteBuffer window) {
+    this.format = format;
+    this.width = format.width;
+    this.channel = channel;
+    this.fileChannel = fileChannel;
+    this.windowStart = start;
+    this.end = end;
+    this.ownsChannel = ownsChannel;
+    this.window = window.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Opens the given file. Regular files are memory-mapped, anything else (e.g., a named pipe)
+   * is streamed.
+   * @param fileName the file path
+   * @param format the value format
+   * @return a BinaryReader that owns and closes the file
+   * @throws IOException if the file cannot be opened
+   */
+  static BinaryReader open(final String fileName, final Format format) throws IOException {
+    final Path path = Paths.get(fileName);
+    final FileChannel fc = FileChannel.open(path, StandardOpenOption.READ);
+    if (!Files.isRegularFile(path)) {
+      return new BinaryReader(format, fc, null, 0, 0, true,
+          emptyWindow(LineReader.DEFAULT_BUFFER_BYTES));
+    }
+    return new BinaryReader(format, null, fc, 0, fc.size(), true, emptyWindow(0));
+  }
+
+  /**
+   * Reads the values of the byte range [start, end) of the given file channel through
+   * memory-mapped windows. The range should start at a value boundary, see
+   * {@link #splitValues(long, Format, int)}.
+   * @param fc the file channel, which is not closed by the returned BinaryReader
+   * @param start the first byte of the range
+   * @param end one past the last byte of the range
+   * @param format the value format
+   * @return a BinaryReader over the given range
+   */
+  static BinaryReader open(final FileChannel fc, final long start, final long end,
+      final Format format) {
+    return new BinaryReader(format, null, fc, start, end, false, emptyWindow(0));
+  }
+
+  /**
+   * Reads values from the given channel through a heap buffer of the given size.
+   * @param channel the source of bytes
+   * @param bufferBytes buffer size in bytes, at least the width of a value
+   * @param format the value format
+   * @return a BinaryReader that owns and closes the channel
+   */
+  static BinaryReader of(final ReadableByteChannel channel, final int bufferBytes,
+      final Format format) {
+    return new BinaryReader(format, channel, null, 0, 0, true,
+        emptyWindow(Math.max(bufferBytes, format.width)));
+  }
+
+  /**
+   * Splits a file of the given size into at most the given number of byte ranges of about equal
+   * size, each of which starts at a value boundary.
+   * @param size the file size in bytes
+   * @param format the value format
+   * @param parts the requested number of ranges
+   * @return the range boundaries: range i is [splits[i], splits[i + 1])
+   */
+  static long[] splitValues(final long size, final Format format, final int parts) {
+    final long values = size / format.width;
+    final int n = (int) Math.max(1, Math.min(parts, values));
+    final long[] splits = new long[n + 1];
+    for (int i = 1; i < n; i++) {
+      splits[i] = ((values * i) / n) * format.width;
+    }
+    splits[n] = size; //a trailing partial value is reported by the last range
+    return splits;
+  }
+
+  /**
+   * Advances to the next value.
+   * @return false if there are no more values
+   * @throws IOException if reading fails or the input ends within a value
+   */
+  boolean next() throws IOException {
+    if (((window.limit() - pos) < width) && !fill()) {
+      if (pos < window.limit()) {
+        throw new IOException("Input ends within a " + width + "-byte " + format + " value");
+      }
+      return false;
+    }
+    valuePos = pos;
+    pos += width;
+    return true;
+  }
+
+  /**
+   * @return the current value as a double
+   */
+  double doubleValue() {
+    switch (format) {
+      case F64LE: return window.getDouble(valuePos);
+      case F32LE: return window.getFloat(valuePos);
+      default: return window.getLong(valuePos);
+    }
+  }
+
+  /**
+   * @return the current value as a long
+   * @throws NumberFormatException if a floating-point value is not a whole number
+   */
+  long longValue() {
+    if (format == Format.I64LE) { return window.getLong(valuePos); }
+    final double d = doubleValue();
+    final long v = (long) d;
+    if (v != d) { throw new NumberFormatException("Not a long: " + d); }
+    return v;
+  }
+
+  @Override
+  public String toString() {
+    return (format == Format.I64LE) ? Long.toString(longValue()) : Double.toString(doubleValue());
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (ownsChannel) {
+      if (channel != null) { channel.close(); }
+      if (fileChannel != null) { fileChannel.close(); }
+    }
+  }
+
+  /**
+   * Makes more bytes available, keeping the partial value that starts at <i>pos</i>.
+   * On return <i>pos</i> points to the start of the partial value in the new window.
+   * @return false if the end of input has been reached
+   */
+  private boolean fill() throws IOException {
+    final int partial = window.limit() - pos;
+    if (fileChannel != null) {
+      final long partialStart = windowStart + pos;
+      if ((partialStart + width) > end) { return false; }
+      final long size = Math.min(MAP_WINDOW_BYTES, end - partialStart);
+      window = fileChannel.map(FileChannel.MapMode.READ_ONLY, partialStart, size)
+          .order(ByteOrder.LITTLE_ENDIAN);
+      windowStart = partialStart;
+      pos = 0;
+      return true;
+    }
+    if (eof) { return false; }
+    final byte[] arr = window.array();
+    System.arraycopy(arr, pos, arr, 0, partial);
+    window.limit(window.capacity()).position(partial);
+    pos = 0;
+    int n = 0;
+    while ((window.position() < width) && (n >= 0)) { //read at least one whole value
+      n = channel.read(window);
+    }
+    window.limit(window.position());
+    if (n < 0) { eof = true; }
+    return window.limit() >= width;
+  }
+
+  private static ByteBuffer emptyWindow(final int capacity) {
+    final ByteBuffer buf = ByteBuffer.allocate(capacity);
+    buf.limit(0);
+    return buf;
+  }
+}
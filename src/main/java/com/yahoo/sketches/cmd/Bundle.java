@@ -0,0 +1,365 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.yahoo.memory.Memory;
+
+/**
+ * A bundle: one file holding many serialized sketches of one type, each under a key, as written
+ * with "-o bundle:FILE" or "--per-file-output bundle:FILE" and read with "-s bundle:FILE".
+ * Opening a bundle reads only its index, and only the sketches selected with "--keys" are read
+ * after that, so a query of a few keys does not touch the rest of the file.
+ *
+ * <p>The file holds the magic number, the sketches back to back, the index and a trailer. The
+ * index holds the sketch type and the parameters the sketches were built with, then the key,
+ * offset and length of each sketch, sorted by key as unsigned bytes. The trailer holds the offset
+ * of the index and the magic number again. Numbers are big-endian.</p>
+ *
+ * <p>The parameters are the options that set the size of the sketches, as given, e.g. "-lgk 12",
+ * and empty for the defaults of the type. Sketches are added to a bundle only with the same type
+ * and parameters, and read from it only by a command of the same type that gives the same or no
+ * parameters.</p>
+ */
+final class Bundle implements Closeable {
+  static final String PREFIX = "bundle:";
+  private static final long MAGIC = 0x445342554E444C31L; //"DSBUNDL1"
+  private static final int TRAILER_BYTES = 16;
+
+  final Path path;
+  final String type;
+  final String params;
+  private final FileChannel fc;
+  private final byte[][] keys;
+  private final long[] offsets;
+  private final int[] lengths;
+
+  private Bundle(final Path path, final FileChannel fc, final ByteBuffer index) {
+    this.path = path;
+    this.fc = fc;
+    type = readString(index);
+    params = readString(index);
+    final int count = index.getInt();
+    keys = new byte[count][];
+    offsets = new long[count];
+    lengths = new int[count];
+    for (int i = 0; i < count; i++) {
+      keys[i] = new byte[index.getInt()];
+      index.get(keys[i]);
+      offsets[i] = index.getLong();
+      lengths[i] = index.getInt();
+    }
+  }
+
+  /**
+   * Opens a bundle and reads its index.
+   * @param path the bundle file
+   * @return the bundle
+   * @throws IOException if the file cannot be read or is not a bundle
+   */
+  static Bundle open(final Path path) throws IOException {
+    final FileChannel fc = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      final long size = fc.size();
+      final ByteBuffer trailer = (size < (8 + TRAILER_BYTES)) ? null
+          : read(fc, size - TRAILER_BYTES, TRAILER_BYTES);
+      if ((trailer == null) || (trailer.getLong(8) != MAGIC)
+          || (read(fc, 0, 8).getLong() != MAGIC)) {
+        throw new IOException("Not a sketch bundle: " + path);
+      }
+      final long indexOffset = trailer.getLong(0);
+      return new Bundle(path, fc,
+          read(fc, indexOffset, (int) (size - TRAILER_BYTES - indexOffset)));
+    } catch (final IOException | RuntimeException e) {
+      fc.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return the number of sketches
+   */
+  int size() {
+    return keys.length;
+  }
+
+  /**
+   * @param entry the index of a sketch, in key order
+   * @return the UTF-8 key bytes
+   */
+  byte[] key(final int entry) {
+    return keys[entry];
+  }
+
+  /**
+   * @param entry the index of a sketch, in key order
+   * @return the size of the serialized sketch
+   */
+  int length(final int entry) {
+    return lengths[entry];
+  }
+
+  /**
+   * Reads a serialized sketch, memory mapped if it has at least
+   * {@link SketchCommandLineParser#MAP_MIN_BYTES}, as for sketch files. Safe to call from several
+   * threads.
+   * @param entry the index of a sketch, in key order
+   * @return the serialized sketch
+   * @throws IOException if reading fails
+   */
+  Memory sketch(final int entry) throws IOException {
+    if (lengths[entry] < SketchCommandLineParser.MAP_MIN_BYTES) {
+      return Memory.wrap(read(fc, offsets[entry], lengths[entry]).array());
+    }
+    return Memory.wrap(fc.map(FileChannel.MapMode.READ_ONLY, offsets[entry], lengths[entry])
+        .order(ByteOrder.nativeOrder()));
+  }
+
+  /**
+   * Selects sketches by key. The selector is a comma-separated list of keys and inclusive key
+   * ranges FROM..TO, either end of which may be left out, e.g. <i>2018-06-01..2018-06-07,us</i>.
+   * Keys compare as unsigned UTF-8 bytes. A null selector selects every sketch.
+   * @param selector the selector, or null
+   * @return the indexes of the selected sketches, in key order
+   */
+  int[] select(final String selector) {
+    if (selector == null) {
+      final int[] all = new int[keys.length];
+      for (int i = 0; i < all.length; i++) { all[i] = i; }
+      return all;
+    }
+    final boolean[] selected = new boolean[keys.length];
+    int count = 0;
+    for (final String part : selector.split(",")) {
+      final int dots = part.indexOf("..");
+      final int from;
+      final int to;
+      if (dots < 0) {
+        from = lowerBound(part.getBytes(UTF_8));
+        to = ((from < keys.length) && Arrays.equals(keys[from], part.getBytes(UTF_8)))
+            ? from + 1 : from;
+      } else {
+        final String low = part.substring(0, dots);
+        final String high = part.substring(dots + 2);
+        from = low.isEmpty() ? 0 : lowerBound(low.getBytes(UTF_8));
+        to = high.isEmpty() ? keys.length : upperBound(high.getBytes(UTF_8));
+      }
+      for (int i = from; i < to; i++) {
+        if (!selected[i]) {
+          selected[i] = true;
+          count++;
+        }
+      }
+    }
+    final int[] entries = new int[count];
+    for (int i = 0, j = 0; i < selected.length; i++) {
+      if (selected[i]) { entries[j++] = i; }
+    }
+    return entries;
+  }
+
+  @Override
+  public void close() throws IOException {
+    fc.close();
+  }
+
+  /**
+   * Runs <i>ds bundle FILE [KEYS]</i>, which prints the sketch type and parameters of a bundle and
+   * the key and size of each of its sketches, or of those selected by KEYS.
+   * @param args the command line, starting with "bundle"
+   */
+  static void list(final String[] args) {
+    if ((args.length < 2) || (args.length > 3)) {
+      System.err.println("Usage: ds bundle FILE [KEYS], where KEYS is a comma-separated list of "
+          + "keys and inclusive key ranges FROM..TO");
+      return;
+    }
+    final String file = args[1].startsWith(PREFIX) ? args[1].substring(PREFIX.length()) : args[1];
+    try (Bundle bundle = open(Paths.get(file))) {
+      final int[] entries = bundle.select((args.length == 3) ? args[2] : null);
+      final StringBuilder sb = new StringBuilder();
+      sb.append("type\t").append(bundle.type).append(SketchCommandLineParser.LS);
+      sb.append("params\t").append(bundle.params).append(SketchCommandLineParser.LS);
+      sb.append("sketches\t").append(bundle.size()).append(SketchCommandLineParser.LS);
+      for (int entry : entries) {
+        sb.append(new String(bundle.key(entry), UTF_8)).append('\t').append(bundle.length(entry))
+            .append(SketchCommandLineParser.LS);
+      }
+      System.out.print(sb);
+    } catch (final IOException e) {
+      System.err.println("Bundle Error: " + e.getMessage());
+      throw new RuntimeException(e);
+    }
+  }
+
+  private int lowerBound(final byte[] key) {
+    int low = 0;
+    int high = keys.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (GroupBy.compareKeys(keys[mid], key) < 0) { low = mid + 1; } else { high = mid; }
+    }
+    return low;
+  }
+
+  private int upperBound(final byte[] key) {
+    int low = 0;
+    int high = keys.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (GroupBy.compareKeys(keys[mid], key) <= 0) { low = mid + 1; } else { high = mid; }
+    }
+    return low;
+  }
+
+  private static ByteBuffer read(final FileChannel fc, final long position, final int length)
+      throws IOException {
+    final ByteBuffer buf = ByteBuffer.allocate(length);
+    while (buf.hasRemaining()) {
+      if (fc.read(buf, position + buf.position()) < 0) {
+        throw new EOFException("Truncated sketch bundle");
+      }
+    }
+    buf.flip();
+    return buf;
+  }
+
+  /**
+   * @param params the parameters of a bundle
+   * @return the parameters, quoted, or "the defaults" if there are none
+   */
+  static String describe(final String params) {
+    return params.isEmpty() ? "the defaults" : "\"" + params + "\"";
+  }
+
+  private static String readString(final ByteBuffer buf) {
+    final byte[] bytes = new byte[buf.getInt()];
+    buf.get(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  /**
+   * Writes a bundle. The sketches of an existing bundle at the same path are kept, except those
+   * under keys that are written again, so a bundle can be extended one run at a time. The bundle
+   * is written to a temporary file beside it, which replaces it on {@link #commit()}.
+   */
+  static final class Writer implements Closeable {
+    private final Path path;
+    private final Path temp;
+    private final String type;
+    private final String params;
+    private final DataOutputStream out;
+    private final Map<byte[], long[]> index = new TreeMap<>(GroupBy::compareKeys); //offset, length
+    private long position;
+    private boolean committed;
+
+    /**
+     * @param path the bundle file
+     * @param type the sketch type, e.g. "hll"
+     * @param params the options the sketches are built with, e.g. "-lgk 12"
+     * @throws IOException if the temporary file cannot be created
+     */
+    Writer(final Path path, final String type, final String params) throws IOException {
+      this.path = path;
+      this.type = type;
+      this.params = params;
+      temp = path.resolveSibling(path.getFileName() + ".tmp");
+      out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)));
+      out.writeLong(MAGIC);
+      position = 8;
+    }
+
+    /**
+     * Adds a sketch.
+     * @param key the UTF-8 key bytes, which must not have been added already
+     * @param sketch the serialized sketch
+     * @throws IOException if writing fails
+     */
+    synchronized void add(final byte[] key, final byte[] sketch) throws IOException {
+      if (index.put(key, new long[] {position, sketch.length}) != null) {
+        throw new IllegalArgumentException("Duplicate bundle key: " + new String(key, UTF_8));
+      }
+      out.write(sketch);
+      position += sketch.length;
+    }
+
+    /**
+     * Copies the sketches of the existing bundle that were not added again, writes the index and
+     * replaces the bundle with the new file.
+     * @throws IOException if reading the existing bundle or writing fails
+     */
+    void commit() throws IOException {
+      if (Files.exists(path)) {
+        try (Bundle old = open(path)) {
+          if (!old.type.equals(type)) {
+            throw new IllegalArgumentException("Bundle " + path + " holds " + old.type
+                + " sketches, not " + type);
+          }
+          if (!old.params.equals(params)) {
+            throw new IllegalArgumentException("Bundle " + path + " holds sketches built with "
+                + describe(old.params) + ", not " + describe(params));
+          }
+          for (int i = 0; i < old.size(); i++) {
+            if (!index.containsKey(old.key(i))) {
+              add(old.key(i), read(old.fc, old.offsets[i], old.lengths[i]).array());
+            }
+          }
+        }
+      }
+      final long indexOffset = position;
+      writeString(out, type);
+      writeString(out, params);
+      out.writeInt(index.size());
+      for (Map.Entry<byte[], long[]> entry : index.entrySet()) {
+        out.writeInt(entry.getKey().length);
+        out.write(entry.getKey());
+        out.writeLong(entry.getValue()[0]);
+        out.writeInt((int) entry.getValue()[1]);
+      }
+      out.writeLong(indexOffset);
+      out.writeLong(MAGIC);
+      out.close();
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      committed = true;
+    }
+
+    /**
+     * Deletes the temporary file if the bundle was not committed.
+     */
+    @Override
+    public void close() throws IOException {
+      if (!committed) {
+        out.close();
+        Files.deleteIfExists(temp);
+      }
+    }
+
+    private static void writeString(final DataOutputStream out, final String s)
+        throws IOException {
+      final byte[] bytes = s.getBytes(UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+}
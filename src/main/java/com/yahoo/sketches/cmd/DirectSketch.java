@@ -0,0 +1,31 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import com.yahoo.memory.WritableMemory;
+
+/**
+ * Updates a sketch in place in the memory mapped "-o" file. Implemented by the parsers of the
+ * sketch types that can be updated off-heap, which then also take the "--direct" option.
+ *
+ * @param <T> Sketch Type
+ */
+interface DirectSketch<T> {
+
+  /**
+   * Returns a LineUpdater that feeds lines into the updatable sketch held in the given memory.
+   * @param mem the memory mapped "-o" file
+   * @param create true if the file is new, so that the sketch must be created in it, false if it
+   * holds a sketch from an earlier "--direct" run that is to be updated further
+   * @return the LineUpdater of the sketch in the memory
+   */
+  LineUpdater<T> newDirectUpdater(WritableMemory mem, boolean create);
+
+  /**
+   * @return the size of the memory needed by a new sketch at its largest
+   */
+  long directSketchBytes();
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Finds one field of a line by scanning the line's bytes up to the field, without splitting the
+ * line or building a JSON tree.
+ *
+ * <p>A numeric field selects a delimited column, counting from 1. A field that starts with a
+ * double quote is read up to the closing quote, so it may contain the delimiter; doubled quotes
+ * inside it are not collapsed.</p>
+ *
+ * <p>Any other field is the key of a member of the top-level object of a JSON line. String
+ * values are found without their quotes and with escape sequences as written. Numbers,
+ * booleans, objects and arrays are found as written. Members with a null value are not
+ * found.</p>
+ */
+final class FieldLocator {
+  private static final byte QUOTE = '"';
+  private static final byte ESCAPE = '\\';
+
+  private final int column;      //1-based column, or 0 for a JSON key
+  private final byte delimiter;
+  private final byte[] key;      //UTF-8 JSON key, or null for a column
+  private int fieldStart;
+  private int fieldEnd;
+
+  /**
+   * @param field a column number counting from 1, or a JSON key
+   * @param delimiter the column delimiter, an ASCII character, which is one byte of a UTF-8 line
+   */
+  FieldLocator(final String field, final char delimiter) {
+    if (delimiter > 0x7F) {
+      throw new IllegalArgumentException("Delimiter must be an ASCII character: " + delimiter);
+    }
+    this.delimiter = (byte) delimiter;
+    if (field.matches("[0-9]+")) {
+      column = Integer.parseInt(field);
+      if (column < 1) { throw new IllegalArgumentException("Columns count from 1: " + field); }
+      key = null;
+    } else {
+      column = 0;
+      key = field.getBytes(UTF_8);
+    }
+  }
+
+  /**
+   * Finds the field in the current line of the given LineReader.
+   * @param line the given LineReader
+   * @return false if the line does not have the field
+   */
+  boolean find(final LineReader line) {
+    return (key == null) ? findColumn(line) : findJsonMember(line);
+  }
+
+  /**
+   * @return the first byte offset of the field found by {@link #find(LineReader)}
+   */
+  int start() {
+    return fieldStart;
+  }
+
+  /**
+   * @return one past the last byte offset of the field found by {@link #find(LineReader)}
+   */
+  int end() {
+    return fieldEnd;
+  }
+
+  private boolean findColumn(final LineReader line) {
+    final int len = line.length();
+    int i = 0;
+    for (int col = 1; col < column; col++) { //skip the preceding columns
+      i = endOfColumn(line, i, len);
+      if (i >= len) { return false; }
+      i++; //skip the delimiter
+    }
+    if ((i < len) && (line.byteAt(i) == QUOTE)) {
+      final int end = endOfQuoted(line, i, len);
+      fieldStart = i + 1;
+      fieldEnd = ((end > fieldStart) && (line.byteAt(end - 1) == QUOTE)) ? end - 1 : len;
+    } else {
+      fieldStart = i;
+      fieldEnd = endOfColumn(line, i, len);
+    }
+    return true;
+  }
+
+  /** @return the index of the delimiter that ends the column starting at i, or len */
+  private int endOfColumn(final LineReader line, final int i, final int len) {
+    int j = ((i < len) && (line.byteAt(i) == QUOTE)) ? endOfQuoted(line, i, len) : i;
+    while ((j < len) && (line.byteAt(j) != delimiter)) { j++; }
+    return j;
+  }
+
+  /** @return the index just past the quote that closes the quoted column starting at i */
+  private static int endOfQuoted(final LineReader line, final int i, final int len) {
+    int j = i + 1;
+    while (j < len) {
+      if (line.byteAt(j) == QUOTE) {
+        if (((j + 1) < len) && (line.byteAt(j + 1) == QUOTE)) {
+          j += 2; //doubled quote
+          continue;
+        }
+        return j + 1;
+      }
+      j++;
+    }
+    return len;
+  }
+
+  private boolean findJsonMember(final LineReader line) {
+    final int len = line.length();
+    int i = skipWhitespace(line, 0, len);
+    if ((i >= len) || (line.byteAt(i) != '{')) { return false; }
+    i++;
+    while (true) {
+      i = skipWhitespace(line, i, len);
+      if ((i >= len) || (line.byteAt(i) != QUOTE)) { return false; }
+      final int keyStart = i + 1;
+      i = skipString(line, i, len);
+      final boolean match = keyEquals(line, keyStart, i - 1);
+      i = skipWhitespace(line, i, len);
+      if ((i >= len) || (line.byteAt(i) != ':')) { return false; }
+      i = skipWhitespace(line, i + 1, len);
+      if (i >= len) { return false; }
+      final int valueStart = i;
+      i = skipValue(line, i, len);
+      if (match) {
+        if (line.byteAt(valueStart) == QUOTE) {
+          fieldStart = valueStart + 1;
+          fieldEnd = Math.max(fieldStart, i - 1);
+          return true;
+        }
+        fieldStart = valueStart;
+        fieldEnd = i;
+        return !isNull(line, valueStart, i);
+      }
+      i = skipWhitespace(line, i, len);
+      if ((i >= len) || (line.byteAt(i) != ',')) { return false; }
+      i++;
+    }
+  }
+
+  private boolean keyEquals(final LineReader line, final int start, final int end) {
+    if ((end - start) != key.length) { return false; }
+    for (int j = 0; j < key.length; j++) {
+      if (line.byteAt(start + j) != key[j]) { return false; }
+    }
+    return true;
+  }
+
+  private static boolean isNull(final LineReader line, final int start, final int end) {
+    return ((end - start) == 4) && (line.byteAt(start) == 'n') && (line.byteAt(start + 1) == 'u')
+        && (line.byteAt(start + 2) == 'l') && (line.byteAt(start + 3) == 'l');
+  }
+
+  /** @return the index just past the closing quote of the string starting at i */
+  private static int skipString(final LineReader line, final int i, final int len) {
+    int j = i + 1;
+    while (j < len) {
+      final byte b = line.byteAt(j);
+      if (b == ESCAPE) {
+        j += 2;
+      } else if (b == QUOTE) {
+        return j + 1;
+      } else {
+        j++;
+      }
+    }
+    return len;
+  }
+
+  /** @return the index just past the JSON value starting at i */
+  private static int skipValue(final LineReader line, final int i, final int len) {
+    final byte first = line.byteAt(i);
+    if (first == QUOTE) { return skipString(line, i, len); }
+    if ((first == '{') || (first == '[')) {
+      int depth = 0;
+      int j = i;
+      while (j < len) {
+        final byte b = line.byteAt(j);
+        if (b == QUOTE) {
+          j = skipString(line, j, len);
+          continue;
+        }
+        if ((b == '{') || (b == '[')) {
+          depth++;
+        } else if ((b == '}') || (b == ']')) {
+          depth--;
+          if (depth == 0) { return j + 1; }
+        }
+        j++;
+      }
+      return len;
+    }
+    int j = i; //number, true, false or null
+    while (j < len) {
+      final byte b = line.byteAt(j);
+      if ((b == ',') || (b == '}') || (b == ']') || isWhitespace(b)) { break; }
+      j++;
+    }
+    return j;
+  }
+
+  private static int skipWhitespace(final LineReader line, final int i, final int len) {
+    int j = i;
+    while ((j < len) && isWhitespace(line.byteAt(j))) { j++; }
+    return j;
+  }
+
+  private static boolean isWhitespace(final byte b) {
+    return (b == ' ') || (b == '\t') || (b == '\r') || (b == '\n');
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+/**
+ * A LineUpdater that hands only one field of each line, as found by a {@link FieldLocator}, to
+ * another LineUpdater. The line is narrowed to the field's bytes for the duration of the update.
+ * Lines that do not have the field are skipped.
+ *
+ * @param <T> Sketch Type
+ */
+final class FieldSelector<T> implements LineUpdater<T> {
+  private final LineUpdater<T> updater;
+  private final FieldLocator locator;
+
+  /**
+   * @param updater the LineUpdater that receives the field
+   * @param field a column number counting from 1, or a JSON key
+   * @param delimiter the column delimiter
+   */
+  FieldSelector(final LineUpdater<T> updater, final String field, final char delimiter) {
+    this.updater = updater;
+    this.locator = new FieldLocator(field, delimiter);
+  }
+
+  @Override
+  public void update(final LineReader line) {
+    if (!locator.find(line)) { return; }
+    final int start = locator.start();
+    final int length = line.length();
+    line.narrow(start, locator.end());
+    try {
+      updater.update(line);
+    } finally {
+      line.widen(start, length);
+    }
+  }
+
+  @Override
+  public T getResult() {
+    return updater.getResult();
+  }
+}
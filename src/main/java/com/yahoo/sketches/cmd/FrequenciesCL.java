@@ -2,10 +2,6 @@ package com.yahoo.sketches.cmd;
 
 import static com.yahoo.sketches.Util.TAB;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-
-import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 
 import com.yahoo.memory.Memory;
@@ -14,7 +10,8 @@ import com.yahoo.sketches.frequencies.ErrorType;
 import com.yahoo.sketches.frequencies.ItemsSketch;
 
 
-  public class FrequenciesCL extends SketchCommandLineParser<ItemsSketch<String>> {
+  public class FrequenciesCL extends SketchCommandLineParser<ItemsSketch<String>>
+    implements SketchSerDe<ItemsSketch<String>> {
 
     private static final int DEFAULT_SIZE = 1024;
 
@@ -69,9 +66,7 @@ import com.yahoo.sketches.frequencies.ItemsSketch;
 
   @Override
   protected void showHelp() {
-        final HelpFormatter helpf = new HelpFormatter();
-        helpf.setOptionComparator(null);
-        helpf.printHelp("ds freq", options);
+    printHelp("ds freq");
   }
 
   protected ItemsSketch<String> buildSketch() {
@@ -80,55 +75,73 @@ import com.yahoo.sketches.frequencies.ItemsSketch;
   }
 
   @Override
-  protected void updateSketch(final BufferedReader br) {
+  protected LineUpdater<ItemsSketch<String>> newLineUpdater() {
     final ItemsSketch<String> sketch = buildSketch();
-    String itemStr = "";
-    try {
-      if (cl.hasOption("w")) {
-        while ((itemStr = br.readLine()) != null) {
-          if (itemStr.isEmpty()) { continue; }
-          final String[] tokens = itemStr.split("[\\t, ]+", 2);
-          if (tokens.length < 2) {
-            sketch.update(tokens[1], 1);
-          } else {
-            sketch.update(tokens[1], Long.parseLong(tokens[0]));
+    final boolean weighted = cl.hasOption("w");
+    return new LineUpdater<ItemsSketch<String>>() {
+      @Override
+      public void update(final LineReader line) {
+        final int len = line.length();
+        if (len == 0) { return; }
+        if (weighted) {
+          final int sep = LineParser.indexOfSeparator(line, 0);
+          final int itemStart = LineParser.skipSeparators(line, sep);
+          if (itemStart < len) {
+            sketch.update(line.toString(itemStart, len), LineParser.parseLong(line, 0, sep));
+          } else if (sep > 0) { //a single token is the item
+            sketch.update(line.toString(0, sep), 1);
           }
-        }
-      } else { //assume entire line is item
-        while ((itemStr = br.readLine()) != null) {
-          if (itemStr.isEmpty()) { continue; }
-          sketch.update(itemStr, 1);
+        } else { //assume entire line is item
+          sketch.update(line.toString(), 1);
         }
       }
-      sketchList.add(sketch);
-    } catch (final IOException | NumberFormatException e) {
-      printlnErr("Read Error: Item: " + itemStr + ", " + br.toString());
-      throw new RuntimeException(e);
-    }
+
+      @Override
+      public ItemsSketch<String> getResult() {
+        return sketch;
+      }
+    };
   }
 
   @Override
-  protected ItemsSketch<String> deserializeSketch(final byte[] bytes) {
-    return ItemsSketch.getInstance(Memory.wrap(bytes), new ArrayOfStringsSerDe());
+  public ItemsSketch<String> deserializeSketch(final byte[] bytes) {
+    return wrapSketch(Memory.wrap(bytes));
   }
 
   @Override
-  protected byte[] serializeSketch(final ItemsSketch<String> sketch) {
+  public ItemsSketch<String> wrapSketch(final Memory mem) {
+    return ItemsSketch.getInstance(mem, new ArrayOfStringsSerDe());
+  }
+
+  @Override
+  public byte[] serializeSketch(final ItemsSketch<String> sketch) {
     return sketch.toByteArray(new ArrayOfStringsSerDe());
   }
 
   @Override
-  protected void mergeSketches() {
+  protected SketchMerger<ItemsSketch<String>> newMerger() {
     final ItemsSketch<String> union;
     if (cl.hasOption("k")) { //user defined k
       union = new ItemsSketch<>(Integer.parseInt(cl.getOptionValue("k")));
     } else { //default k
       union = new ItemsSketch<>(DEFAULT_SIZE);
     }
-    for (final ItemsSketch<String> sketch: sketchList) {
-      union.merge(sketch);
-    }
-    sketchList.add(union);
+    return new SketchMerger<ItemsSketch<String>>() {
+      @Override
+      public void update(final ItemsSketch<String> sketch) {
+        union.merge(sketch);
+      }
+
+      @Override
+      public ItemsSketch<String> getResult() {
+        return union;
+      }
+    };
+  }
+
+  @Override
+  protected void mergeSketches() {
+    sketchList.add(union(sketchList));
   }
 
   @Override
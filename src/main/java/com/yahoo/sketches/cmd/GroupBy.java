@@ -0,0 +1,300 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * Builds one sketch per distinct value of a key field of the input lines.
+ *
+ * <p>The groups are found through an open-addressing hash index of the key bytes, probed directly
+ * from the line without decoding the key, and the LineUpdater of a group is created when its key
+ * is first seen. At most <i>maxGroups</i> groups are held on the heap: when the index is full,
+ * the least recently updated half is serialized, sorted by key, into a run file and dropped. A
+ * key seen again after being spilled starts a new group, and its sketches are unioned when the
+ * runs are merged at the end.</p>
+ *
+ * @param <T> Sketch Type
+ */
+final class GroupBy<T> implements Closeable {
+  static final int MAX_GROUPS = 1 << 29; //the index of 4 * maxGroups slots, rounded, fits an array
+
+  private final SketchCommandLineParser<T> parser;
+  private final FieldLocator locator;
+  private final int maxGroups;
+  private final int mask;
+  private final int[] index;           //entry + 1 for each hash slot, 0 if empty
+  private final int[] hashes;          //by entry
+  private final byte[][] keys;         //by entry
+  private final Object[] updaters;     //LineUpdater<T> by entry
+  private final long[] lastUsed;       //line number of the last update, by entry
+  private int size;
+  private long lineNumber;
+  private Path spillDir;
+  private final List<Path> runs = new ArrayList<>();
+
+  /**
+   * @param parser the parser that creates, serializes and unions the group sketches
+   * @param locator finds the key field of each line
+   * @param maxGroups the most groups held on the heap, from 2 to {@link #MAX_GROUPS}
+   */
+  GroupBy(final SketchCommandLineParser<T> parser, final FieldLocator locator,
+      final int maxGroups) {
+    if ((maxGroups < 2) || (maxGroups > MAX_GROUPS)) {
+      throw new IllegalArgumentException("Max groups must be from 2 to " + MAX_GROUPS + ": "
+          + maxGroups);
+    }
+    this.parser = parser;
+    this.locator = locator;
+    this.maxGroups = maxGroups;
+    final int capacity = Integer.highestOneBit(maxGroups - 1) << 2; //load factor at most 1/2
+    mask = capacity - 1;
+    index = new int[capacity];
+    hashes = new int[maxGroups];
+    keys = new byte[maxGroups][];
+    updaters = new Object[maxGroups];
+    lastUsed = new long[maxGroups];
+  }
+
+  /**
+   * Hands the line to the LineUpdater of its group. Lines without the key field are skipped.
+   * @param line the current line
+   * @throws IOException if spilling groups to disk fails
+   */
+  void update(final LineReader line) throws IOException {
+    lineNumber++;
+    if (!locator.find(line)) { return; }
+    final int start = locator.start();
+    final int end = locator.end();
+    final int hash = hash(line, start, end);
+    int slot = hash & mask;
+    int entry;
+    while ((entry = index[slot] - 1) >= 0) {
+      if ((hashes[entry] == hash) && keyEquals(keys[entry], line, start, end)) { break; }
+      slot = (slot + 1) & mask;
+    }
+    if (entry < 0) { //new group
+      if (size == maxGroups) {
+        spill();
+        slot = hash & mask;
+        while (index[slot] != 0) { slot = (slot + 1) & mask; }
+      }
+      entry = size++;
+      final byte[] key = new byte[end - start];
+      for (int i = 0; i < key.length; i++) {
+        key[i] = line.byteAt(start + i);
+      }
+      hashes[entry] = hash;
+      keys[entry] = key;
+      updaters[entry] = parser.newInputUpdater();
+      index[slot] = entry + 1;
+    }
+    lastUsed[entry] = lineNumber;
+    updaterOf(entry).update(line);
+  }
+
+  /**
+   * Merges the groups on the heap with the spilled runs and hands each group to the consumer,
+   * in the unsigned byte order of the keys.
+   * @param consumer receives the UTF-8 key bytes and the sketch of each group
+   * @throws IOException if reading the spilled runs fails
+   */
+  void forEachGroup(final BiConsumer<byte[], T> consumer) throws IOException {
+    final Integer[] order = sortedEntries();
+    final List<RunReader> readers = new ArrayList<>();
+    try {
+      final PriorityQueue<RunReader> queue =
+          new PriorityQueue<>(Math.max(1, runs.size()), (a, b) -> compareKeys(a.key, b.key));
+      for (Path run : runs) {
+        final RunReader reader = new RunReader(run);
+        readers.add(reader);
+        if (reader.next()) { queue.add(reader); }
+      }
+      int i = 0;
+      final List<T> sketches = new ArrayList<>();
+      while ((i < order.length) || !queue.isEmpty()) {
+        final byte[] key = ((i < order.length)
+            && (queue.isEmpty() || (compareKeys(keys[order[i]], queue.peek().key) <= 0)))
+            ? keys[order[i]] : queue.peek().key;
+        sketches.clear();
+        if ((i < order.length) && Arrays.equals(keys[order[i]], key)) {
+          sketches.add(updaterOf(order[i++]).getResult());
+        }
+        while (!queue.isEmpty() && Arrays.equals(queue.peek().key, key)) {
+          final RunReader reader = queue.poll();
+          sketches.add(parser.serDe().deserializeSketch(reader.sketch));
+          if (reader.next()) { queue.add(reader); }
+        }
+        consumer.accept(key, (sketches.size() == 1) ? sketches.get(0) : parser.union(sketches));
+      }
+    } finally {
+      for (RunReader reader : readers) {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * Deletes the spilled runs.
+   */
+  @Override
+  public void close() throws IOException {
+    for (Path run : runs) {
+      Files.deleteIfExists(run);
+    }
+    runs.clear();
+    if (spillDir != null) {
+      Files.deleteIfExists(spillDir);
+      spillDir = null;
+    }
+  }
+
+  /**
+   * Writes the least recently updated half of the groups to a new run, sorted by key, and
+   * rebuilds the index with the rest.
+   */
+  private void spill() throws IOException {
+    final Integer[] byAge = new Integer[size];
+    for (int i = 0; i < size; i++) { byAge[i] = i; }
+    Arrays.sort(byAge, (a, b) -> Long.compare(lastUsed[a], lastUsed[b]));
+    final int cold = size / 2;
+    final Integer[] spilled = Arrays.copyOf(byAge, cold);
+    Arrays.sort(spilled, (a, b) -> compareKeys(keys[a], keys[b]));
+    if (spillDir == null) { spillDir = Files.createTempDirectory("ds-groups"); }
+    final Path run = spillDir.resolve("run-" + runs.size());
+    runs.add(run);
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+      for (Integer entry : spilled) {
+        writeRecord(out, keys[entry], parser.serDe().serializeSketch(updaterOf(entry).getResult()));
+      }
+    }
+    final boolean[] isCold = new boolean[size];
+    for (Integer entry : spilled) { isCold[entry] = true; }
+    Arrays.fill(index, 0);
+    int kept = 0;
+    for (int i = 0; i < size; i++) {
+      if (isCold[i]) { continue; }
+      hashes[kept] = hashes[i];
+      keys[kept] = keys[i];
+      updaters[kept] = updaters[i];
+      lastUsed[kept] = lastUsed[i];
+      int slot = hashes[kept] & mask;
+      while (index[slot] != 0) { slot = (slot + 1) & mask; }
+      index[slot] = kept + 1;
+      kept++;
+    }
+    Arrays.fill(keys, kept, size, null);
+    Arrays.fill(updaters, kept, size, null);
+    size = kept;
+  }
+
+  private Integer[] sortedEntries() {
+    final Integer[] entries = new Integer[size];
+    for (int i = 0; i < size; i++) { entries[i] = i; }
+    Arrays.sort(entries, (a, b) -> compareKeys(keys[a], keys[b]));
+    return entries;
+  }
+
+  @SuppressWarnings("unchecked")
+  private LineUpdater<T> updaterOf(final int entry) {
+    return (LineUpdater<T>) updaters[entry];
+  }
+
+  /**
+   * Writes a record of a key and a serialized sketch, as read by {@link RunReader}.
+   * @param out the output
+   * @param key the UTF-8 key bytes
+   * @param sketch the serialized sketch
+   * @throws IOException if writing fails
+   */
+  static void writeRecord(final DataOutputStream out, final byte[] key, final byte[] sketch)
+      throws IOException {
+    out.writeInt(key.length);
+    out.write(key);
+    out.writeInt(sketch.length);
+    out.write(sketch);
+  }
+
+  /**
+   * Compares keys as unsigned bytes, which orders UTF-8 keys the same as their code points.
+   */
+  static int compareKeys(final byte[] a, final byte[] b) {
+    final int n = Math.min(a.length, b.length);
+    for (int i = 0; i < n; i++) {
+      final int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+      if (c != 0) { return c; }
+    }
+    return a.length - b.length;
+  }
+
+  private static int hash(final LineReader line, final int start, final int end) {
+    int h = 0x811C9DC5; //FNV-1a
+    for (int i = start; i < end; i++) {
+      h = (h ^ line.byteAt(i)) * 0x01000193;
+    }
+    return h ^ (h >>> 16);
+  }
+
+  private static boolean keyEquals(final byte[] key, final LineReader line, final int start,
+      final int end) {
+    if (key.length != (end - start)) { return false; }
+    for (int i = 0; i < key.length; i++) {
+      if (key[i] != line.byteAt(start + i)) { return false; }
+    }
+    return true;
+  }
+
+  /**
+   * Reads the records of a run, or of a group output file, in order.
+   */
+  static final class RunReader implements Closeable {
+    private final DataInputStream in;
+    byte[] key;
+    byte[] sketch;
+
+    RunReader(final Path path) throws IOException {
+      in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+    }
+
+    /**
+     * Reads the next record into <i>key</i> and <i>sketch</i>.
+     * @return false at the end of the file
+     * @throws IOException if reading fails
+     */
+    boolean next() throws IOException {
+      final int keyLength;
+      try {
+        keyLength = in.readInt();
+      } catch (final EOFException e) {
+        return false;
+      }
+      key = new byte[keyLength];
+      in.readFully(key);
+      sketch = new byte[in.readInt()];
+      in.readFully(sketch);
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
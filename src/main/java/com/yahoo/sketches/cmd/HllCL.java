@@ -1,17 +1,15 @@
 package com.yahoo.sketches.cmd;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-
-import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 
 import com.yahoo.memory.Memory;
+import com.yahoo.memory.WritableMemory;
 import com.yahoo.sketches.hll.HllSketch;
 import com.yahoo.sketches.hll.TgtHllType;
 import com.yahoo.sketches.hll.Union;
 
-public class HllCL extends SketchCommandLineParser<HllSketch> {
+public class HllCL extends SketchCommandLineParser<HllSketch>
+    implements SketchSerDe<HllSketch>, DirectSketch<HllSketch> {
 
   private static final int DEFAULT_LG_K = 12;
 
@@ -26,50 +24,90 @@ public class HllCL extends SketchCommandLineParser<HllSketch> {
 
   @Override
   protected void showHelp() {
-        final HelpFormatter helpf = new HelpFormatter();
-        helpf.setOptionComparator(null);
-        helpf.printHelp("ds hll", options);
+    printHelp("ds hll");
   }
 
   protected HllSketch buildSketch() {
-    final int lgk = cl.hasOption("lgk")
-        ? Integer.parseInt(cl.getOptionValue("lgk")) : DEFAULT_LG_K;
-    return new HllSketch(lgk);
+    return new HllSketch(lgK());
+  }
+
+  private int lgK() {
+    return cl.hasOption("lgk") ? Integer.parseInt(cl.getOptionValue("lgk")) : DEFAULT_LG_K;
   }
 
   @Override
-  protected void updateSketch(final BufferedReader br) {
-    final HllSketch sketch = buildSketch();
-    String itemStr = "";
-    try {
-      while ((itemStr = br.readLine()) != null) {
-        sketch.update(itemStr);
-      }
-      sketchList.add(sketch);
-    } catch (final IOException e) {
-      printlnErr("Read Error: Item: " + itemStr + ", " + br.toString());
-      throw new RuntimeException(e);
+  protected LineUpdater<HllSketch> newLineUpdater() {
+    return newLineUpdater(buildSketch());
+  }
+
+  @Override
+  public LineUpdater<HllSketch> newDirectUpdater(final WritableMemory mem, final boolean create) {
+    if (create) {
+      return newLineUpdater(new HllSketch(lgK(), TgtHllType.HLL_4, mem));
     }
+    final HllSketch sketch = HllSketch.writableWrap(mem);
+    if (cl.hasOption("lgk") && (sketch.getLgConfigK() != lgK())) {
+      throw new IllegalArgumentException("The \"-o\" sketch has lgK " + sketch.getLgConfigK()
+          + ", not " + lgK());
+    }
+    return newLineUpdater(sketch);
+  }
+
+  @Override
+  public long directSketchBytes() {
+    return HllSketch.getMaxUpdatableSerializationBytes(lgK(), TgtHllType.HLL_4);
+  }
+
+  private static LineUpdater<HllSketch> newLineUpdater(final HllSketch sketch) {
+    return new LineUpdater<HllSketch>() {
+      @Override
+      public void update(final LineReader line) {
+        if (line.length() == 0) { return; }
+        sketch.update(line.toByteArray()); //same hash as update(String) of the UTF-8 line
+      }
+
+      @Override
+      public HllSketch getResult() {
+        return sketch;
+      }
+    };
   }
 
   @Override
-  protected HllSketch deserializeSketch(final byte[] bytes) {
+  public HllSketch deserializeSketch(final byte[] bytes) {
     return HllSketch.heapify(Memory.wrap(bytes));
   }
 
   @Override
-  protected byte[] serializeSketch(final HllSketch sketch) {
+  public HllSketch wrapSketch(final Memory mem) {
+    //a union reads a heapified sketch faster than a wrapped one, and an HLL sketch is small
+    return HllSketch.heapify(mem);
+  }
+
+  @Override
+  public byte[] serializeSketch(final HllSketch sketch) {
     return sketch.toCompactByteArray();
   }
 
+  @Override
+  protected SketchMerger<HllSketch> newMerger() {
+    final Union union = new Union(lgK());
+    return new SketchMerger<HllSketch>() {
+      @Override
+      public void update(final HllSketch sketch) {
+        union.update(sketch);
+      }
+
+      @Override
+      public HllSketch getResult() {
+        return union.getResult(TgtHllType.HLL_4);
+      }
+    };
+  }
+
   @Override
   protected void mergeSketches() {
-    final int lgk = cl.hasOption("k") ? Integer.parseInt(cl.getOptionValue("lgk")) : DEFAULT_LG_K;
-    final Union union = new Union(lgk);
-    for (HllSketch sketch: sketchList) {
-      union.update(sketch);
-    }
-    sketchList.add(union.getResult(TgtHllType.HLL_4));
+    sketchList.add(union(sketchList));
   }
 
   @Override
@@ -79,7 +117,7 @@ public class HllCL extends SketchCommandLineParser<HllSketch> {
       final double est = sketch.getEstimate();
       final double lb = sketch.getLowerBound(2);
       final double ub = sketch.getUpperBound(2);
-      System.out.format("%f %f %f" + LS,lb, est, ub);
+      out.format("%f %f %f" + LS,lb, est, ub);
     }
   }
 
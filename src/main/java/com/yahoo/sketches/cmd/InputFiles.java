@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Expands the "-d" or "-s" arguments into a list of input files. Each argument may be a file, a
+ * directory, whose regular files are read in name order, or a glob pattern such as
+ * <i>logs/2018-01-*.txt</i> or <i>logs/&#42;&#42;/part-*</i>.
+ */
+final class InputFiles {
+
+  private InputFiles() {}
+
+  /**
+   * @param args the "-d" or "-s" arguments
+   * @return the input files, in argument order
+   * @throws IOException if a directory cannot be listed
+   */
+  static List<Path> expand(final String[] args) throws IOException {
+    final List<Path> paths = new ArrayList<>();
+    for (final String arg : args) {
+      final Path path = Paths.get(arg);
+      if (isGlob(arg)) {
+        paths.addAll(matchGlob(arg));
+      } else if (Files.isDirectory(path)) {
+        try (Stream<Path> stream = Files.list(path)) {
+          paths.addAll(stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+        }
+      } else {
+        paths.add(path); //may also be a pipe
+      }
+    }
+    return paths;
+  }
+
+  /**
+   * @param paths the input files
+   * @return the total size of the regular files, pipes counting as empty
+   * @throws IOException if the size of a file cannot be read
+   */
+  static long totalSize(final List<Path> paths) throws IOException {
+    long size = 0;
+    for (final Path path : paths) {
+      if (Files.isRegularFile(path)) { size += Files.size(path); }
+    }
+    return size;
+  }
+
+  private static boolean isGlob(final String arg) {
+    for (int i = 0; i < arg.length(); i++) {
+      switch (arg.charAt(i)) {
+        case '*': case '?': case '[': case '{':
+          return true;
+        default:
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Walks from the longest leading part of the pattern without glob characters and returns the
+   * regular files that match the whole pattern.
+   */
+  private static List<Path> matchGlob(final String pattern) throws IOException {
+    final Path patternPath = Paths.get(pattern);
+    Path base = patternPath.isAbsolute() ? patternPath.getRoot() : Paths.get("");
+    int depth = patternPath.getNameCount();
+    for (Path name : patternPath) {
+      if (isGlob(name.toString())) { break; }
+      base = base.resolve(name);
+      depth--;
+    }
+    final boolean fromCwd = base.toString().isEmpty();
+    final Path start = fromCwd ? Paths.get(".") : base;
+    if (!Files.isDirectory(start)) { return Collections.emptyList(); }
+    final int maxDepth = pattern.contains("**") ? Integer.MAX_VALUE : depth;
+    final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+    try (Stream<Path> stream = Files.walk(start, maxDepth)) {
+      return stream
+          .map(p -> fromCwd ? start.relativize(p) : p)
+          .filter(p -> Files.isRegularFile(p) && matcher.matches(p))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.io.IOException;
+
+import com.yahoo.memory.Memory;
+import com.yahoo.sketches.kll.KllFloatsSketch;
+
+/**
+ * "ds quant --kll": the KLL sketch of floats, with the same options and queries as the classic
+ * quantiles sketch of {@link QuantilesCL}. For the same rank error it retains fewer values, each
+ * of four bytes instead of eight, so its sketches and files are several times smaller. Values are
+ * rounded to floats when read.
+ */
+public class KllCL extends AbstractQuantilesCL<KllFloatsSketch>
+    implements SketchSerDe<KllFloatsSketch> {
+
+  KllCL() {
+    super();
+  }
+
+  protected KllFloatsSketch buildSketch() {
+    return cl.hasOption("k") ? new KllFloatsSketch(Integer.parseInt(cl.getOptionValue("k")))
+        : new KllFloatsSketch();
+  }
+
+  @Override
+  protected LineUpdater<KllFloatsSketch> newLineUpdater() {
+    final KllFloatsSketch sketch = buildSketch();
+    final boolean weighted = cl.hasOption("w");
+    final int k = cl.hasOption("k") ? Integer.parseInt(cl.getOptionValue("k"))
+        : KllFloatsSketch.DEFAULT_K;
+    return new LineUpdater<KllFloatsSketch>() {
+      @Override
+      public void update(final LineReader line) {
+        if (!weighted) {
+          sketch.update((float) LineParser.parseDouble(line, 0, line.length()));
+          return;
+        }
+        if (line.length() == 0) { return; }
+        final int sep = LineParser.indexOfSeparator(line, 0);
+        final float value = (float) LineParser.parseDouble(line, 0, sep);
+        final long count = parseCount(line, sep);
+        if (count < k) {
+          for (long i = 0; i < count; i++) {
+            sketch.update(value);
+          }
+        } else if (!Float.isNaN(value)) { //ignored, as by update
+          mergeRepeated(sketch, value, count);
+        }
+      }
+
+      @Override
+      public KllFloatsSketch getResult() {
+        return sketch;
+      }
+    };
+  }
+
+  /**
+   * Merges count copies of a value into the sketch. The sketch of 2<sup>i + 1</sup> copies is the
+   * merge of two of 2<sup>i</sup> copies, and that of each bit i set in count is merged, so a
+   * count costs a few merges per bit instead of count updates.
+   */
+  private void mergeRepeated(final KllFloatsSketch sketch, final float value, final long count) {
+    final KllFloatsSketch power = buildSketch();
+    power.update(value);
+    for (long bits = count; bits != 0; bits >>>= 1) {
+      if ((bits & 1) != 0) { sketch.merge(power); }
+      if (bits > 1) { power.merge(deserializeSketch(power.toByteArray())); } //doubles it
+    }
+  }
+
+  @Override
+  public KllFloatsSketch updateSketch(final BinaryReader br) throws IOException {
+    final KllFloatsSketch sketch = buildSketch();
+    while (br.next()) {
+      sketch.update((float) br.doubleValue());
+    }
+    return sketch;
+  }
+
+  @Override
+  public KllFloatsSketch deserializeSketch(final byte[] bytes) {
+    return wrapSketch(Memory.wrap(bytes));
+  }
+
+  @Override
+  public KllFloatsSketch wrapSketch(final Memory mem) {
+    return KllFloatsSketch.heapify(mem);
+  }
+
+  @Override
+  public byte[] serializeSketch(final KllFloatsSketch sketch) {
+    return sketch.toByteArray();
+  }
+
+  /**
+   * Merges the sketches into a new one with the given "-k", or else into a copy of the first, as
+   * the k of a sketch is not exposed.
+   */
+  @Override
+  protected SketchMerger<KllFloatsSketch> newMerger() {
+    return new SketchMerger<KllFloatsSketch>() {
+      private KllFloatsSketch union = cl.hasOption("k") ? buildSketch() : null;
+
+      @Override
+      public void update(final KllFloatsSketch sketch) {
+        if (union == null) {
+          union = deserializeSketch(sketch.toByteArray());
+        } else {
+          union.merge(sketch);
+        }
+      }
+
+      @Override
+      public KllFloatsSketch getResult() {
+        return (union == null) ? buildSketch() : union;
+      }
+    };
+  }
+
+  @Override
+  QuantilesView view(final KllFloatsSketch sketch) {
+    return QuantilesView.of(sketch);
+  }
+
+  @Override
+  double[] getPMF(final KllFloatsSketch sketch, final double[] splitPoints) {
+    final float[] floats = new float[splitPoints.length];
+    for (int i = 0; i < floats.length; i++) {
+      floats[i] = (float) splitPoints[i];
+    }
+    return sketch.getPMF(floats);
+  }
+}
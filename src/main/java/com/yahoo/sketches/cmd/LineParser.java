@@ -0,0 +1,167 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+/**
+ * Parses numbers and weighted-item tokens directly from the bytes of the current line of a
+ * {@link LineReader}, without creating intermediate Strings or arrays.
+ *
+ * <p>The number parsers accept the common decimal forms. Anything else, including leading or
+ * trailing white space, hexadecimal, "NaN" or "Infinity", falls back to <i>Long.parseLong</i>
+ * or <i>Double.parseDouble</i> so that accepted inputs and exceptions are unchanged.</p>
+ *
+ * <p>The weighted line format is a weight token, a run of tabs, commas or spaces, and the item,
+ * which is the rest of the line. A line with a single token is the item with weight one.</p>
+ */
+final class LineParser {
+  private static final int MAX_EXACT_DIGITS = 15;  //any 15 digit integer is exact as a double
+  private static final int MAX_EXACT_POW10 = 22;   //10^22 is the largest exact power of ten
+  private static final int MAX_LONG_DIGITS = 18;   //any 18 digit integer fits in a long
+  private static final double[] POW10 = new double[MAX_EXACT_POW10 + 1];
+
+  static {
+    POW10[0] = 1.0;
+    for (int i = 1; i <= MAX_EXACT_POW10; i++) {
+      POW10[i] = POW10[i - 1] * 10.0;
+    }
+  }
+
+  private LineParser() {}
+
+  /**
+   * @param line the reader positioned at the line
+   * @param start the first byte offset of the number
+   * @param end one past the last byte offset of the number
+   * @return the parsed long
+   * @throws NumberFormatException if the bytes are not a valid long
+   */
+  static long parseLong(final LineReader line, final int start, final int end) {
+    int i = start;
+    boolean negative = false;
+    if (i < end) {
+      final byte b = line.byteAt(i);
+      if ((b == '-') || (b == '+')) {
+        negative = b == '-';
+        i++;
+      }
+    }
+    if ((i == end) || ((end - i) > MAX_LONG_DIGITS)) {
+      return Long.parseLong(line.toString(start, end));
+    }
+    long value = 0;
+    for (; i < end; i++) {
+      final int d = line.byteAt(i) - '0';
+      if ((d < 0) || (d > 9)) {
+        return Long.parseLong(line.toString(start, end));
+      }
+      value = (value * 10) + d;
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Parses a double. Decimals with at most 15 significant digits and a decimal exponent of
+   * magnitude at most 22 are converted with a single correctly rounded multiply or divide,
+   * which gives the same result as <i>Double.parseDouble</i>.
+   * @param line the reader positioned at the line
+   * @param start the first byte offset of the number
+   * @param end one past the last byte offset of the number
+   * @return the parsed double
+   * @throws NumberFormatException if the bytes are not a valid double
+   */
+  static double parseDouble(final LineReader line, final int start, final int end) {
+    int i = start;
+    boolean negative = false;
+    if (i < end) {
+      final byte b = line.byteAt(i);
+      if ((b == '-') || (b == '+')) {
+        negative = b == '-';
+        i++;
+      }
+    }
+    long mantissa = 0;
+    int digits = 0;  //significant digits in the mantissa
+    int exp10 = 0;
+    boolean sawDigit = false;
+    boolean fraction = false;
+    for (; i < end; i++) {
+      final byte b = line.byteAt(i);
+      if ((b == '.') && !fraction) {
+        fraction = true;
+        continue;
+      }
+      final int d = b - '0';
+      if ((d < 0) || (d > 9)) { break; }
+      sawDigit = true;
+      mantissa = (mantissa * 10) + d;
+      if (mantissa != 0) { digits++; }
+      if (fraction) { exp10--; }
+      if (digits > MAX_EXACT_DIGITS) { return slowParseDouble(line, start, end); }
+    }
+    if (!sawDigit) { return slowParseDouble(line, start, end); }
+    if ((i < end) && ((line.byteAt(i) == 'e') || (line.byteAt(i) == 'E'))) {
+      i++;
+      boolean negExp = false;
+      if (i < end) {
+        final byte b = line.byteAt(i);
+        if ((b == '-') || (b == '+')) {
+          negExp = b == '-';
+          i++;
+        }
+      }
+      final int expStart = i;
+      int exp = 0;
+      for (; (i < end) && ((i - expStart) < 4); i++) {
+        final int d = line.byteAt(i) - '0';
+        if ((d < 0) || (d > 9)) { break; }
+        exp = (exp * 10) + d;
+      }
+      if (i == expStart) { return slowParseDouble(line, start, end); }
+      exp10 += negExp ? -exp : exp;
+    }
+    if (i != end) { return slowParseDouble(line, start, end); }
+    if (mantissa == 0) { return negative ? -0.0 : 0.0; }
+    if ((exp10 < -MAX_EXACT_POW10) || (exp10 > MAX_EXACT_POW10)) {
+      return slowParseDouble(line, start, end);
+    }
+    final double value = (exp10 >= 0) ? mantissa * POW10[exp10] : mantissa / POW10[-exp10];
+    return negative ? -value : value;
+  }
+
+  /**
+   * @param line the reader positioned at the line
+   * @param from the byte offset to start from
+   * @return the offset of the first tab, comma or space at or after <i>from</i>, or the line
+   * length if there is none
+   */
+  static int indexOfSeparator(final LineReader line, final int from) {
+    final int len = line.length();
+    int i = from;
+    while ((i < len) && !isSeparator(line.byteAt(i))) { i++; }
+    return i;
+  }
+
+  /**
+   * @param line the reader positioned at the line
+   * @param from the byte offset to start from
+   * @return the offset of the first byte at or after <i>from</i> that is not a tab, comma or
+   * space, or the line length if there is none
+   */
+  static int skipSeparators(final LineReader line, final int from) {
+    final int len = line.length();
+    int i = from;
+    while ((i < len) && isSeparator(line.byteAt(i))) { i++; }
+    return i;
+  }
+
+  private static boolean isSeparator(final byte b) {
+    return (b == '\t') || (b == ',') || (b == ' ');
+  }
+
+  private static double slowParseDouble(final LineReader line, final int start, final int end) {
+    return Double.parseDouble(line.toString(start, end));
+  }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads lines of bytes from a memory-mapped file or from a channel without decoding them.
+ * Each call to {@link #next()} advances to the next line, which is then available as a byte
+ * range of the current window until the following call to <i>next()</i>.
+ *
+ * <p>Lines are terminated by LF, CR or CR LF, the same as <i>BufferedReader.readLine()</i>.
+ * The terminator is not part of the line.</p>
+ */
+final class LineReader implements Closeable {
+  static final int DEFAULT_BUFFER_BYTES = 1 << 20;
+  static final long MAP_WINDOW_BYTES = 1L << 30;
+  private static final byte LF = '\n';
+  private static final byte CR = '\r';
+
+  private final ReadableByteChannel channel; //streamed input, null if mapped
+  private final FileChannel fileChannel;     //mapped input, null if streamed
+  private final long end;                    //end of the mapped byte range
+  private final boolean ownsChannel;
+  private long windowStart;                  //file position of window index 0, if mapped
+  private ByteBuffer window;
+  private boolean eof;
+  private boolean skipLF;
+  private int pos;                           //start of the next line in the window
+  private int lineStart;
+  private int lineLength;
+  private byte[] scratch = new byte[256];
+
+  private LineReader(final ReadableByteChannel channel, final FileChannel fileChannel,
+      final long start, final long end, final boolean ownsChannel, final ByteBuffer window) {
+    this.channel = channel;
+    this.fileChannel = fileChannel;
+    this.windowStart = start;
+    this.end = end;
+    this.ownsChannel = ownsChannel;
+    this.window = window;
+  }
+
+  /**
+   * Opens the given file. Regular files are memory-mapped, anything else (e.g., a named pipe)
+   * is streamed.
+   * @param fileName the file path
+   * @return a LineReader that owns and closes the file
+   * @throws IOException if the file cannot be opened
+   */
+  static LineReader open(final String fileName) throws IOException {
+    final Path path = Paths.get(fileName);
+    final FileChannel fc = FileChannel.open(path, StandardOpenOption.READ);
+    if (!Files.isRegularFile(path)) {
+      return new LineReader(fc, null, 0, 0, true, emptyWindow(DEFAULT_BUFFER_BYTES));
+    }
+    return new LineReader(null, fc, 0, fc.size(), true, emptyWindow(0));
+  }
+
+  /**
+   * Reads the lines of the byte range [start, end) of the given file channel through memory-mapped
+   * windows. The range should start at the beginning of a line, see
+   * {@link #splitLines(FileChannel, int)}.
+   * @param fc the file channel, which is not closed by the returned LineReader
+   * @param start the first byte of the range
+   * @param end one past the last byte of the range
+   * @return a LineReader over the given range
+   */
+  static LineReader open(final FileChannel fc, final long start, final long end) {
+    return new LineReader(null, fc, start, end, false, emptyWindow(0));
+  }
+
+  /**
+   * Splits the given file into at most the given number of byte ranges of about equal size,
+   * each of which starts at the beginning of a line. Ranges only split after a LF, so a CR LF
+   * pair never straddles two ranges.
+   * @param fc the file channel
+   * @param parts the requested number of ranges
+   * @return the range boundaries: range i is [splits[i], splits[i + 1])
+   * @throws IOException if reading from the file fails
+   */
+  static long[] splitLines(final FileChannel fc, final int parts) throws IOException {
+    final long size = fc.size();
+    final ByteBuffer buf = ByteBuffer.allocate(8192);
+    final long[] splits = new long[parts + 1];
+    int count = 1; //splits[0] = 0
+    for (int i = 1; i < parts; i++) {
+      long pos = Math.max((size / parts) * i, splits[count - 1]);
+      boolean found = false;
+      while (!found && (pos < size)) { //find the LF at or after pos
+        buf.clear();
+        final int n = fc.read(buf, pos);
+        if (n <= 0) { break; }
+        for (int j = 0; j < n; j++) {
+          if (buf.get(j) == LF) {
+            pos += j + 1;
+            found = true;
+            break;
+          }
+        }
+        if (!found) { pos += n; }
+      }
+      if (!found || (pos >= size)) { break; }
+      if (pos > splits[count - 1]) { splits[count++] = pos; }
+    }
+    splits[count++] = size;
+    return Arrays.copyOf(splits, count);
+  }
+
+  /**
+   * Reads lines from the given channel through a heap buffer of the given initial size.
+   * The buffer grows if a single line does not fit.
+   * @param channel the source of bytes
+   * @param bufferBytes initial buffer size in bytes
+   * @return a LineReader that owns and closes the channel
+   */
+  static LineReader of(final ReadableByteChannel channel, final int bufferBytes) {
+    return new LineReader(channel, null, 0, 0, true, emptyWindow(bufferBytes));
+  }
+
+  /**
+   * Advances to the next line.
+   * @return false if there are no more lines
+   * @throws IOException if reading from the underlying channel fails
+   */
+  boolean next() throws IOException {
+    int scanFrom = pos;
+    while (true) {
+      final int limit = window.limit();
+      if (skipLF && (pos < limit)) {
+        if (window.get(pos) == LF) { pos++; }
+        scanFrom = pos;
+        skipLF = false;
+      }
+      for (int i = scanFrom; i < limit; i++) {
+        final byte b = window.get(i);
+        if ((b == LF) || (b == CR)) {
+          lineStart = pos;
+          lineLength = i - pos;
+          pos = i + 1;
+          skipLF = b == CR;
+          return true;
+        }
+      }
+      final int partial = limit - pos;
+      if (!fill()) {
+        if (partial > 0) { //last line has no terminator
+          lineStart = pos;
+          lineLength = partial;
+          pos = limit;
+          return true;
+        }
+        return false;
+      }
+      scanFrom = pos + partial; //the partial line has been moved to pos
+    }
+  }
+
+  /**
+   * @return the length in bytes of the current line
+   */
+  int length() {
+    return lineLength;
+  }
+
+  /**
+   * Restricts the current line to its byte range [start, end), e.g. to a single field.
+   * @param start the first byte offset of the range within the current line
+   * @param end one past the last byte offset of the range within the current line
+   */
+  void narrow(final int start, final int end) {
+    lineStart += start;
+    lineLength = end - start;
+  }
+
+  /**
+   * Undoes {@link #narrow(int, int)}.
+   * @param start the start given to narrow
+   * @param length the length of the line before narrow
+   */
+  void widen(final int start, final int length) {
+    lineStart -= start;
+    lineLength = length;
+  }
+
+  /**
+   * @param index the byte offset within the current line
+   * @return the byte at the given offset of the current line
+   */
+  byte byteAt(final int index) {
+    return window.get(lineStart + index);
+  }
+
+  /**
+   * @return a copy of the bytes of the current line, exactly sized
+   */
+  byte[] toByteArray() {
+    return toByteArray(0, lineLength);
+  }
+
+  /**
+   * @param start the first byte offset within the current line
+   * @param end one past the last byte offset within the current line
+   * @return a copy of the given byte range of the current line, exactly sized
+   */
+  byte[] toByteArray(final int start, final int end) {
+    final byte[] bytes = new byte[end - start];
+    copyBytes(start, end - start, bytes);
+    return bytes;
+  }
+
+  /**
+   * @return the current line decoded as UTF-8
+   */
+  @Override
+  public String toString() {
+    return toString(0, lineLength);
+  }
+
+  /**
+   * @param start the first byte offset within the current line
+   * @param end one past the last byte offset within the current line
+   * @return the given byte range of the current line decoded as UTF-8
+   */
+  String toString(final int start, final int end) {
+    final int len = end - start;
+    if (window.hasArray()) {
+      return new String(window.array(), window.arrayOffset() + lineStart + start, len, UTF_8);
+    }
+    if (scratch.length < len) {
+      scratch = new byte[Math.max(len, 2 * scratch.length)];
+    }
+    copyBytes(start, len, scratch);
+    return new String(scratch, 0, len, UTF_8);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (ownsChannel) {
+      if (channel != null) { channel.close(); }
+      if (fileChannel != null) { fileChannel.close(); }
+    }
+  }
+
+  private void copyBytes(final int start, final int len, final byte[] dst) {
+    window.position(lineStart + start);
+    window.get(dst, 0, len);
+  }
+
+  /**
+   * Makes more bytes available, keeping the partial line that starts at <i>pos</i>.
+   * On return <i>pos</i> points to the start of the partial line in the new window.
+   * @return false if the end of input has been reached
+   */
+  private boolean fill() throws IOException {
+    final int partial = window.limit() - pos;
+    if (fileChannel != null) {
+      final long partialStart = windowStart + pos;
+      if ((partialStart + partial) >= end) { return false; }
+      final long size = Math.min(MAP_WINDOW_BYTES, end - partialStart);
+      if (size <= partial) {
+        throw new IOException("Line longer than " + MAP_WINDOW_BYTES + " bytes at " + partialStart);
+      }
+      window = fileChannel.map(FileChannel.MapMode.READ_ONLY, partialStart, size);
+      windowStart = partialStart;
+      pos = 0;
+      return true;
+    }
+    if (eof) { return false; }
+    final byte[] arr = window.array();
+    if (partial == arr.length) { //a single line fills the buffer
+      final byte[] grown = new byte[2 * arr.length];
+      System.arraycopy(arr, pos, grown, 0, partial);
+      window = ByteBuffer.wrap(grown);
+    } else {
+      System.arraycopy(arr, pos, arr, 0, partial);
+    }
+    window.limit(window.capacity()).position(partial);
+    pos = 0;
+    int n;
+    do {
+      n = channel.read(window);
+    } while (n == 0);
+    window.limit(window.position());
+    if (n < 0) {
+      eof = true;
+      return false;
+    }
+    return true;
+  }
+
+  private static ByteBuffer emptyWindow(final int capacity) {
+    final ByteBuffer buf = ByteBuffer.allocate(capacity);
+    buf.limit(0);
+    return buf;
+  }
+}
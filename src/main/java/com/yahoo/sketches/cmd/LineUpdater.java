@@ -0,0 +1,25 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+/**
+ * Feeds input lines, one at a time, into a single sketch.
+ *
+ * @param <T> Sketch Type
+ */
+interface LineUpdater<T> {
+
+  /**
+   * Updates the sketch with the current line of the given reader.
+   * @param line the reader positioned at the line
+   */
+  void update(LineReader line);
+
+  /**
+   * @return the sketch built from all lines seen so far
+   */
+  T getResult();
+}
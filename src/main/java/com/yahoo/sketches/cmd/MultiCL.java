@@ -0,0 +1,240 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+/**
+ * Builds several sketches in a single pass over the input. The input options ("-d" or stdin)
+ * come first, followed by one section per sketch, each starting with the sketch type and holding
+ * that sketch's own options, e.g.:
+ *
+ * <pre>ds multi -d FILE hll -lgk 14 -o h.bin quant -k 256 -h freq -T</pre>
+ *
+ * <p>Each input line is handed to the LineUpdater of every section. A "--field" in a section
+ * selects that section's column or JSON key, so one pass can fill a sketch per column; a
+ * "--delimiter" given before the first section applies to every section. Each section then
+ * produces its own output as if it had been run alone, including its "-s" merge, "-p" and
+ * "-o".</p>
+ *
+ * <p>A section starts at the first token that is neither an option nor an option value, see
+ * {@link #nextSection(Options, String[], int)}, so "-o theta" saves to a file named theta.</p>
+ */
+public class MultiCL extends SketchCommandLineParser<List<Object>> {
+
+  private static final Set<String> SKETCH_TYPES =
+      new HashSet<>(Arrays.asList("freq", "hll", "quant", "rsamp", "theta", "tuple",
+          "vsamp"));
+
+  private static final Pattern NUMBER = Pattern.compile("-\\d*\\.?\\d+([eE][-+]?\\d+)?");
+  private static final Option UNKNOWN_OPTION = Option.builder().longOpt("unknown").build();
+
+  private final List<SketchCommandLineParser<?>> parsers = new ArrayList<>();
+
+  MultiCL() {
+    super();
+  }
+
+  @Override
+  protected void showHelp() {
+    printHelp("ds multi <OPT> SKETCH <SKETCH OPT> [SKETCH <SKETCH OPT>]...");
+    println("  SKETCH is one of freq, hll, quant, rsamp, theta, tuple or vsamp, "
+        + "see ds SKETCH -help.");
+  }
+
+  @Override
+  protected void runCommandLineUtil(final String[] args) {
+    final int start = nextSection(options, args, 1); //args[0] is "multi"
+    if (start == args.length) {
+      if (parseCommandLine(args)) {
+        printlnErr("No SKETCH given");
+        showHelp();
+      }
+      return;
+    }
+    for (int i = start; i < args.length; ) {
+      final SketchCommandLineParser<?> type = newParser(args[i]);
+      if ((type == null) || (type instanceof MultiCL)) {
+        printlnErr("Unrecognized Sketch Type: " + args[i]);
+        showHelp();
+        return;
+      }
+      final int end = nextSection(type.options, args, i + 1);
+      final String[] section = Arrays.copyOfRange(args, i, end);
+      final SketchCommandLineParser<?> parser = newParser(section);
+      parser.root = root;
+      parser.out = out;
+      parser.err = err;
+      if (!parser.parseCommandLine(section)) { return; }
+      if (parser.cl.hasOption("d")) {
+        printlnErr("\"-d\" must be given before the first SKETCH");
+        showHelp();
+        return;
+      }
+      if (parser.cl.hasOption("input-format")) {
+        printlnErr("\"--input-format\" is not supported by multi, which reads text lines");
+        showHelp();
+        return;
+      }
+      parsers.add(parser);
+      i = end;
+    }
+    super.runCommandLineUtil(Arrays.copyOfRange(args, 0, start));
+  }
+
+  /**
+   * Returns the start of the next section: the first token from the given one that is neither one
+   * of the given options nor a value of one. The value of an option with one argument is the token
+   * that follows it, whatever it is, so a file or value named like a sketch type does not start a
+   * section. The values of an option with any number of them, such as "-d FILES", are the token
+   * that follows it and then every token up to the next option or sketch type.
+   * @param options the options of the current section
+   * @param args the command line
+   * @param from the first token after the sketch type of the current section
+   * @return the index of the sketch type of the next section, or args.length if there is none
+   */
+  static int nextSection(final Options options, final String[] args, final int from) {
+    int i = from;
+    while (i < args.length) {
+      final Option option = optionOf(options, args[i]);
+      if (option == null) { return i; }
+      final boolean attached = args[i].indexOf('=') >= 0; //--opt=value
+      i++;
+      if (!option.hasArg() || attached) { continue; }
+      if (!option.hasOptionalArg() && !option.hasArgs()) { //one value
+        i++;
+        continue;
+      }
+      for (boolean first = !option.hasOptionalArg(); (i < args.length)
+          && (optionOf(options, args[i]) == null)
+          && (first || !SKETCH_TYPES.contains(args[i].toLowerCase())); first = false) {
+        i++;
+      }
+    }
+    return Math.min(i, args.length);
+  }
+
+  /**
+   * @return the option named by the token, or null if the token is not an option, e.g. a value or
+   * a negative number. An unrecognized or ambiguous option is returned as an option without
+   * arguments, for parseCommandLine to report.
+   */
+  private static Option optionOf(final Options options, final String token) {
+    if (!token.startsWith("-") || (token.length() < 2) || NUMBER.matcher(token).matches()) {
+      return null;
+    }
+    final String name = token.substring(token.startsWith("--") ? 2 : 1).split("=", 2)[0];
+    if (!token.startsWith("--") && options.hasOption(name)) {
+      return options.getOption(name);
+    }
+    final List<String> matches = options.getMatchingOptions(name); //long option prefixes
+    return (matches.size() == 1) ? options.getOption(matches.get(0)) : UNKNOWN_OPTION;
+  }
+
+  @Override
+  protected LineUpdater<List<Object>> newLineUpdater() {
+    final List<LineUpdater<?>> updaters = new ArrayList<>();
+    final String delimiter = cl.getOptionValue("delimiter", "\t");
+    for (SketchCommandLineParser<?> parser : parsers) {
+      updaters.add(parser.newInputUpdater(delimiter));
+    }
+    return new LineUpdater<List<Object>>() {
+      @Override
+      public void update(final LineReader line) {
+        for (int i = 0; i < updaters.size(); i++) {
+          updaters.get(i).update(line);
+        }
+      }
+
+      @Override
+      public List<Object> getResult() {
+        final List<Object> result = new ArrayList<>();
+        for (LineUpdater<?> updater : updaters) {
+          result.add(updater.getResult());
+        }
+        return result;
+      }
+    };
+  }
+
+  @Override
+  protected List<Object> union(final List<List<Object>> sketches) {
+    final List<Object> result = new ArrayList<>();
+    for (int i = 0; i < parsers.size(); i++) {
+      final List<Object> column = new ArrayList<>();
+      for (List<Object> multi : sketches) {
+        column.add(multi.get(i));
+      }
+      result.add(unionOf(parsers.get(i), column));
+    }
+    return result;
+  }
+
+  @Override
+  protected SketchMerger<List<Object>> newMerger() {
+    final List<SketchMerger<Object>> mergers = new ArrayList<>();
+    for (SketchCommandLineParser<?> parser : parsers) {
+      mergers.add(mergerOf(parser));
+    }
+    return new SketchMerger<List<Object>>() {
+      @Override
+      public void update(final List<Object> sketches) {
+        for (int i = 0; i < mergers.size(); i++) {
+          mergers.get(i).update(sketches.get(i));
+        }
+      }
+
+      @Override
+      public List<Object> getResult() {
+        final List<Object> result = new ArrayList<>();
+        for (SketchMerger<Object> merger : mergers) {
+          result.add(merger.getResult());
+        }
+        return result;
+      }
+    };
+  }
+
+  @Override
+  protected void mergeSketches() {
+    sketchList.add(union(sketchList));
+  }
+
+  @Override
+  protected void queryCurrentSketch() {
+    final List<Object> sketches = sketchList.get(sketchList.size() - 1);
+    for (int i = 0; i < parsers.size(); i++) {
+      final SketchCommandLineParser<?> parser = parsers.get(i);
+      println(LS + BOLD + String.join(" ", parser.cl.getArgs()) + OFF);
+      processSketchOf(parser, sketches.get(i));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static SketchMerger<Object> mergerOf(final SketchCommandLineParser<?> parser) {
+    return (SketchMerger<Object>) parser.newMerger();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T unionOf(final SketchCommandLineParser<T> parser,
+      final List<Object> sketches) {
+    return parser.union((List<T>) sketches);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> void processSketchOf(final SketchCommandLineParser<T> parser,
+      final Object sketch) {
+    parser.processSketch((T) sketch);
+  }
+}
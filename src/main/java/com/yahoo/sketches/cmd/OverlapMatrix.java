@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+import com.yahoo.memory.Memory;
+import com.yahoo.sketches.BinomialBoundsN;
+import com.yahoo.sketches.theta.CompactSketch;
+import com.yahoo.sketches.theta.Intersection;
+import com.yahoo.sketches.theta.SetOperation;
+import com.yahoo.sketches.theta.Sketch;
+
+/**
+ * The overlap of every pair of N theta sketches for "ds theta --overlap-matrix": the estimates of
+ * their intersection, union and Jaccard similarity, written as one TSV line per pair.
+ *
+ * <p>The sketches are loaded once, and the sorted hashes, theta, estimate and emptiness of each are
+ * taken from its compact, ordered form once and reused for all its pairs. The intersection of a
+ * pair is counted by a merge of their hashes under the smaller theta, without building a sketch,
+ * which is many times faster than a set operation per pair. The union is counted from it, as the
+ * hashes of both sketches under the smaller theta less those they share, so it is not trimmed to
+ * k either. The Jaccard bounds are those of the intersection over those of the union.</p>
+ *
+ * <p>The rows of the matrix are computed on a fork-join pool and written in order as they are
+ * done, with at most a few rows per thread held at a time.</p>
+ */
+final class OverlapMatrix {
+  private static final int ROWS_PER_THREAD = 4; //rows computed ahead of the one being written
+  private static final int STD_DEVS = 2;
+
+  private final List<String> names;
+  private final long[][] hashes; //sorted
+  private final long[] thetaLongs;
+  private final boolean[] empty;
+  private final double[] estimates;
+  private final boolean bounds;
+
+  /**
+   * @param names the names of the sketches
+   * @param sketches the sketches
+   * @param bounds if true, the 95% confidence bounds are written along with each estimate
+   */
+  OverlapMatrix(final List<String> names, final List<Sketch> sketches, final boolean bounds) {
+    this.names = names;
+    this.bounds = bounds;
+    final int n = sketches.size();
+    hashes = new long[n][];
+    thetaLongs = new long[n];
+    empty = new boolean[n];
+    estimates = new double[n];
+    for (int i = 0; i < n; i++) {
+      final CompactSketch sketch = compactOrdered(sketches.get(i));
+      final Memory mem = Memory.wrap(sketch.toByteArray());
+      final int preLongs = mem.getByte(0) & 0x3F;
+      hashes[i] = new long[sketch.getRetainedEntries(true)];
+      mem.getLongArray(preLongs << 3, hashes[i], 0, hashes[i].length);
+      thetaLongs[i] = (preLongs > 2) ? mem.getLong(16) : Long.MAX_VALUE;
+      empty[i] = sketch.isEmpty();
+      estimates[i] = sketch.getEstimate();
+    }
+  }
+
+  /**
+   * Computes the matrix and gives it to out, a header line and then the lines of the pairs of
+   * each row, in order.
+   * @param threads the number of threads
+   * @param out receives the TSV text, a row at a time
+   */
+  void write(final int threads, final Consumer<String> out) {
+    out.accept(header());
+    final int n = hashes.length;
+    final ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+    try {
+      final Deque<ForkJoinTask<String>> pending = new ArrayDeque<>();
+      final int ahead = Math.max(1, threads) * ROWS_PER_THREAD;
+      for (int i = 0; i < (n - 1); i++) {
+        final int row = i;
+        pending.add(pool.submit(() -> row(row)));
+        if (pending.size() >= ahead) { out.accept(pending.remove().join()); }
+      }
+      while (!pending.isEmpty()) { out.accept(pending.remove().join()); }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private String header() {
+    final StringBuilder sb = new StringBuilder("a\tb\ta_estimate\tb_estimate");
+    for (final String column : new String[] {"intersection", "union", "jaccard"}) {
+      if (bounds) { sb.append('\t').append(column).append("_lb"); }
+      sb.append('\t').append(column);
+      if (bounds) { sb.append('\t').append(column).append("_ub"); }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return the lines of the pairs of sketch i with each later sketch, without the last line
+   * separator
+   */
+  private String row(final int i) {
+    final StringBuilder sb = new StringBuilder();
+    for (int j = i + 1; j < hashes.length; j++) {
+      if (j > (i + 1)) { sb.append(SketchCommandLineParser.LS); }
+      final long thetaLong = Math.min(thetaLongs[i], thetaLongs[j]);
+      final double theta = (double) thetaLong / Long.MAX_VALUE;
+      final int countI = count(hashes[i], thetaLong);
+      final int countJ = count(hashes[j], thetaLong);
+      final int shared = shared(hashes[i], countI, hashes[j], countJ);
+      final int all = (countI + countJ) - shared;
+      final boolean noneShared = empty[i] || empty[j];
+      final boolean none = empty[i] && empty[j];
+      sb.append(names.get(i)).append('\t').append(names.get(j));
+      append(sb, estimates[i]);
+      append(sb, estimates[j]);
+      final double iLb = BinomialBoundsN.getLowerBound(shared, theta, STD_DEVS, noneShared);
+      final double iUb = BinomialBoundsN.getUpperBound(shared, theta, STD_DEVS, noneShared);
+      final double uLb = BinomialBoundsN.getLowerBound(all, theta, STD_DEVS, none);
+      final double uUb = BinomialBoundsN.getUpperBound(all, theta, STD_DEVS, none);
+      if (bounds) { append(sb, iLb); }
+      append(sb, shared / theta);
+      if (bounds) { append(sb, iUb); }
+      if (bounds) { append(sb, uLb); }
+      append(sb, all / theta);
+      if (bounds) { append(sb, uUb); }
+      if (bounds) { appendRatio(sb, (uUb > 0) ? iLb / uUb : 0); }
+      appendRatio(sb, (all > 0) ? (double) shared / all : 0);
+      if (bounds) { appendRatio(sb, (uLb > 0) ? Math.min(1.0, iUb / uLb) : ((all > 0) ? 1.0 : 0)); }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return the number of the sorted hashes under thetaLong
+   */
+  private static int count(final long[] hashes, final long thetaLong) {
+    final int index = Arrays.binarySearch(hashes, thetaLong);
+    return (index >= 0) ? index : -index - 1;
+  }
+
+  /**
+   * @return the number of hashes in both the first countA of a and the first countB of b
+   */
+  private static int shared(final long[] a, final int countA, final long[] b, final int countB) {
+    int shared = 0;
+    int i = 0;
+    int j = 0;
+    while ((i < countA) && (j < countB)) { //branch free, as random hashes defeat prediction
+      final long x = a[i];
+      final long y = b[j];
+      shared += (x == y) ? 1 : 0;
+      i += (x <= y) ? 1 : 0;
+      j += (x >= y) ? 1 : 0;
+    }
+    return shared;
+  }
+
+  private static void append(final StringBuilder sb, final double estimate) {
+    sb.append('\t').append(Math.round(estimate));
+  }
+
+  private static void appendRatio(final StringBuilder sb, final double ratio) {
+    sb.append('\t').append(String.format(Locale.ROOT, "%.4f", ratio));
+  }
+
+  /**
+   * @return the sketch as a compact, ordered sketch on the heap, itself if it is one already
+   */
+  private static CompactSketch compactOrdered(final Sketch sketch) {
+    if ((sketch instanceof CompactSketch) && sketch.isOrdered() && !sketch.isDirect()) {
+      return (CompactSketch) sketch;
+    }
+    final Intersection copy = SetOperation.builder().buildIntersection(); //of one, keeps every hash
+    copy.update(sketch);
+    return copy.getResult(true, null);
+  }
+}
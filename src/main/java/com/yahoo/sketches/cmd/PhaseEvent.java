@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event for each phase timed by {@link Stats}, recorded when the JVM runs a flight
+ * recording, e.g. with -XX:StartFlightRecording. Only used through the static methods, and only
+ * if the JVM has JFR, so that Stats never loads jdk.jfr classes otherwise.
+ */
+@Name("com.yahoo.sketches.cmd.Phase")
+@Label("Sketch Command Phase")
+@Category("DataSketches")
+@Description("A phase of a ds command: update, load, merge, query or save")
+final class PhaseEvent extends Event {
+  @Label("Command")
+  String command;
+
+  @Label("Phase")
+  String phase;
+
+  @Label("Lines")
+  long lines;
+
+  @Label("Bytes")
+  @DataAmount
+  long bytes;
+
+  /**
+   * @return a started event
+   */
+  static Object start() {
+    final PhaseEvent event = new PhaseEvent();
+    event.begin();
+    return event;
+  }
+
+  /**
+   * Ends and commits the given event.
+   * @param started an event returned by {@link #start()}
+   * @param command the command line
+   * @param phase the phase name
+   * @param lines the lines read in the phase
+   * @param bytes the bytes read in the phase
+   */
+  static void commit(final Object started, final String command, final String phase,
+      final long lines, final long bytes) {
+    final PhaseEvent event = (PhaseEvent) started;
+    event.end();
+    if (event.shouldCommit()) {
+      event.command = command;
+      event.phase = phase;
+      event.lines = lines;
+      event.bytes = bytes;
+      event.commit();
+    }
+  }
+}
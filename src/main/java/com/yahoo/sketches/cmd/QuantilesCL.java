@@ -5,85 +5,29 @@
 
 package com.yahoo.sketches.cmd;
 
-import static com.yahoo.sketches.Util.TAB;
-import static java.lang.Math.log10;
-import static java.lang.Math.pow;
-
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.util.Arrays;
-
-import org.apache.commons.cli.HelpFormatter;
-import org.apache.commons.cli.Option;
 
 import com.yahoo.memory.Memory;
+import com.yahoo.memory.WritableMemory;
+import com.yahoo.sketches.Family;
 import com.yahoo.sketches.quantiles.DoublesSketch;
 import com.yahoo.sketches.quantiles.DoublesSketchBuilder;
 import com.yahoo.sketches.quantiles.DoublesUnion;
 import com.yahoo.sketches.quantiles.DoublesUnionBuilder;
 import com.yahoo.sketches.quantiles.UpdateDoublesSketch;
 
-  public class QuantilesCL extends SketchCommandLineParser<UpdateDoublesSketch> {
+  public class QuantilesCL extends AbstractQuantilesCL<UpdateDoublesSketch>
+    implements SketchSerDe<UpdateDoublesSketch> {
 
-    private static final int DEFAULT_NUM_BINS = 10;
+    private static final int PRE_LONGS = 2;
+    private static final int SER_VER = 3;
+    private static final int COMPACT_FLAGS = 2 | 8 | 16; //read only, compact, ordered
+    private static final int COMBINED_BUFFER = 32; //the values, after the preamble, min and max
 
     QuantilesCL() {
       super();
-      // input options
-      options.addOption(Option.builder("k")
-          .desc("parameter k")
-          .hasArg()
-          .build());
-      // output options
-      options.addOption(Option.builder("r")
-          .longOpt("rank2value")
-          .desc("query values with ranks from list DOUBLES")
-          .hasArgs() //unlimited
-          .argName("DOUBLES")
-          .build());
-      options.addOption(Option.builder("R")
-          .longOpt("rank2value-file")
-          .desc("query values with ranks from FILE")
-          .hasArg()
-          .argName("FILE")
-          .build());
-      options.addOption(Option.builder("v")
-          .longOpt("value2rank")
-          .desc("query ranks with values from list DOUBLES")
-          .hasArgs() //unlimited
-          .argName("DOUBLES")
-          .build());
-      options.addOption(Option.builder("V")
-          .longOpt("value2rank-file")
-          .desc("query ranks with values from FILE")
-          .hasArg()
-          .argName("FILE")
-          .build());
-      options.addOption(Option.builder("b")
-          .longOpt("number-histogram-bars")
-          .desc("number of bars in the histogram")
-          .hasArg()
-          .argName("INT")
-          .build());
-      options.addOption(Option.builder("h")
-          .longOpt("query-histogram")
-          .desc("query histogram")
-          .build());
-      options.addOption(Option.builder("lh")
-          .longOpt("query-loghistogram")
-          .hasArg()
-          .argName("Zero Substitution")
-          .desc("query log scale histogram")
-          .build());
     }
 
-  @Override
-  protected void showHelp() {
-        final HelpFormatter helpf = new HelpFormatter();
-        helpf.setOptionComparator(null);
-        helpf.printHelp("ds quant", options);
-  }
-
   protected UpdateDoublesSketch buildSketch() {
     final DoublesSketchBuilder builder = DoublesSketch.builder();
     if (cl.hasOption("k")) {
@@ -93,183 +37,133 @@ import com.yahoo.sketches.quantiles.UpdateDoublesSketch;
   }
 
   @Override
-  protected void updateSketch(final BufferedReader br) {
+  protected LineUpdater<UpdateDoublesSketch> newLineUpdater() {
+    if (cl.hasOption("w")) { return newWeightedUpdater(); }
     final UpdateDoublesSketch sketch = buildSketch();
-    String itemStr = "";
-    try {
-      while ((itemStr = br.readLine()) != null) {
-        final double item = Double.parseDouble(itemStr);
-        sketch.update(item);
+    return new LineUpdater<UpdateDoublesSketch>() {
+      @Override
+      public void update(final LineReader line) {
+        sketch.update(LineParser.parseDouble(line, 0, line.length()));
+      }
+
+      @Override
+      public UpdateDoublesSketch getResult() {
+        return sketch;
       }
-      sketchList.add(sketch);
-    } catch (final IOException | NumberFormatException e ) {
-      printlnErr("Read Error: Item: " + itemStr + ", " + br.toString());
-      throw new RuntimeException(e);
+    };
+  }
+
+  /**
+   * Feeds "-w" lines to a union. A count of less than 2k, a full level, is given to it one at a
+   * time, and a larger count as a sketch of that many copies of the value.
+   */
+  private LineUpdater<UpdateDoublesSketch> newWeightedUpdater() {
+    final int k = buildSketch().getK();
+    final DoublesUnion union = DoublesUnion.builder().setMaxK(k).build();
+    return new LineUpdater<UpdateDoublesSketch>() {
+      @Override
+      public void update(final LineReader line) {
+        if (line.length() == 0) { return; }
+        final int sep = LineParser.indexOfSeparator(line, 0);
+        final double value = LineParser.parseDouble(line, 0, sep);
+        final long count = parseCount(line, sep);
+        if (count < (2L * k)) {
+          for (long i = 0; i < count; i++) {
+            union.update(value);
+          }
+        } else if (!Double.isNaN(value)) { //ignored, as by update
+          union.update(repeatedValue(k, value, count));
+        }
+      }
+
+      @Override
+      public UpdateDoublesSketch getResult() {
+        return union.getResult();
+      }
+    };
+  }
+
+  /**
+   * Writes the compact serialized form of a sketch of count copies of a value, which is what
+   * count updates with the value would build: count % 2k copies in the base buffer and a level of
+   * k copies for each bit set in count / 2k. The union merges it at the cost of its few levels.
+   * @param k the parameter k
+   * @param value the value
+   * @param count the number of copies, at least 1
+   * @return the sketch
+   */
+  static Memory repeatedValue(final int k, final double value, final long count) {
+    final int retained = (int) (count % (2L * k)) + (k * Long.bitCount(count / (2L * k)));
+    final WritableMemory mem = WritableMemory.allocate(COMBINED_BUFFER + (retained << 3));
+    mem.putByte(0, (byte) PRE_LONGS);
+    mem.putByte(1, (byte) SER_VER);
+    mem.putByte(2, (byte) Family.QUANTILES.getID());
+    mem.putByte(3, (byte) COMPACT_FLAGS);
+    mem.putShort(4, (short) k);
+    mem.putLong(8, count);
+    mem.putDouble(16, value); //min
+    mem.putDouble(24, value); //max
+    for (int i = 0; i < retained; i++) {
+      mem.putDouble(COMBINED_BUFFER + (i << 3), value);
     }
+    return mem;
   }
 
   @Override
-  protected UpdateDoublesSketch deserializeSketch(final byte[] bytes) {
+  public UpdateDoublesSketch updateSketch(final BinaryReader br) throws IOException {
+    final UpdateDoublesSketch sketch = buildSketch();
+    while (br.next()) {
+      sketch.update(br.doubleValue());
+    }
+    return sketch;
+  }
+
+  @Override
+  public UpdateDoublesSketch deserializeSketch(final byte[] bytes) {
     return UpdateDoublesSketch.heapify(Memory.wrap(bytes));  //still questionable
   }
 
   @Override
-  protected byte[] serializeSketch(final UpdateDoublesSketch sketch) {
+  public UpdateDoublesSketch wrapSketch(final Memory mem) {
+    final DoublesSketch sketch = DoublesSketch.wrap(mem);
+    //a compact sketch is not an UpdateDoublesSketch, so it is still heapified
+    return (sketch instanceof UpdateDoublesSketch) ? (UpdateDoublesSketch) sketch
+        : UpdateDoublesSketch.heapify(mem);
+  }
+
+  @Override
+  public byte[] serializeSketch(final UpdateDoublesSketch sketch) {
     return sketch.toByteArray();
   }
 
   @Override
-  protected void mergeSketches() {
+  protected SketchMerger<UpdateDoublesSketch> newMerger() {
     final DoublesUnionBuilder builder = DoublesUnion.builder();
     if (cl.hasOption("k")) {
       builder.setMaxK(Integer.parseInt(cl.getOptionValue("k")));
     }
     final DoublesUnion union = builder.build();
-    for (UpdateDoublesSketch sketch: sketchList) {
-      union.update(sketch);
-    }
-    sketchList.add(union.getResult());
-  }
-
-  @Override
-  protected void queryCurrentSketch() {
-    if (sketchList.size() > 0) {
-      final UpdateDoublesSketch sketch = sketchList.get(sketchList.size() - 1);
-      boolean optionChosen = false;
-
-      if (cl.hasOption("h")) { //Histogram
-        optionChosen = true;
-        int splitPoints = DEFAULT_NUM_BINS - 1;
-        if (cl.hasOption("b")) {
-          splitPoints = Integer.parseInt(cl.getOptionValue("b")) - 1;
-        }
-        final long n = sketch.getN();
-        final double[] splitsArr = getEvenSplits(sketch, splitPoints);
-        final double[] histArr = sketch.getPMF(splitsArr);
-        println("\nValue" + TAB + "Freq");
-        final double min = sketch.getMinValue();
-        String splitVal = String.format("%,f", min);
-        String freqVal = String.format("%,d", (long)(histArr[0] * n));
-        println(splitVal + TAB + freqVal);
-        for (int i = 0; i < splitsArr.length; i++) {
-          splitVal = String.format("%,f", splitsArr[i]  );
-          freqVal = String.format("%,d", (long)(histArr[i + 1] * n));
-          println(splitVal + TAB + freqVal);
-        }
-      }
-
-      if (cl.hasOption("lh")) { //log Histogram
-        optionChosen = true;
-        final double zeroSub = Double.parseDouble(cl.getOptionValue("lh"));
-        int splitPoints = DEFAULT_NUM_BINS - 1;
-        if (cl.hasOption("b")) {
-          splitPoints = Integer.parseInt(cl.getOptionValue("b")) - 1;
-        }
-        final long n = sketch.getN();
-        final double[] splitsArr = getLogSplits(sketch, splitPoints, zeroSub);
-        final double[] histArr = sketch.getPMF(splitsArr);
-        println("\nValue" + TAB + "Freq");
-        final double min = sketch.getMinValue();
-        String splitVal = String.format("%,f", min);
-        String freqVal = String.format("%,d", (long)(histArr[0] * n));
-        println(splitVal + TAB + freqVal);
-        for (int i = 0; i < splitsArr.length; i++) {
-          splitVal = String.format("%,f", splitsArr[i] );
-          freqVal = String.format("%,d", (long)(histArr[i + 1] * n));
-          println(splitVal + TAB + freqVal);
-        }
-      }
-
-      if (cl.hasOption("r")) { //ranks to value from list
-        optionChosen = true;
-        println("\nRank + TAB + Value");
-        final String[] ranks = cl.getOptionValues("r");
-        println("\nRank" + TAB + "Value");
-        for (String rank : ranks) {
-          final String quant = String.format("%.2f", sketch.getQuantile(Double.parseDouble(rank)));
-          println(rank + TAB + quant);
-        }
+    return new SketchMerger<UpdateDoublesSketch>() {
+      @Override
+      public void update(final UpdateDoublesSketch sketch) {
+        union.update(sketch);
       }
 
-      if (cl.hasOption("R")) { //ranks to value from file
-        optionChosen = true;
-        final String[] ranks = queryFileReader(cl.getOptionValue("R"));
-        println("\nRank" + TAB + "Value");
-        for (String rank: ranks) {
-            final String quant = String.format("%.2f", sketch.getQuantile(Double.parseDouble(rank)));
-            println(rank + TAB + quant);
-        }
+      @Override
+      public UpdateDoublesSketch getResult() {
+        return union.getResult();
       }
-
-      if (cl.hasOption("v")) { //values to ranks from list
-        optionChosen = true;
-        final String[] values = cl.getOptionValues("v");
-        final double[] valuesArray = Arrays.stream(values).mapToDouble(Double::parseDouble).toArray();
-        Arrays.sort(valuesArray);
-        final double[] cdf =  sketch.getCDF(valuesArray);
-        println("\nValue" + TAB + "Rank");
-        for (int i = 0; i < valuesArray.length ; i++) {
-          println(String.format("%.2f", valuesArray[i]) + TAB + String.format("%.6f",cdf[i]));
-        }
-      }
-
-      if (cl.hasOption("V")) { //values to ranks from file
-        optionChosen = true;
-        final String[] items = queryFileReader(cl.getOptionValue("V"));
-        final double[] valuesArray = Arrays.stream(items).mapToDouble(Double::parseDouble).toArray();
-        final double[] cdf =  sketch.getCDF(valuesArray);
-        println("\nValue" + TAB + "Rank");
-        for (int i = 0; i < valuesArray.length ; i++) {
-          println(String.format("%.2f", valuesArray[i]) + TAB + String.format("%.6f",cdf[i]));
-        }
-      }
-
-      // print deciles if no other option chosen
-      if (!optionChosen) {
-        final double[] ranks = new double[] {0, 0.1, 0.2, 0.3, 0.4, 0.5, 0.6, 0.7, 0.8, 0.9, 1.0};
-        println("Print deciles as default:");
-        println("\nRank" + TAB + "Value");
-        final double[] values = sketch.getQuantiles(ranks);
-        for (int i = 0; i < values.length; i++) {
-          println(String.format("%.1f", ranks[i]) + TAB + values[i]);
-        }
-      }
-    }
+    };
   }
 
-  private static double[] getEvenSplits(final DoublesSketch sketch, final int splitPoints) {
-    final double min = sketch.getMinValue();
-    final double max = sketch.getMaxValue();
-    return getSplits(min, max, splitPoints);
-  }
-
-  private static double[] getLogSplits(final DoublesSketch sketch, final int splitPoints,
-      final double zeroSub) {
-    double min = sketch.getMinValue();
-    min = (min == 0) ? zeroSub : min;
-    if (min < 0) {
-      throw new IllegalArgumentException(
-          "Log Histogram cannot be produced with negative values in the stream.");
-    }
-    final double max = sketch.getMaxValue();
-    final double logMin = log10(min);
-    final double logMax = log10(max);
-    final double[] logArr = getSplits(logMin, logMax, splitPoints);
-    final double[] expArr = new double[logArr.length];
-    for (int i = 0; i < logArr.length; i++) {
-      expArr[i] = pow(10.0, logArr[i]);
-    }
-    return expArr;
+  @Override
+  QuantilesView view(final UpdateDoublesSketch sketch) {
+    return QuantilesView.of(sketch);
   }
 
-  private static double[] getSplits(final double min, final double max, final int splitPoints) {
-    final double range = max - min;
-    final double delta = range / (splitPoints + 1);
-    final double[] splits = new double[splitPoints];
-    for (int i = 0; i < splitPoints; i++) {
-      splits[i] = min + (delta * (i + 1));
-    }
-    return splits;
+  @Override
+  double[] getPMF(final UpdateDoublesSketch sketch, final double[] splitPoints) {
+    return sketch.getPMF(splitPoints);
   }
 
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.util.Arrays;
+
+import com.yahoo.memory.Memory;
+import com.yahoo.sketches.kll.KllFloatsSketch;
+import com.yahoo.sketches.quantiles.DoublesSketch;
+
+/**
+ * The sorted view of a quantiles sketch: its retained values in ascending order, each with the
+ * total weight of the values before it. Any number of rank to value and value to rank queries are
+ * answered from it by binary search, with the same results as <i>getQuantile</i> and
+ * <i>getCDF</i> of the sketch, which rebuild this view on every call.
+ *
+ * <p>The sketch library does not expose the retained values and their weights, so they are read
+ * from the compact serialized form of the sketch: the base buffer of values of weight one,
+ * followed by a level of k values of weight 2<sup>i + 1</sup> for each bit i set in
+ * n / 2k. Those of a KLL sketch follow its levels, where level i holds values of weight
+ * 2<sup>i</sup>.</p>
+ */
+final class QuantilesView {
+  private static final int MIN_MAX_BYTES = 16; //the min and max values after the preamble
+  private static final int KLL_NUM_LEVELS_BYTE = 18;
+  private static final int KLL_LEVELS_START = 20; //the start of each level, then min, max, values
+
+  private final double[] values;   //ascending
+  private final long[] cumWeights; //cumWeights[i] is the weight of values[0, i), the last is n
+  private final double min;
+  private final double max;
+  private final boolean floats;
+
+  /**
+   * @param values the retained values, in any order
+   * @param weights the weight of each value
+   * @param min the least value of the stream
+   * @param max the greatest value of the stream
+   * @param floats true if the sketch holds floats, so that query values are rounded to floats
+   */
+  QuantilesView(final double[] values, final long[] weights, final double min, final double max,
+      final boolean floats) {
+    final Integer[] order = new Integer[values.length];
+    for (int i = 0; i < order.length; i++) { order[i] = i; }
+    Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+    this.values = new double[values.length];
+    cumWeights = new long[values.length + 1];
+    for (int i = 0; i < order.length; i++) {
+      this.values[i] = values[order[i]];
+      cumWeights[i + 1] = cumWeights[i] + weights[order[i]];
+    }
+    this.min = min;
+    this.max = max;
+    this.floats = floats;
+  }
+
+  /**
+   * @param sketch the sketch
+   * @return the sorted view of the sketch
+   */
+  static QuantilesView of(final DoublesSketch sketch) {
+    final long n = sketch.getN();
+    final int k = sketch.getK();
+    final double[] values = new double[sketch.getRetainedItems()];
+    final long[] weights = new long[values.length];
+    if (n > 0) {
+      final Memory mem = Memory.wrap(sketch.toByteArray(true));
+      final int preLongs = mem.getByte(0) & 0x3F;
+      mem.getDoubleArray((preLongs << 3) + MIN_MAX_BYTES, values, 0, values.length);
+      final int baseCount = (int) (n % (2L * k));
+      Arrays.fill(weights, 0, baseCount, 1);
+      int offset = baseCount;
+      long weight = 2;
+      for (long bits = n / (2L * k); bits != 0; bits >>>= 1, weight <<= 1) {
+        if ((bits & 1) != 0) {
+          Arrays.fill(weights, offset, offset + k, weight);
+          offset += k;
+        }
+      }
+    }
+    return new QuantilesView(values, weights, sketch.getMinValue(), sketch.getMaxValue(), false);
+  }
+
+  /**
+   * @param sketch the sketch
+   * @return the sorted view of the sketch
+   */
+  static QuantilesView of(final KllFloatsSketch sketch) {
+    final double[] values = new double[sketch.getNumRetained()];
+    final long[] weights = new long[values.length];
+    if (!sketch.isEmpty()) {
+      final Memory mem = Memory.wrap(sketch.toByteArray());
+      final int numLevels = mem.getByte(KLL_NUM_LEVELS_BYTE) & 0xFF;
+      final int valuesStart = KLL_LEVELS_START + (numLevels << 2) + (2 * Float.BYTES);
+      final int first = mem.getInt(KLL_LEVELS_START); //the levels start at an offset in the sketch
+      for (int level = 0; level < numLevels; level++) {
+        final int from = mem.getInt(KLL_LEVELS_START + (level << 2)) - first;
+        final int to = (level < (numLevels - 1))
+            ? mem.getInt(KLL_LEVELS_START + ((level + 1) << 2)) - first : values.length;
+        for (int i = from; i < to; i++) {
+          values[i] = mem.getFloat(valuesStart + (i << 2));
+          weights[i] = 1L << level;
+        }
+      }
+    }
+    return new QuantilesView(values, weights, sketch.getMinValue(), sketch.getMaxValue(), true);
+  }
+
+  /**
+   * @return the number of values of the stream
+   */
+  long getN() {
+    return cumWeights[values.length];
+  }
+
+  /**
+   * @return the least value of the stream
+   */
+  double getMinValue() {
+    return min;
+  }
+
+  /**
+   * @return the greatest value of the stream
+   */
+  double getMaxValue() {
+    return max;
+  }
+
+  /**
+   * @return true if the sketch holds floats
+   */
+  boolean hasFloats() {
+    return floats;
+  }
+
+  /**
+   * @param rank the normalized rank, from 0 to 1
+   * @return the approximate value of the given rank, NaN if the stream is empty
+   * @throws IllegalArgumentException if the rank is not in [0, 1]
+   */
+  double quantile(final double rank) {
+    if (!((rank >= 0) && (rank <= 1))) {
+      throw new IllegalArgumentException("Rank must be in [0, 1]: " + rank);
+    }
+    final long n = getN();
+    if (n == 0) { return Double.NaN; }
+    if (rank == 0) { return min; }
+    if (rank == 1) { return max; }
+    final long pos = Math.min((long) Math.floor(rank * n), n - 1);
+    int lo = 0; //the last i with cumWeights[i] <= pos, which is below values.length as pos < n
+    int hi = values.length;
+    while (lo < hi) {
+      final int mid = (lo + hi + 1) >>> 1;
+      if (cumWeights[mid] <= pos) { lo = mid; } else { hi = mid - 1; }
+    }
+    return values[lo];
+  }
+
+  /**
+   * @param value the value
+   * @return the approximate fraction of the stream that is less than the value, NaN if the stream
+   * is empty
+   */
+  double rank(final double value) {
+    final long n = getN();
+    if (n == 0) { return Double.NaN; }
+    final double v = floats ? (float) value : value;
+    int lo = 0; //the number of values less than value
+    int hi = values.length;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (values[mid] < v) { lo = mid + 1; } else { hi = mid; }
+    }
+    return (double) cumWeights[lo] / n;
+  }
+}
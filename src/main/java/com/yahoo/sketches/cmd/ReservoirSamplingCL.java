@@ -1,9 +1,8 @@
 package com.yahoo.sketches.cmd;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.util.List;
 
-import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 
 import com.yahoo.memory.Memory;
@@ -12,7 +11,8 @@ import com.yahoo.sketches.sampling.ReservoirItemsSketch;
 import com.yahoo.sketches.sampling.ReservoirItemsUnion;
 
 
-public class ReservoirSamplingCL extends SketchCommandLineParser<ReservoirItemsSketch<Long>> {
+public class ReservoirSamplingCL extends SketchCommandLineParser<ReservoirItemsSketch<Long>>
+    implements SketchSerDe<ReservoirItemsSketch<Long>>, BinaryInput<ReservoirItemsSketch<Long>> {
 
   ReservoirSamplingCL() {
     super();
@@ -21,14 +21,19 @@ public class ReservoirSamplingCL extends SketchCommandLineParser<ReservoirItemsS
         .desc("parameter k")
         .hasArg()
         .build());
+    options.addOption(Option.builder()
+        .longOpt("input-format")
+        .desc("read the input as packed little-endian binary values instead of text lines: "
+            + "i64le (long), or f64le (double) or f32le (float) holding whole numbers")
+        .hasArg()
+        .argName("FORMAT")
+        .build());
 
   }
 
   @Override
   protected void showHelp() {
-        final HelpFormatter helpf = new HelpFormatter();
-        helpf.setOptionComparator(null);
-        helpf.printHelp( "ds rsamp", options);
+    printHelp("ds rsamp");
   }
 
   protected ReservoirItemsSketch<Long> buildSketch() {
@@ -37,40 +42,85 @@ public class ReservoirSamplingCL extends SketchCommandLineParser<ReservoirItemsS
   }
 
   @Override
-  protected void updateSketch(final BufferedReader br) {
-    buildSketch();
-    String itemStr = "";
+  protected LineUpdater<ReservoirItemsSketch<Long>> newLineUpdater() {
+    final ReservoirItemsSketch<Long> sketch = buildSketch();
+    return new LineUpdater<ReservoirItemsSketch<Long>>() {
+      @Override
+      public void update(final LineReader line) {
+        sketch.update(LineParser.parseLong(line, 0, line.length()));
+      }
+
+      @Override
+      public ReservoirItemsSketch<Long> getResult() {
+        return sketch;
+      }
+    };
+  }
+
+  @Override
+  public ReservoirItemsSketch<Long> updateSketch(final BinaryReader br) throws IOException {
     final ReservoirItemsSketch<Long> sketch = buildSketch();
     try {
-      while ((itemStr = br.readLine()) != null) {
-        final long item = Long.parseLong(itemStr);
-        sketch.update(item);
+      while (br.next()) {
+        sketch.update(br.longValue());
       }
-      sketchList.add(sketch);
-    } catch (final IOException | NumberFormatException e ) {
-      printlnErr("Read Error: Item: " + itemStr + ", " + br.toString());
+    } catch (final NumberFormatException e) {
+      printlnErr("Read Error: Item: " + br.toString());
       throw new RuntimeException(e);
     }
+    return sketch;
+  }
+
+  @Override
+  public ReservoirItemsSketch<Long>  deserializeSketch(final byte[] bytes) {
+    return wrapSketch(Memory.wrap(bytes));
   }
 
   @Override
-  protected ReservoirItemsSketch<Long>  deserializeSketch(final byte[] bytes) {
-    return ReservoirItemsSketch.heapify(Memory.wrap(bytes), new ArrayOfLongsSerDe());
+  public ReservoirItemsSketch<Long> wrapSketch(final Memory mem) {
+    return ReservoirItemsSketch.heapify(mem, new ArrayOfLongsSerDe());
   }
 
   @Override
-  protected byte[] serializeSketch(final ReservoirItemsSketch<Long> sketch) {
+  public byte[] serializeSketch(final ReservoirItemsSketch<Long> sketch) {
     return sketch.toByteArray(new ArrayOfLongsSerDe());
   }
 
   @Override
-  protected void mergeSketches() {
-    final int k = sketchList.get(sketchList.size() - 1).getK();
+  protected ReservoirItemsSketch<Long> union(final List<ReservoirItemsSketch<Long>> sketches) {
+    final int k = sketches.get(sketches.size() - 1).getK();
     final ReservoirItemsUnion<Long> union = ReservoirItemsUnion.newInstance(k);
-    for (ReservoirItemsSketch<Long>  sketch: sketchList) {
+    for (ReservoirItemsSketch<Long>  sketch: sketches) {
       union.update(sketch);
     }
-    sketchList.add(union.getResult());
+    return union.getResult();
+  }
+
+  /**
+   * Merges the sketches into a union of the k of the first, where {@link #union(List)} takes the k
+   * of the last, which a merger does not know until its result is taken.
+   */
+  @Override
+  protected SketchMerger<ReservoirItemsSketch<Long>> newMerger() {
+    return new SketchMerger<ReservoirItemsSketch<Long>>() {
+      private ReservoirItemsUnion<Long> union;
+
+      @Override
+      public void update(final ReservoirItemsSketch<Long> sketch) {
+        if (union == null) { union = ReservoirItemsUnion.newInstance(sketch.getK()); }
+        union.update(sketch);
+      }
+
+      @Override
+      public ReservoirItemsSketch<Long> getResult() {
+        return union.getResult();
+      }
+    };
+  }
+
+  @Override
+  protected void mergeSketches() {
+    sketchList.add(union(sketchList));
   }
 
   @Override
@@ -87,7 +137,7 @@ public class ReservoirSamplingCL extends SketchCommandLineParser<ReservoirItemsS
         final Long[] samples = sketch.getSamples();
         println("\nUniform Samples");
         for (int i = 0; i < samples.length; i++) {
-            System.out.println(samples[i]);
+            println(String.valueOf(samples[i]));
         }
       }
     }
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The binary protocol between SketchClient and SketchServer, one request per connection. All
+ * integers are big-endian and all strings are an int length followed by UTF-8 bytes.
+ *
+ * <pre>
+ * request:  MAGIC, int argument count, arguments, input chunks
+ * response: output frames, then END and an int status, 0 if the command succeeded
+ * </pre>
+ *
+ * <p>A request has at most MAX_ARGS arguments of at most MAX_ARGS_BYTES in all, and the server
+ * resolves their file names against its own root, so a client cannot choose the directory. The
+ * input is the client's stdin, sent as chunks of an int length of at most CHUNK_BYTES and that
+ * many bytes, ending with an empty chunk. An output frame is a byte, STDOUT or STDERR, an int
+ * length and that many bytes. Input and output may overlap, so a client sends its input from a
+ * separate thread.</p>
+ */
+final class ServerProtocol {
+  static final int MAGIC = 0x44530002; //"DS", version 2
+  static final byte END = 0;
+  static final byte STDOUT = 1;
+  static final byte STDERR = 2;
+  static final int CHUNK_BYTES = 1 << 16;
+  static final int MAX_ARGS = 1 << 12;
+  static final int MAX_ARGS_BYTES = 1 << 20;
+
+  private ServerProtocol() {}
+
+  static void writeArgs(final DataOutputStream out, final String[] args) throws IOException {
+    out.writeInt(args.length);
+    for (String arg : args) {
+      final byte[] bytes = arg.getBytes(UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * Reads the arguments of a request, checking each length before allocating it.
+   * @param in the request
+   * @return the arguments
+   * @throws IOException if there are more than MAX_ARGS arguments or MAX_ARGS_BYTES in all
+   */
+  static String[] readArgs(final DataInputStream in) throws IOException {
+    final int count = in.readInt();
+    if ((count < 0) || (count > MAX_ARGS)) {
+      throw new IOException("Bad argument count: " + count);
+    }
+    final String[] args = new String[count];
+    int budget = MAX_ARGS_BYTES;
+    for (int i = 0; i < count; i++) {
+      final int length = in.readInt();
+      if ((length < 0) || (length > budget)) {
+        throw new IOException("Bad argument length: " + length);
+      }
+      budget -= length;
+      final byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      args[i] = new String(bytes, UTF_8);
+    }
+    return args;
+  }
+
+  /**
+   * Reads the input chunks of a request as a stream that ends at the empty chunk.
+   */
+  static final class ChunkedInputStream extends InputStream {
+    private final DataInputStream in;
+    private int remaining; //in the current chunk
+    private boolean eof;
+
+    ChunkedInputStream(final DataInputStream in) {
+      this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+      final byte[] b = new byte[1];
+      return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xFF);
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      if (len == 0) { return 0; }
+      if ((remaining == 0) && !eof) {
+        remaining = in.readInt();
+        if ((remaining < 0) || (remaining > CHUNK_BYTES)) {
+          throw new IOException("Bad input chunk length: " + remaining);
+        }
+        eof = remaining == 0;
+      }
+      if (eof) { return -1; }
+      final int n = in.read(b, off, Math.min(len, remaining));
+      if (n < 0) { throw new IOException("Connection closed within an input chunk"); }
+      remaining -= n;
+      return n;
+    }
+  }
+
+  /**
+   * Buffers output and sends it as frames of the given kind on flush, or whenever a chunk fills.
+   * Frames of different kinds may share the connection, so sending synchronizes on it.
+   */
+  static final class FrameOutputStream extends OutputStream {
+    private final DataOutputStream out;
+    private final byte kind;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    FrameOutputStream(final DataOutputStream out, final byte kind) {
+      this.out = out;
+      this.kind = kind;
+    }
+
+    @Override
+    public synchronized void write(final int b) throws IOException {
+      buffer.write(b);
+      if (buffer.size() >= CHUNK_BYTES) { flush(); }
+    }
+
+    @Override
+    public synchronized void write(final byte[] b, final int off, final int len)
+        throws IOException {
+      buffer.write(b, off, len);
+      if (buffer.size() >= CHUNK_BYTES) { flush(); }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+      if (buffer.size() == 0) { return; }
+      synchronized (out) {
+        out.writeByte(kind);
+        out.writeInt(buffer.size());
+        buffer.writeTo(out);
+        out.flush();
+      }
+      buffer.reset();
+    }
+  }
+}
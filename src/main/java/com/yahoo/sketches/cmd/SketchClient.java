@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sends a ds command, and its stdin if it reads stdin, to a SketchServer and prints the output
+ * of the command. See {@link ServerProtocol}.
+ */
+final class SketchClient {
+  static final String SERVER_ENV = "DS_SERVER";
+
+  private SketchClient() {}
+
+  /**
+   * Runs <i>ds client PORT COMMAND</i>.
+   * @param args the command line, starting with "client"
+   */
+  static void run(final String[] args) {
+    if (args.length < 3) {
+      System.err.println("Usage: ds client PORT COMMAND, see ds serve -help");
+      return;
+    }
+    run(args[1], Arrays.copyOfRange(args, 2, args.length));
+  }
+
+  /**
+   * @param server [HOST:]PORT of the server, the host defaults to the loopback address, the only
+   * one that the server listens on
+   * @param command the ds command line
+   */
+  static void run(final String server, final String[] command) {
+    final int colon = server.lastIndexOf(':');
+    final int status;
+    try (Socket socket = new Socket((colon < 0) ? InetAddress.getLoopbackAddress()
+        : InetAddress.getByName(server.substring(0, colon)),
+        Integer.parseInt(server.substring(colon + 1)))) {
+      final DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      out.writeInt(ServerProtocol.MAGIC);
+      ServerProtocol.writeArgs(out, command);
+      out.flush();
+      if (readsStdIn(command)) {
+        final Thread sender = new Thread(() -> sendStdIn(System.in, out), "ds-stdin");
+        sender.setDaemon(true); //the command may end before stdin does
+        sender.start();
+      } else {
+        out.writeInt(0);
+        out.flush();
+      }
+      status = printOutput(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+    } catch (final IOException e) {
+      System.err.println("Client Error: " + server + ": " + e.getMessage());
+      throw new RuntimeException(e);
+    }
+    if (status != 0) {
+      throw new RuntimeException("Command failed on " + server);
+    }
+  }
+
+  /**
+   * The same rule as SketchCommandLineParser: a command reads stdin if it has no "-d" and no
+   * "-s" input, or if it updates a named sketch with "--update". A query of a named sketch does
+   * not read stdin.
+   */
+  private static boolean readsStdIn(final String[] command) {
+    final List<String> args = Arrays.asList(command);
+    if (args.contains("--update")) { return true; }
+    if (args.contains("-help") || args.contains("--name")) { return false; }
+    return !(args.contains("-d") || args.contains("--data-from-file") || args.contains("-s")
+        || args.contains("--sketch-input-files"));
+  }
+
+  private static void sendStdIn(final InputStream in, final DataOutputStream out) {
+    final byte[] buf = new byte[ServerProtocol.CHUNK_BYTES];
+    try {
+      int n;
+      while ((n = in.read(buf)) >= 0) {
+        if (n == 0) { continue; }
+        out.writeInt(n);
+        out.write(buf, 0, n);
+        out.flush();
+      }
+      out.writeInt(0);
+      out.flush();
+    } catch (final IOException e) {
+      //the server has finished the command
+    }
+  }
+
+  /**
+   * @return the status of the command
+   */
+  private static int printOutput(final DataInputStream in) throws IOException {
+    final byte[] buf = new byte[ServerProtocol.CHUNK_BYTES];
+    while (true) {
+      final byte kind = in.readByte();
+      if (kind == ServerProtocol.END) {
+        return in.readInt();
+      }
+      final PrintStream target = (kind == ServerProtocol.STDERR) ? System.err : System.out;
+      int remaining = in.readInt();
+      while (remaining > 0) {
+        final int n = Math.min(remaining, buf.length);
+        in.readFully(buf, 0, n);
+        target.write(buf, 0, n);
+        remaining -= n;
+      }
+      target.flush();
+    }
+  }
+}
@@ -7,20 +7,51 @@ package com.yahoo.sketches.cmd;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.CommandLineParser; //interface
 import org.apache.commons.cli.DefaultParser;     //current recommended implementation
+import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
+import com.yahoo.memory.Memory;
+import com.yahoo.memory.WritableMemory;
+
 /**
  * A Command Line Parser for the basic sketch functions. This is intentionally a very simple parser
  * with limited functionality that can be used for small experiments and for demos.
@@ -36,7 +67,9 @@ import org.apache.commons.cli.ParseException;
  *
  * <p>Do a <i>mvn clean package</i> and then move the
  * <i>sketches-cmd-x.y.z-...-with-shaded-core.jar</i> to the root of your install
- * directory.
+ * directory. Built with java 13 or later, <i>mvn clean package -P cds</i> also makes a
+ * class-data-sharing archive, <i>target/ds-N.jsa</i> for java N, that shortens startup when it is
+ * moved there with the jar.
  *
  * <p>At the root of the directory is a bash shell script file <i>ds</i>. Make this file
  * executable with <i>chmod 755 ds</i> or equivalent.
@@ -50,40 +83,204 @@ public abstract class SketchCommandLineParser<T> {
   public static final String LS = System.getProperty("line.separator");
   static final String BOLD = "\033[1m"; //4 char
   static final String OFF = "\033[0m";  //4 char
+  static final int DEFAULT_MAX_GROUPS = 1 << 16;
+  static final int MAP_MIN_BYTES = 1 << 16; //smaller "-s" files are read, not memory mapped
+  static final int MERGE_RANGE = 64; //fewest "-s" files merged by one task of a merging thread
 
 
   ArrayList<T> sketchList;
   Options options;
   org.apache.commons.cli.CommandLine cl;
 
+  //set by SketchServer for each request, null when run from the command line
+  Path root;
+  ReadableByteChannel stdIn;
+  SketchStore store;
+
+  //the output and the errors of the command: System.out and System.err, unless set by
+  //SketchServer to those of a request or by MultiCL to its own
+  PrintStream out = System.out;
+  PrintStream err = System.err;
+
+  //set with "--stats" or "--progress", null otherwise
+  Stats stats;
+
+  //set with "--direct": updates the sketch in the memory mapped "-o" file, null otherwise
+  LineUpdater<T> directUpdater;
+
+  //the size of the sketch last saved to "-o", reported by "--stats", -1 if none was saved
+  private long savedBytes = -1;
+
+  //the sketch type given to ds, e.g. "hll", recorded in bundles
+  String type;
+
+  //set while "-d" files are read with "--per-file-output bundle:FILE", null otherwise
+  Bundle.Writer perFileBundle;
+
+  /**
+   * The options that read, save or print a single sketch ("-s", "-o", "-p", "--per-file-output",
+   * "--group-by" and the like) are added only for parsers that are the {@link SketchSerDe} of their
+   * sketches, and "--direct" only for those that are a {@link DirectSketch}.
+   */
   SketchCommandLineParser() {
+    final boolean sketchFileOptions = this instanceof SketchSerDe;
     sketchList = new ArrayList<>();
     options = new Options();
     options.addOption(Option.builder("d")
         .longOpt("data-from-file")
-        .desc("read data from FILE")
-        .hasArg()
-        .argName("FILE")
-        .build());
-    options.addOption(Option.builder("s")
-        .longOpt("sketch-input-files")
-        .desc("read sketches from FILES")
+        .desc("read data from FILES, directories or glob patterns")
         .hasArgs() //unlimited
         .argName("FILES")
         .build());
-    options.addOption(Option.builder("o")
-        .longOpt("sketch-output-file")
-        .desc("save sketch to FILE")
-        .hasArg()
-        .argName("FILE")
-        .build());
+    if (sketchFileOptions) {
+      options.addOption(Option.builder("s")
+          .longOpt("sketch-input-files")
+          .desc("read sketches from FILES, directories or glob patterns, or the sketches of "
+              + "bundle:FILE selected by --keys")
+          .hasArgs() //unlimited
+          .argName("FILES")
+          .build());
+      options.addOption(Option.builder("o")
+          .longOpt("sketch-output-file")
+          .desc("save sketch to FILE, or to bundle:FILE under --key, or with --group-by, each "
+              + "group under its key")
+          .hasArg()
+          .argName("FILE")
+          .build());
+      options.addOption(Option.builder()
+          .longOpt("key")
+          .desc("the key of the \"-o\" sketch in bundle:FILE, replacing any sketch under KEY")
+          .hasArg()
+          .argName("KEY")
+          .build());
+      options.addOption(Option.builder()
+          .longOpt("keys")
+          .desc("read only the sketches of \"-s\" bundles under these comma-separated keys and "
+              + "inclusive key ranges FROM..TO, e.g. 2018-06-01..2018-06-07,us")
+          .hasArg()
+          .argName("KEYS")
+          .build());
+    }
     options.addOption(Option.builder("help")
         .desc("usage/help")
         .build());
-    options.addOption(Option.builder("p")
-        .desc("print sketch summary")
-        .longOpt("print")
+    if (sketchFileOptions) {
+      options.addOption(Option.builder("p")
+          .desc("print sketch summary")
+          .longOpt("print")
+          .build());
+    }
+    options.addOption(Option.builder("threads")
+        .longOpt("threads")
+        .desc("split the \"-d\" FILE into line-aligned ranges and sketch them with N threads, "
+            + "or read N \"-d\" FILES at a time, or merge the \"-s\" FILES with N threads")
+        .hasArg()
+        .argName("N")
+        .build());
+    options.addOption(Option.builder()
+        .longOpt("field")
+        .desc("sketch only column N (counting from 1) of each line, or the value of top-level KEY "
+            + "of each JSON line. Lines without the field are skipped")
+        .hasArg()
+        .argName("N|KEY")
+        .build());
+    options.addOption(Option.builder()
+        .longOpt("delimiter")
+        .desc("column delimiter for --field N, a single ASCII character, default tab")
+        .hasArg()
+        .argName("CHAR")
+        .build());
+    if (sketchFileOptions) {
+      options.addOption(Option.builder()
+          .longOpt("per-file-output")
+          .desc("also save the sketch of each \"-d\" file to DIR/<file name>.bin, or to "
+              + "bundle:FILE under its file name")
+          .hasArg()
+          .argName("DIR")
+          .build());
+    }
+    if (sketchFileOptions) { //groups are spilled to disk as serialized sketches
+      options.addOption(Option.builder()
+          .longOpt("group-by")
+          .desc("build one sketch per distinct value of column N or top-level JSON KEY and query "
+              + "each")
+          .hasArg()
+          .argName("N|KEY")
+          .build());
+      options.addOption(Option.builder()
+          .longOpt("max-groups")
+          .desc("most groups held in memory for --group-by before the least recently updated half "
+              + "is spilled to disk, default " + DEFAULT_MAX_GROUPS)
+          .hasArg()
+          .argName("N")
+          .build());
+      options.addOption(Option.builder()
+          .longOpt("group-output")
+          .desc("also save the key and sketch of each --group-by group to FILE")
+          .hasArg()
+          .argName("FILE")
+          .build());
+    }
+    options.addOption(Option.builder()
+        .longOpt("window-lines")
+        .desc("keep reading stdin and output a new sketch of every N lines")
+        .hasArg()
+        .argName("N")
         .build());
+    options.addOption(Option.builder()
+        .longOpt("window-seconds")
+        .desc("keep reading stdin and output a new sketch of the lines of every S seconds")
+        .hasArg()
+        .argName("S")
+        .build());
+    options.addOption(Option.builder()
+        .longOpt("window-slots")
+        .desc("slide over the last K windows: the output of each window is the union of its sketch "
+            + "and the sketches of the K - 1 windows before it")
+        .hasArg()
+        .argName("K")
+        .build());
+    if (sketchFileOptions) {
+      options.addOption(Option.builder()
+          .longOpt("name")
+          .desc("with ds serve: add the input, if any, to the sketch held by the server under NAME "
+              + "and query that sketch")
+          .hasArg()
+          .argName("NAME")
+          .build());
+      options.addOption(Option.builder()
+          .longOpt("update")
+          .desc("with --name: read stdin into the named sketch")
+          .build());
+      options.addOption(Option.builder()
+          .longOpt("window-output")
+          .desc("also save the sketch of each window to DIR/window-<number>.bin. "
+              + "With \"-o\", FILE holds the last window")
+          .hasArg()
+          .argName("DIR")
+          .build());
+    }
+    options.addOption(Option.builder()
+        .longOpt("stats")
+        .desc("print the wall time, lines and bytes per second, bytes allocated and GC time of "
+            + "each phase, and the size of the sketch saved to \"-o\", to stderr as a text table "
+            + "or as json")
+        .hasArg()
+        .optionalArg(true)
+        .argName("text|json")
+        .build());
+    options.addOption(Option.builder()
+        .longOpt("progress")
+        .desc("print the lines read, the rate and, for \"-d\" files, the percentage and ETA to "
+            + "stderr every second")
+        .build());
+    if (this instanceof DirectSketch) {
+      options.addOption(Option.builder()
+          .longOpt("direct")
+          .desc("update the sketch in the \"-o\" FILE in place, through a memory map, from \"-d\" "
+              + "or stdin. A new FILE is created, an existing one keeps its sketch and is added to")
+          .build());
+    }
   }
 
   /**
@@ -97,29 +294,17 @@ public abstract class SketchCommandLineParser<T> {
     }
     final String token0 = args[0].toLowerCase();
     switch (token0) {
-      case "freq":
-        final FrequenciesCL fcl = new FrequenciesCL();
-        fcl.runCommandLineUtil(args);
+      case "serve":
+        new SketchServer().runCommandLineUtil(args);
         break;
-      case "hll":
-        final HllCL hllcl = new HllCL();
-        hllcl.runCommandLineUtil(args);
+      case "client":
+        SketchClient.run(args);
         break;
-      case "quant":
-          final QuantilesCL qcl = new QuantilesCL();
-          qcl.runCommandLineUtil(args);
-          break;
-      case "rsamp":
-        final ReservoirSamplingCL rscl = new ReservoirSamplingCL();
-        rscl.runCommandLineUtil(args);
+      case "gen":
+        new WorkloadGenerator().runCommandLineUtil(args);
         break;
-      case "theta":
-        final ThetaCL tcl = new ThetaCL();
-        tcl.runCommandLineUtil(args);
-        break;
-      case "vsamp":
-        final VarOptSamplingCL vscl = new VarOptSamplingCL();
-        vscl.runCommandLineUtil(args);
+      case "bundle":
+        Bundle.list(args);
         break;
       case "help":
       case "-help":
@@ -129,28 +314,97 @@ public abstract class SketchCommandLineParser<T> {
         manual();
         break;
       default: {
-          printlnErr("Unrecognized Sketch Type: " + token0);
+        final SketchCommandLineParser<?> parser = newParser(args);
+        if (parser == null) {
+          System.err.println("Unrecognized Sketch Type: " + token0);
           help();
+        } else if (System.getenv(SketchClient.SERVER_ENV) != null) {
+          SketchClient.run(System.getenv(SketchClient.SERVER_ENV), args);
+        } else {
+          parser.runCommandLineUtil(args);
+        }
       }
     }
   }
 
-  protected void runCommandLineUtil(final String[] args) {
-    boolean sFlag = false;
-    boolean dFlag = false;
-    final CommandLineParser parser = new DefaultParser();
-    try {
-      cl = parser.parse(options,  args);
-      if (cl.hasOption("help")) {
-        showHelp();
-        return;
+  /**
+   * @param args the command line, of which the first token is the sketch type. "quant --kll"
+   * selects the KLL sketch.
+   * @return a new parser for the given sketch type, or null if the type is not recognized
+   */
+  static SketchCommandLineParser<?> newParser(final String... args) {
+    //Held as an Object so that verifying this method does not load every parser class to check
+    //that it is a SketchCommandLineParser: only the chosen parser's classes load.
+    final Object parser;
+    String type = args[0].toLowerCase();
+    switch (type) {
+      case "freq": parser = new FrequenciesCL(); break;
+      case "hll": parser = new HllCL(); break;
+      case "multi": parser = new MultiCL(); break;
+      case "quant": {
+        final QuantilesCL classic = new QuantilesCL();
+        if (isKll(classic.options, args)) {
+          parser = new KllCL();
+          type = "quant --kll"; //recorded in bundles, whose sketches differ from the classic ones
+        } else {
+          parser = classic;
+        }
+        break;
       }
-      sFlag = cl.hasOption("s");
-      dFlag = cl.hasOption("d");
+      case "rsamp": parser = new ReservoirSamplingCL(); break;
+      case "theta": parser = new ThetaCL(); break;
+      case "tuple": parser = new TupleCL(); break;
+      case "vsamp": parser = new VarOptSamplingCL(); break;
+      default: return null;
+    }
+    final SketchCommandLineParser<?> result = (SketchCommandLineParser<?>) parser;
+    result.type = type;
+    return result;
+  }
+
+  /**
+   * @param options the options of "ds quant", which both of its sketches take
+   * @param args the command line
+   * @return true if the command line, parsed with the given options, selects the KLL sketch. An
+   * abbreviation such as "--kl" does, a "--kll" that follows "--" as an argument does not.
+   * A command line that does not parse is left to the chosen parser to report.
+   */
+  private static boolean isKll(final Options options, final String[] args) {
+    try {
+      return new DefaultParser().parse(options, args).hasOption("kll");
     } catch (final ParseException e) {
-      printlnErr("runCommandLineUtil Error: ");
-      throw new RuntimeException(e);
+      return false;
+    }
+  }
+
+  protected void runCommandLineUtil(final String[] args) {
+    if (!parseCommandLine(args)) { return; }
+    if (cl.hasOption("stats") || cl.hasOption("progress")) {
+      stats = new Stats(String.join(" ", args),
+          cl.hasOption("stats") ? cl.getOptionValue("stats", "text") : null, err);
+      if (cl.hasOption("progress")) { stats.startProgress(); }
+    }
+    if (cl.hasOption("direct")) {
+      processDirect();
+    } else if (cl.hasOption("name")) {
+      processNamedSketch();
+    } else if (cl.hasOption("group-by")) {
+      processGroups();
+    } else if (cl.hasOption("window-lines") || cl.hasOption("window-seconds")) {
+      processStdInWindows();
+    } else {
+      processInput();
+      processOutput();
     }
+    if (stats != null) { stats.finish(savedBytes); }
+  }
+
+  /**
+   * Puts the sketch of the "-d" files, StdIn or "-s" sketches at the end of the list.
+   */
+  private void processInput() {
+    final boolean sFlag = cl.hasOption("s");
+    final boolean dFlag = cl.hasOption("d");
 
     //PROCESS INPUT: s = 01; d = 10
     final int sw = (sFlag ? 1 : 0) | (dFlag ? 2 : 0);
@@ -160,8 +414,8 @@ public abstract class SketchCommandLineParser<T> {
         break;
       }
       case 1 : { //01: no d, s => load s sketches and merge, puts result on list
-        loadInputSketches();
-        mergeSketches(); //if -m, treats the 1st sketch as A
+        addInputSketches();
+        merge(); //if -m, treats the 1st sketch as A
         break;
       }
       case 2 : { //10: d, no s => update with d, and add to list
@@ -170,9 +424,9 @@ public abstract class SketchCommandLineParser<T> {
       }
       case 3 : { //11: d, s => A = update with d, B = union of s, put result on list
         processDataFile(); //puts "-d" sketch first
-        loadInputSketches(); //adds -s sketches to the list
+        addInputSketches(); //adds -s sketches, or their union, to the list
         //if -m (AnotB), treats the -d sketch as A, B = sketches on list, puts result on list
-        mergeSketches();
+        merge();
         break;
       }
       default : {
@@ -180,14 +434,50 @@ public abstract class SketchCommandLineParser<T> {
         break;
       }
     }
+  }
+
+  /**
+   * Parses the arguments into the command line and shows help if it was requested.
+   * @param args array of tokens
+   * @return false if help was requested
+   */
+  boolean parseCommandLine(final String[] args) {
+    final CommandLineParser parser = new DefaultParser();
+    try {
+      cl = parser.parse(options,  args);
+    } catch (final ParseException e) {
+      printlnErr("runCommandLineUtil Error: ");
+      throw new RuntimeException(e);
+    }
+    if (cl.hasOption("help")) {
+      showHelp();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Puts the given sketch, built from input read elsewhere, at the end of the list, merges it with
+   * any "-s" sketches and produces the output. Used by MultiCL for each of its sketches.
+   * @param sketch the sketch built from the input
+   */
+  void processSketch(final T sketch) {
+    sketchList.clear(); //the previous window's sketches, if any
+    sketchList.add(sketch);
+    if (cl.hasOption("s")) {
+      addInputSketches(); //adds -s sketches, or their union, to the list
+      merge(); //if -m (AnotB), treats the given sketch as A
+    }
+    processOutput();
+  }
 
-    //PROCESS OUTPUT
+  private void processOutput() {
     if (sketchList.size() > 0) {
-      queryCurrentSketch(); //from last sketch in sketchList
+      query(); //from last sketch in sketchList
       if (cl.hasOption("p")) {
         printCurrentSketchSummary();
       }
-      if (cl.hasOption("o")) {
+      if (cl.hasOption("o") && (directUpdater == null)) { //a direct sketch is already in the file
         saveCurrentSketch();
       }
     } else {
@@ -195,6 +485,27 @@ public abstract class SketchCommandLineParser<T> {
     }
   }
 
+  private void merge() {
+    beginPhase("merge");
+    mergeSketches();
+    endPhase();
+  }
+
+  private void query() {
+    if (stats != null) { stats.stopProgress(); }
+    beginPhase("query");
+    queryCurrentSketch();
+    endPhase();
+  }
+
+  private void beginPhase(final String name) {
+    if (stats != null) { stats.begin(name); }
+  }
+
+  private void endPhase() {
+    if (stats != null) { stats.end(); }
+  }
+
   //USED BY SUB-CLASSES
 
   /**
@@ -203,10 +514,98 @@ public abstract class SketchCommandLineParser<T> {
   protected abstract void showHelp();
 
   /**
-   * Updates Sketch from BufferedReader, puts result at end of the list.
-   * @param br the given BufferedReader
+   * Prints the usage of the options to the output, as HelpFormatter prints it to System.out.
+   * @param cmdLineSyntax the syntax of the command, e.g. "ds hll"
+   */
+  protected void printHelp(final String cmdLineSyntax) {
+    final HelpFormatter helpf = new HelpFormatter();
+    helpf.setOptionComparator(null);
+    final PrintWriter pw = new PrintWriter(out);
+    helpf.printHelp(pw, helpf.getWidth(), cmdLineSyntax, null, options, helpf.getLeftPadding(),
+        helpf.getDescPadding(), null, false);
+    pw.flush();
+  }
+
+  /**
+   * Returns a LineUpdater that feeds lines into a new sketch built from the command line options.
+   * @return a new LineUpdater
+   */
+  protected abstract LineUpdater<T> newLineUpdater();
+
+  /**
+   * Updates a new sketch from all lines of the LineReader.
+   * @param lr the given LineReader
+   * @return the new sketch
+   * @throws IOException if reading from the LineReader fails
+   */
+  protected T updateSketch(final LineReader lr) throws IOException {
+    final LineUpdater<T> updater = newInputUpdater();
+    try {
+      while (lr.next()) {
+        updater.update(lr);
+      }
+    } catch (final NumberFormatException e) {
+      printlnErr("Read Error: Item: " + lr.toString());
+      throw new RuntimeException(e);
+    }
+    return updater.getResult();
+  }
+
+  /**
+   * Returns {@link #newLineUpdater()}, restricted to the "--field" of each line if one is given.
+   * @return a new LineUpdater for the input lines
+   */
+  LineUpdater<T> newInputUpdater() {
+    return newInputUpdater("\t");
+  }
+
+  /**
+   * @param defaultDelimiter the delimiter used if no "--delimiter" is given
+   * @return a new LineUpdater for the input lines
    */
-  protected abstract void updateSketch(BufferedReader br);
+  LineUpdater<T> newInputUpdater(final String defaultDelimiter) {
+    final LineUpdater<T> lineUpdater = (directUpdater != null) ? directUpdater : newLineUpdater();
+    final LineUpdater<T> updater = !cl.hasOption("field") ? lineUpdater
+        : new FieldSelector<>(lineUpdater, cl.getOptionValue("field"), delimiter(defaultDelimiter));
+    return (stats == null) ? updater : stats.count(updater);
+  }
+
+  /**
+   * @param defaultDelimiter the delimiter used if no "--delimiter" is given
+   * @return the column delimiter
+   */
+  private char delimiter(final String defaultDelimiter) {
+    final String delim = cl.getOptionValue("delimiter", defaultDelimiter);
+    if (delim.equals("\t") || delim.equals("\\t") || delim.equalsIgnoreCase("tab")) {
+      return '\t';
+    }
+    if ((delim.length() == 1) && (delim.charAt(0) <= 0x7F)) {
+      return delim.charAt(0);
+    }
+    throw new IllegalArgumentException("Delimiter must be a single ASCII character: " + delim);
+  }
+
+  /**
+   * Returns the union of the given sketches, built with the union this sketch type uses in
+   * {@link #mergeSketches()}. The list is not modified. By default the sketches are merged with
+   * one {@link #newMerger()}.
+   * @param sketches the sketches to combine
+   * @return the union of the given sketches
+   */
+  protected T union(final List<T> sketches) {
+    final SketchMerger<T> merger = newMerger();
+    for (final T sketch : sketches) {
+      merger.update(sketch);
+    }
+    return merger.getResult();
+  }
+
+  /**
+   * Returns a SketchMerger that merges sketches, one at a time, into a new union of this sketch
+   * type built from the command line options, as {@link #union(List)} does.
+   * @return a new SketchMerger
+   */
+  protected abstract SketchMerger<T> newMerger();
 
   /**
    * Performs allowed set operations on all the sketches in the list.
@@ -220,9 +619,22 @@ public abstract class SketchCommandLineParser<T> {
    */
   protected abstract void queryCurrentSketch();
 
-  protected abstract T deserializeSketch(byte[] bytes);
+  /**
+   * @return true if {@link #mergeSketches()} takes the union of the list with the given options,
+   * so that the "-s" sketches can be merged in any order and as they are loaded
+   */
+  protected boolean mergeIsUnion() {
+    return true;
+  }
 
-  protected abstract byte[] serializeSketch(T sketch);
+  /**
+   * @return this parser as the SketchSerDe of its sketches, which every parser that takes the
+   * options that read and write sketches is
+   */
+  @SuppressWarnings("unchecked")
+  SketchSerDe<T> serDe() {
+    return (SketchSerDe<T>) this;
+  }
 
   /**
    * Read arguments from a file and return as a String array.
@@ -233,8 +645,8 @@ public abstract class SketchCommandLineParser<T> {
   protected String[] queryFileReader(final String pathToFile) {
     final ArrayList<String> argsList = new ArrayList<>();
     String argStr = "";
-    try (BufferedReader in =
-        new BufferedReader(new InputStreamReader(new FileInputStream(pathToFile), UTF_8))) {
+    try (BufferedReader in = new BufferedReader(
+        new InputStreamReader(new FileInputStream(resolve(pathToFile)), UTF_8))) {
       while ((argStr = in.readLine()) != null) {
         if (argStr.isEmpty()) { continue; }
         argsList.add(argStr);
@@ -247,12 +659,53 @@ public abstract class SketchCommandLineParser<T> {
     }
   }
 
-  protected static void printlnErr(final String s) {
-    System.err.println(s);
+  /**
+   * @param fileName a file name from the command line
+   * @return the file name, or if run by SketchServer, the file name relative to its root
+   * @throws IllegalArgumentException if run by SketchServer and the file is outside its root,
+   * by an absolute name, ".." or a symbolic link
+   */
+  String resolve(final String fileName) {
+    if (root == null) { return fileName; }
+    final Path path = root.resolve(fileName).normalize();
+    if (!path.startsWith(root)) {
+      throw new IllegalArgumentException("Outside the root of ds serve: " + fileName);
+    }
+    Path existing = path; //the file, or else its nearest existing directory
+    while (!Files.exists(existing)) {
+      existing = existing.getParent();
+    }
+    try {
+      if (!existing.toRealPath().startsWith(root)) {
+        throw new IllegalArgumentException("Outside the root of ds serve: " + fileName);
+      }
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return path.toString();
+  }
+
+  private String[] resolveAll(final String[] fileNames) {
+    final String[] resolved = new String[fileNames.length];
+    for (int i = 0; i < fileNames.length; i++) {
+      resolved[i] = resolve(fileNames[i]);
+    }
+    return resolved;
+  }
+
+  /**
+   * @return StdIn, or the input sent with the request if run by SketchServer
+   */
+  private ReadableByteChannel stdIn() {
+    return (stdIn != null) ? stdIn : Channels.newChannel(System.in);
   }
 
-  protected static void println(final String s) {
-    System.out.println(s);
+  protected void printlnErr(final String s) {
+    err.println(s);
+  }
+
+  protected void println(final String s) {
+    out.println(s);
   }
 
   //PRIVATE
@@ -262,56 +715,780 @@ public abstract class SketchCommandLineParser<T> {
    * Called when neither "-d" nor "-s" is specified.
    */
   private void processStdIn() {
-    try (final BufferedReader br = new BufferedReader(new InputStreamReader(
-        System.in, UTF_8))) {
-      updateSketch(br);
+    final ReadableByteChannel in = stdIn();
+    final BinaryReader.Format format = inputFormat();
+    beginPhase("update");
+    try {
+      if (format != null) {
+        try (final BinaryReader br = BinaryReader.of(in, LineReader.DEFAULT_BUFFER_BYTES, format)) {
+          sketchList.add(binaryInput().updateSketch(br));
+        }
+      } else {
+        try (final LineReader lr = LineReader.of(in, LineReader.DEFAULT_BUFFER_BYTES)) {
+          sketchList.add(updateSketch(lr));
+        }
+      }
+    } catch (final IOException e) {
+      printlnErr("Update Current Sketch From StdIn Error: ");
+      throw new RuntimeException(e);
+    }
+    endPhase();
+  }
+
+  /**
+   * Updates the sketch held in the memory mapped "-o" file in place from the "-d" files, one at a
+   * time, or StdIn, creating the file if needed, then produces the output. As the file always
+   * holds the updatable sketch, nothing is serialized at the end.
+   */
+  private void processDirect() {
+    if (!cl.hasOption("o") || isBundle(cl.getOptionValue("o")) || cl.hasOption("s")
+        || cl.hasOption("threads")
+        || cl.hasOption("per-file-output") || cl.hasOption("name") || cl.hasOption("group-by")
+        || cl.hasOption("window-lines") || cl.hasOption("window-seconds")) {
+      throw new IllegalArgumentException("--direct updates the \"-o\" FILE from \"-d\" or stdin "
+          + "on one thread, and cannot be used with a bundle, -s, -threads, --per-file-output, "
+          + "--name, --group-by or windows");
+    }
+    //mapped with FileChannel, as WritableMemory.writableMap() takes 644 files for read-only
+    final Path path = Paths.get(resolve(cl.getOptionValue("o")));
+    final DirectSketch<T> direct = directSketch();
+    boolean create = false;
+    boolean done = false;
+    try (final FileChannel fc = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      create = fc.size() == 0;
+      final MappedByteBuffer buf = fc.map(FileChannel.MapMode.READ_WRITE, 0,
+          create ? direct.directSketchBytes() : fc.size());
+      directUpdater = direct.newDirectUpdater(
+          WritableMemory.wrap(buf.order(ByteOrder.nativeOrder())), create);
+      if (cl.hasOption("d")) {
+        processDirectFiles();
+      } else {
+        processStdIn();
+      }
+      processOutput();
+      buf.force();
+      savedBytes = buf.capacity();
+      done = true;
+    } catch (final IOException e) {
+      printlnErr("Direct Sketch Error: " + path);
+      throw new RuntimeException(e);
+    } finally {
+      if (create && !done) { //so that a later run does not add to a partly built sketch
+        try {
+          Files.deleteIfExists(path);
+        } catch (final IOException e) {
+          printlnErr("Direct Sketch Error: cannot delete " + path);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return this parser as the DirectSketch of its sketches, which it is if it has "--direct"
+   */
+  @SuppressWarnings("unchecked")
+  private DirectSketch<T> directSketch() {
+    return (DirectSketch<T>) this;
+  }
+
+  private void processDirectFiles() {
+    try {
+      final List<Path> paths = InputFiles.expand(resolveAll(cl.getOptionValues("d")));
+      if (paths.isEmpty()) {
+        throw new IOException("No input files: " + String.join(" ", cl.getOptionValues("d")));
+      }
+      if (stats != null) { stats.expectBytes(InputFiles.totalSize(paths)); }
+      beginPhase("update");
+      for (final Path path : paths) {
+        try (final LineReader lr = LineReader.open(path.toString())) {
+          updateSketch(lr);
+        }
+      }
+      sketchList.add(directUpdater.getResult());
+      endPhase();
+    } catch (final IOException e) {
+      printlnErr("Update Direct Sketch From File Error: " + e.getMessage());
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Adds the "-d", "-s" or, with "--update", StdIn input to the sketch held by SketchServer under
+   * "--name", then produces the output of the held sketch as if it were the whole input.
+   */
+  private void processNamedSketch() {
+    if (store == null) {
+      throw new IllegalArgumentException(
+          "--name needs a sketch held by ds serve, see ds serve -help");
+    }
+    final String name = cl.getOptionValue("name");
+    if (cl.hasOption("d")) {
+      processDataFile();
+    }
+    if (cl.hasOption("s")) {
+      addInputSketches();
+    }
+    if (cl.hasOption("update")) {
+      processStdIn();
+    }
+    if (sketchList.size() > 0) {
+      store.update(name, this, (sketchList.size() == 1) ? sketchList.get(0) : union(sketchList));
+    }
+    final T sketch = store.get(name, this);
+    if (sketch == null) {
+      throw new IllegalArgumentException("No sketch named " + name);
+    }
+    sketchList.clear();
+    sketchList.add(sketch);
+    processOutput();
+  }
+
+  /**
+   * Builds one sketch per distinct value of the "--group-by" field from the "-d" files or StdIn,
+   * then produces the output of each group, in key order, as if it were the whole input.
+   */
+  private void processGroups() {
+    if (cl.hasOption("s") || cl.hasOption("input-format") || cl.hasOption("window-lines")
+        || cl.hasOption("window-seconds") || cl.hasOption("threads")
+        || cl.hasOption("per-file-output")
+        || (cl.hasOption("o") && !isBundle(cl.getOptionValue("o")))) {
+      throw new IllegalArgumentException("--group-by reads text lines from \"-d\" or stdin on "
+          + "one thread, saves the groups to -o bundle:FILE or --group-output FILE, and cannot be "
+          + "used with -s, --input-format, windows, -threads, --per-file-output or -o FILE");
+    }
+    final int maxGroups = cl.hasOption("max-groups")
+        ? Integer.parseInt(cl.getOptionValue("max-groups")) : DEFAULT_MAX_GROUPS;
+    final FieldLocator key = new FieldLocator(cl.getOptionValue("group-by"), delimiter("\t"));
+    final String groupFile = cl.getOptionValue("group-output");
+    final String bundleFile = isBundle(cl.getOptionValue("o")) ? cl.getOptionValue("o") : null;
+    try (final GroupBy<T> groups = new GroupBy<>(this, key, maxGroups);
+        final Bundle.Writer bundle = (bundleFile == null) ? null : newBundleWriter(bundleFile)) {
+      if (cl.hasOption("d")) {
+        for (final Path path : InputFiles.expand(resolveAll(cl.getOptionValues("d")))) {
+          try (final LineReader lr = LineReader.open(path.toString())) {
+            updateGroups(groups, lr);
+          }
+        }
+      } else {
+        try (final LineReader lr = LineReader.of(stdIn(), LineReader.DEFAULT_BUFFER_BYTES)) {
+          updateGroups(groups, lr);
+        }
+      }
+      try (final DataOutputStream out = (groupFile == null) ? null : new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(resolve(groupFile))))) {
+        groups.forEachGroup((keyBytes, sketch) -> {
+          println(LS + BOLD + new String(keyBytes, UTF_8) + OFF);
+          sketchList.clear();
+          sketchList.add(sketch);
+          query();
+          if (cl.hasOption("p")) {
+            printCurrentSketchSummary();
+          }
+          try {
+            if (out != null) {
+              GroupBy.writeRecord(out, keyBytes, serDe().serializeSketch(sketch));
+            }
+            if (bundle != null) {
+              bundle.add(keyBytes, serDe().serializeSketch(sketch));
+            }
+          } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+      }
+      if (bundle != null) { bundle.commit(); }
+    } catch (final IOException | UncheckedIOException e) {
+      printlnErr("Update Groups Error: " + e.getMessage());
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void updateGroups(final GroupBy<T> groups, final LineReader lr)
+      throws IOException {
+    try {
+      while (lr.next()) {
+        groups.update(lr);
+      }
+    } catch (final NumberFormatException e) {
+      printlnErr("Read Error: Item: " + lr.toString());
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Updates a sketch from StdIn until EOF, replacing it with a new sketch at the end of each
+   * tumbling window of "--window-lines" lines or "--window-seconds" seconds, whichever comes
+   * first. With "--window-slots K" the output of each window covers the last K windows, see
+   * {@link SlidingWindow}. Lines are read on this thread, while a timer thread closes windows by
+   * time, so a window closes on time even if StdIn is idle.
+   */
+  private void processStdInWindows() {
+    if (cl.hasOption("d") || cl.hasOption("s") || cl.hasOption("input-format")) {
+      throw new IllegalArgumentException(
+          "--window-lines and --window-seconds read text lines from stdin only");
+    }
+    final long millis = cl.hasOption("window-seconds")
+        ? (long) (Double.parseDouble(cl.getOptionValue("window-seconds")) * 1000) : 0;
+    if (cl.hasOption("window-seconds") && (millis < 1)) {
+      throw new IllegalArgumentException("--window-seconds must be at least 0.001: "
+          + cl.getOptionValue("window-seconds"));
+    }
+    final Windows windows = new Windows();
+    ScheduledExecutorService timer = null;
+    try (final LineReader lr = LineReader.of(stdIn(), LineReader.DEFAULT_BUFFER_BYTES)) {
+      if (windows.dir != null) { Files.createDirectories(Paths.get(resolve(windows.dir))); }
+      if (millis > 0) {
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+          final Thread thread = new Thread(r, "window-timer");
+          thread.setDaemon(true);
+          return thread;
+        });
+        timer.scheduleAtFixedRate(windows::closeOnTime, millis, millis, TimeUnit.MILLISECONDS);
+      }
+      while (lr.next()) {
+        windows.update(lr);
+      }
     } catch (final IOException e) {
       printlnErr("Update Current Sketch From StdIn Error: ");
       throw new RuntimeException(e);
+    } finally {
+      if (timer != null) { timer.shutdownNow(); }
     }
+    windows.closeLast();
+  }
+
+  /**
+   * The current window of {@link #processStdInWindows()}. Its methods are synchronized because
+   * windows are closed by both the reading thread and the timer thread.
+   */
+  private final class Windows {
+    final String dir = cl.getOptionValue("window-output");
+    final long maxLines = cl.hasOption("window-lines")
+        ? positive("window-lines", Long.parseLong(cl.getOptionValue("window-lines")))
+        : Long.MAX_VALUE;
+    final SlidingWindow<T> slots = cl.hasOption("window-slots")
+        ? new SlidingWindow<>(SketchCommandLineParser.this,
+            Integer.parseInt(cl.getOptionValue("window-slots")))
+        : null;
+    LineUpdater<T> updater = newInputUpdater();
+    long lines;
+    int number;
+    RuntimeException failure; //of a window closed by the timer
+
+    synchronized void update(final LineReader lr) {
+      try {
+        updater.update(lr);
+      } catch (final NumberFormatException e) {
+        printlnErr("Read Error: Item: " + lr.toString());
+        throw new RuntimeException(e);
+      }
+      if (++lines == maxLines) { close(); }
+    }
+
+    /**
+     * Closes the window that was open at EOF, unless it is empty.
+     * @throws RuntimeException if closing this or an earlier window failed
+     */
+    synchronized void closeLast() {
+      if (lines > 0) { close(); }
+      if (failure != null) { throw failure; }
+    }
+
+    /**
+     * Closes the window from the timer thread. A failure is reported and kept for
+     * {@link #closeLast()} rather than thrown, which would cancel every later window.
+     */
+    synchronized void closeOnTime() {
+      try {
+        close();
+      } catch (final RuntimeException e) {
+        printlnErr("Window " + number + " Error: " + ((e.getCause() != null) ? e.getCause() : e));
+        if (failure == null) { failure = e; }
+      }
+    }
+
+    /**
+     * Produces the output of the current window, or of the last K windows, as if it were the
+     * whole input, then starts a new window. Output without lines is skipped.
+     */
+    synchronized void close() {
+      if ((lines == 0) && ((slots == null) || (slots.getLines() == 0))) { return; }
+      T sketch = updater.getResult();
+      number++;
+      String header = "Window " + number + ": " + lines + " lines";
+      if (slots != null) {
+        slots.add(sketch, lines);
+        sketch = slots.getResult();
+        header += ", " + slots.getLines() + " in the last " + cl.getOptionValue("window-slots")
+            + " windows";
+      }
+      updater = newInputUpdater();
+      lines = 0;
+      if ((slots != null) && (slots.getLines() == 0)) { return; }
+      println(LS + BOLD + header + ", closed " + new Date() + OFF);
+      sketchList.clear();
+      sketchList.add(sketch);
+      query();
+      if (cl.hasOption("p")) {
+        printCurrentSketchSummary();
+      }
+      if (cl.hasOption("o")) {
+        saveCurrentSketch();
+      }
+      if (dir != null) {
+        saveSketch(sketch, Paths.get(dir, String.format("window-%06d.bin", number)).toString());
+      }
+      out.flush();
+    }
+  }
+
+  /**
+   * @param option the option
+   * @param value its value
+   * @return the value
+   * @throws IllegalArgumentException if the value is not positive
+   */
+  private static long positive(final String option, final long value) {
+    if (value < 1) {
+      throw new IllegalArgumentException("--" + option + " must be at least 1: " + value);
+    }
+    return value;
   }
 
   private void processDataFile() { //For "-d" option
-    try (final BufferedReader br = new BufferedReader(new InputStreamReader(
-        new FileInputStream(cl.getOptionValue("d")), UTF_8))) {
-      updateSketch(br); //puts result on the list
+    final int threads =
+        cl.hasOption("threads") ? Integer.parseInt(cl.getOptionValue("threads")) : 1;
+    final String perFileDir = cl.getOptionValue("per-file-output");
+    try (final Bundle.Writer bundle = isBundle(perFileDir) ? newBundleWriter(perFileDir) : null) {
+      perFileBundle = bundle;
+      final List<Path> paths = InputFiles.expand(resolveAll(cl.getOptionValues("d")));
+      if (paths.isEmpty()) {
+        throw new IOException("No input files: " + String.join(" ", cl.getOptionValues("d")));
+      }
+      if (perFileDir != null) {
+        checkUniqueFileNames(paths);
+        if (bundle == null) { Files.createDirectories(Paths.get(resolve(perFileDir))); }
+      }
+      final long size = (stats == null) ? 0 : InputFiles.totalSize(paths);
+      if (stats != null) { stats.expectBytes(size); }
+      beginPhase("update");
+      if (paths.size() == 1) {
+        sketchList.add(updateSketchFromFile(paths.get(0), threads, perFileDir));
+      } else {
+        final int poolSize = cl.hasOption("threads")
+            ? threads : Runtime.getRuntime().availableProcessors();
+        sketchList.add(updateSketchFromFiles(paths, poolSize, perFileDir));
+      }
+      if ((stats != null) && (inputFormat() != null)) { stats.addBytes(size); }
+      if (bundle != null) { bundle.commit(); }
+      endPhase();
     } catch (final IOException e) {
-      printlnErr("Update Current Sketch From File Error: ");
+      printlnErr("Update Current Sketch From File Error: " + e.getMessage());
       throw new RuntimeException(e);
+    } finally {
+      perFileBundle = null;
+    }
+  }
+
+  /**
+   * Builds the sketch of one file, splitting it across threads if requested, and saves it to the
+   * per-file output directory if one is given.
+   */
+  private T updateSketchFromFile(final Path path, final int threads, final String perFileDir)
+      throws IOException {
+    final BinaryReader.Format format = inputFormat();
+    final T sketch;
+    if ((threads > 1) && Files.isRegularFile(path)) {
+      sketch = updateSketchInParallel(path, threads, format);
+    } else if (format != null) {
+      try (final BinaryReader br = BinaryReader.open(path.toString(), format)) {
+        sketch = binaryInput().updateSketch(br);
+      }
+    } else {
+      try (final LineReader lr = LineReader.open(path.toString())) {
+        sketch = updateSketch(lr);
+      }
+    }
+    if (perFileBundle != null) {
+      perFileBundle.add(path.getFileName().toString().getBytes(UTF_8),
+          serDe().serializeSketch(sketch));
+    } else if (perFileDir != null) {
+      saveSketch(sketch, Paths.get(perFileDir, path.getFileName() + ".bin").toString());
+    }
+    return sketch;
+  }
+
+  /**
+   * Reads the files concurrently on a bounded pool into one sketch per file and returns the union
+   * of the per-file sketches.
+   */
+  private T updateSketchFromFiles(final List<Path> paths, final int poolSize,
+      final String perFileDir) {
+    final ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(poolSize, paths.size())));
+    try {
+      final List<ForkJoinTask<T>> tasks = new ArrayList<>();
+      for (final Path path : paths) {
+        tasks.add(pool.submit(() -> updateSketchFromFile(path, 1, perFileDir)));
+      }
+      final List<T> partials = new ArrayList<>();
+      for (final ForkJoinTask<T> task : tasks) {
+        partials.add(task.join());
+      }
+      return union(partials);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * @return the "--input-format" of the input, or null for text input
+   */
+  private BinaryReader.Format inputFormat() {
+    return ((this instanceof BinaryInput) && cl.hasOption("input-format"))
+        ? BinaryReader.Format.of(cl.getOptionValue("input-format")) : null;
+  }
+
+  /**
+   * @return this parser as the BinaryInput of its sketches, which it is if it has an
+   * {@link #inputFormat()}
+   */
+  @SuppressWarnings("unchecked")
+  private BinaryInput<T> binaryInput() {
+    return (BinaryInput<T>) this;
+  }
+
+  private static void checkUniqueFileNames(final List<Path> paths) throws IOException {
+    final Set<Path> names = new HashSet<>();
+    for (final Path path : paths) {
+      if (!names.add(path.getFileName())) {
+        throw new IOException("Duplicate file name for --per-file-output: " + path);
+      }
+    }
+  }
+
+  /**
+   * Splits the file into line-aligned ranges, or value-aligned ranges if a binary format is given,
+   * builds one sketch per range on a fork-join pool and returns the union of the partial sketches.
+   */
+  private T updateSketchInParallel(final Path path, final int threads,
+      final BinaryReader.Format format) throws IOException {
+    final ForkJoinPool pool = new ForkJoinPool(threads);
+    try (final FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+      final long[] splits = (format != null)
+          ? BinaryReader.splitValues(fc.size(), format, threads)
+          : LineReader.splitLines(fc, threads);
+      final List<ForkJoinTask<T>> tasks = new ArrayList<>();
+      for (int i = 0; i < (splits.length - 1); i++) {
+        final long start = splits[i];
+        final long end = splits[i + 1];
+        tasks.add(pool.submit(() -> {
+          if (format != null) {
+            try (final BinaryReader br = BinaryReader.open(fc, start, end, format)) {
+              return binaryInput().updateSketch(br);
+            }
+          }
+          try (final LineReader lr = LineReader.open(fc, start, end)) {
+            return updateSketch(lr);
+          }
+        }));
+      }
+      final List<T> partials = new ArrayList<>();
+      for (final ForkJoinTask<T> task : tasks) {
+        partials.add(task.join());
+      }
+      return (partials.size() == 1) ? partials.get(0) : union(partials);
+    } finally {
+      pool.shutdown();
     }
   }
 
-  private void loadInputSketches() { //For "-s" option
+  /**
+   * Adds all the "-s" sketches to the list.
+   * @param names receives the name of each sketch, as for {@link #namedInputSketches(List)}, if
+   * not null
+   */
+  void loadInputSketches(final List<String> names) { //For "-s" option
+      beginPhase("load");
+      final List<Bundle> bundles = new ArrayList<>();
       try {
-        final String[] inputSketches = cl.getOptionValues("s");
-        for (int i = 0; i < inputSketches.length; i++) {
-          try (FileInputStream in = new FileInputStream(inputSketches[i])) {
-            final byte[] bytes = new byte[in.available()];
-            in.read(bytes);
-            sketchList.add(deserializeSketch(bytes));
+        for (final SketchInput input : inputSketches(bundles, names)) {
+          sketchList.add(loadSketch(input));
+        }
+      } catch (final UncheckedIOException e) {
+        printlnErr("Deserialize Input Sketches Error: " + e.getCause().getMessage());
+        throw new RuntimeException(e);
+      } finally {
+        closeAll(bundles);
+      }
+      endPhase();
+  }
+
+  /**
+   * Adds the "-s" sketches to the list: only their union if {@link #mergeIsUnion()}, merged in
+   * bounded memory, and otherwise all of them, for {@link #mergeSketches()} to combine. A subclass
+   * that reads only some of them in {@link #mergeSketches()}, e.g. for ThetaCL "--expr", can
+   * override it to add none.
+   */
+  protected void addInputSketches() {
+    if (mergeIsUnion()) {
+      mergeInputSketches();
+    } else {
+      loadInputSketches(null);
+    }
+  }
+
+  /**
+   * Puts the union of the "-s" files at the end of the list without holding them all: on a
+   * fork-join pool of "-threads" threads, by default one per core, the files are split into about
+   * four ranges per thread of at least {@link #MERGE_RANGE} files, each sketch of a range is
+   * loaded and merged into the one {@link #newMerger()} of the range, one at a time, and the
+   * unions of the ranges are merged pairwise up the tree. A sketch is released as soon as it is
+   * merged, so each thread holds one loaded sketch and a few unions, however many files there are.
+   */
+  private void mergeInputSketches() {
+    final int threads = sketchThreads();
+    beginPhase("merge");
+    final List<Bundle> bundles = new ArrayList<>();
+    try {
+      final List<SketchInput> inputs = inputSketches(bundles, null);
+      final int ranges = ((inputs.size() - 1) / MERGE_RANGE) + 1;
+      final int parallelism = Math.max(1, Math.min(threads, ranges));
+      final int rangeInputs = Math.max(MERGE_RANGE, inputs.size() / (4 * parallelism));
+      final ForkJoinPool pool = new ForkJoinPool(parallelism);
+      try {
+        sketchList.add(pool.invoke(new MergeTask(inputs, 0, inputs.size(), rangeInputs)));
+      } finally {
+        pool.shutdown();
+      }
+    } catch (final UncheckedIOException e) {
+      printlnErr("Deserialize Input Sketches Error: " + e.getCause().getMessage());
+      throw new RuntimeException(e);
+    } finally {
+      closeAll(bundles);
+    }
+    endPhase();
+  }
+
+  /**
+   * The union of the "-s" sketches from start to end, for {@link #mergeInputSketches()}.
+   */
+  private final class MergeTask extends RecursiveTask<T> {
+    private static final long serialVersionUID = 1L;
+    private final List<SketchInput> inputs;
+    private final int start;
+    private final int end;
+    private final int rangeInputs;
+
+    MergeTask(final List<SketchInput> inputs, final int start, final int end,
+        final int rangeInputs) {
+      this.inputs = inputs;
+      this.start = start;
+      this.end = end;
+      this.rangeInputs = rangeInputs;
+    }
+
+    @Override
+    protected T compute() {
+      if ((end - start) <= rangeInputs) {
+        final SketchMerger<T> merger = newMerger();
+        for (int i = start; i < end; i++) {
+          merger.update(loadSketch(inputs.get(i)));
+        }
+        return merger.getResult(); //not the file, even for a range of one
+      }
+      final int mid = (start + end) >>> 1;
+      final MergeTask left = new MergeTask(inputs, start, mid, rangeInputs);
+      left.fork();
+      final T right = new MergeTask(inputs, mid, end, rangeInputs).compute();
+      return union(Arrays.asList(left.join(), right));
+    }
+  }
+
+  /**
+   * @return the threads that work on the "-s" sketches: "-threads", by default one per core
+   */
+  int sketchThreads() {
+    return cl.hasOption("threads") ? Integer.parseInt(cl.getOptionValue("threads"))
+        : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * A "-s" sketch: a sketch file, or a sketch in a bundle.
+   */
+  interface SketchInput {
+    Memory read() throws IOException;
+  }
+
+  /**
+   * @param bundles receives the bundles opened, for the caller to close
+   * @return the "-s" sketches by name: the file name without its extension, or the bundle key. A
+   * name shared by several sketches maps to null.
+   */
+  Map<String, SketchInput> namedInputSketches(final List<Bundle> bundles) {
+    final List<String> names = new ArrayList<>();
+    final List<SketchInput> inputs = inputSketches(bundles, names);
+    final Map<String, SketchInput> named = new HashMap<>();
+    for (int i = 0; i < inputs.size(); i++) {
+      named.put(names.get(i), named.containsKey(names.get(i)) ? null : inputs.get(i));
+    }
+    return named;
+  }
+
+  /**
+   * @param bundles receives the bundles opened, for the caller to close
+   * @param names receives the name of each sketch, if not null
+   * @return the "-s" sketch files, with directories and glob patterns expanded, and the sketches
+   * of "bundle:FILE" arguments selected by "--keys"
+   */
+  private List<SketchInput> inputSketches(final List<Bundle> bundles, final List<String> names) {
+    try {
+      final List<SketchInput> inputs = new ArrayList<>();
+      for (final String arg : cl.getOptionValues("s")) {
+        if (isBundle(arg)) {
+          final Bundle bundle =
+              Bundle.open(Paths.get(resolve(arg.substring(Bundle.PREFIX.length()))));
+          bundles.add(bundle);
+          if (!bundle.type.equals(type)) {
+            throw new IOException("Bundle " + bundle.path + " holds " + bundle.type
+                + " sketches, not " + type);
+          }
+          final String params = sketchParams();
+          if (!params.isEmpty() && !bundle.params.equals(params)) {
+            throw new IOException("Bundle " + bundle.path + " holds sketches built with "
+                + Bundle.describe(bundle.params) + ", not " + Bundle.describe(params));
+          }
+          for (final int entry : bundle.select(cl.getOptionValue("keys"))) {
+            inputs.add(() -> bundle.sketch(entry));
+            if (names != null) { names.add(new String(bundle.key(entry), UTF_8)); }
+          }
+        } else {
+          for (final Path path : InputFiles.expand(new String[] {resolve(arg)})) {
+            inputs.add(() -> readSketchFile(path));
+            if (names != null) {
+              final String fileName = path.getFileName().toString();
+              final int dot = fileName.lastIndexOf('.');
+              names.add((dot > 0) ? fileName.substring(0, dot) : fileName);
+            }
           }
         }
+      }
+      if (inputs.isEmpty()) {
+        throw new IOException("No input sketches: " + String.join(" ", cl.getOptionValues("s")));
+      }
+      return inputs;
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  static void closeAll(final List<Bundle> bundles) {
+    for (final Bundle bundle : bundles) {
+      try {
+        bundle.close();
       } catch (final IOException e) {
-        printlnErr("Deserialize Input Sketches Error: " + e.getMessage());
-        throw new RuntimeException();
+        //read-only, nothing is lost
+      }
+    }
+  }
+
+  private static boolean isBundle(final String fileName) {
+    return (fileName != null) && fileName.startsWith(Bundle.PREFIX);
+  }
+
+  private Bundle.Writer newBundleWriter(final String fileName) throws IOException {
+    return new Bundle.Writer(Paths.get(resolve(fileName.substring(Bundle.PREFIX.length()))), type,
+        sketchParams());
+  }
+
+  /**
+   * @return the options that set the size of the sketches, as given, e.g. "-lgk 12"
+   */
+  private String sketchParams() {
+    final StringBuilder sb = new StringBuilder();
+    for (final String opt : new String[] {"k", "lgk"}) {
+      if (options.hasOption(opt) && cl.hasOption(opt)) {
+        sb.append((sb.length() == 0) ? "-" : " -").append(opt).append(' ')
+            .append(cl.getOptionValue(opt));
       }
+    }
+    return sb.toString();
+  }
+
+  T loadSketch(final SketchInput input) {
+    try {
+      final Memory mem = input.read();
+      if (stats != null) { stats.addBytes(mem.getCapacity()); }
+      return serDe().wrapSketch(mem);
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Returns the contents of a sketch file as read-only memory, memory mapped if the file has at
+   * least {@link #MAP_MIN_BYTES}, and read whole otherwise, as mapping costs more than it saves
+   * for small files and each map holds one of the limited map areas of the process.
+   * A mapped file is unmapped once the sketch that wraps it is garbage collected.
+   * @param path the sketch file
+   * @return the contents of the file
+   * @throws IOException if the file cannot be read
+   */
+  static Memory readSketchFile(final Path path) throws IOException {
+    final long size = Files.size(path);
+    if (size < MAP_MIN_BYTES) {
+      return Memory.wrap(Files.readAllBytes(path));
+    }
+    try (final FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+      return Memory.wrap(
+          fc.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.nativeOrder()));
+    }
   }
 
   /**
    * Serializes the last on the list to the "o" option file.
    */
   private void saveCurrentSketch() { //For "-o" option
-      final String fname = cl.getOptionValue("o");
+      beginPhase("save");
+      final String fileName = cl.getOptionValue("o");
+      if (isBundle(fileName)) {
+        saveToBundle(sketchList.get(sketchList.size() - 1), fileName);
+      } else {
+        saveSketch(sketchList.get(sketchList.size() - 1), fileName);
+      }
+      endPhase();
+  }
+
+  private void saveToBundle(final T sketch, final String fileName) {
+    if (!cl.hasOption("key")) {
+      throw new IllegalArgumentException(
+          "-o bundle:FILE needs the --key of the sketch, or --group-by");
+    }
+    try (final Bundle.Writer bundle = newBundleWriter(fileName)) {
+      final byte[] bytes = serDe().serializeSketch(sketch);
+      bundle.add(cl.getOptionValue("key").getBytes(UTF_8), bytes);
+      bundle.commit();
+      savedBytes = bytes.length;
+    } catch (final IOException e) {
+      printlnErr("Serialize Sketch Error: " + fileName);
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void saveSketch(final T sketch, final String fileName) {
+      final String fname = resolve(fileName);
       final File file = new File(fname);
       try {
         if (file.exists()) { java.nio.file.Files.delete(file.toPath()); }
       } catch (final Exception e) {
 
       }
-      try (FileOutputStream out = new FileOutputStream(cl.getOptionValue("o"))) {
-        out.write(serializeSketch(sketchList.get(sketchList.size() - 1)));
+      try (FileOutputStream out = new FileOutputStream(fname)) {
+        final byte[] bytes = serDe().serializeSketch(sketch);
+        out.write(bytes);
+        savedBytes = bytes.length;
       } catch (final IOException e) {
-        printlnErr("Serialize Current Sketch Error: ");
+        printlnErr("Serialize Sketch Error: " + fname);
         throw new RuntimeException(e);
       }
   }
@@ -323,18 +1500,26 @@ public abstract class SketchCommandLineParser<T> {
 
   private static void manual() { //For "man" option
     help();
-    println("");
+    System.out.println();
     new FrequenciesCL().showHelp();
-    println("");
+    System.out.println();
     new HllCL().showHelp();
-    println("");
+    System.out.println();
+    new MultiCL().showHelp();
+    System.out.println();
     new QuantilesCL().showHelp();
-    println("");
+    System.out.println();
     new ReservoirSamplingCL().showHelp();
-    println("");
+    System.out.println();
     new ThetaCL().showHelp();
-    println("");
+    System.out.println();
+    new TupleCL().showHelp();
+    System.out.println();
     new VarOptSamplingCL().showHelp();
+    System.out.println();
+    new SketchServer().showHelp();
+    System.out.println();
+    new WorkloadGenerator().showHelp();
   }
 
   /**
@@ -364,6 +1549,21 @@ public abstract class SketchCommandLineParser<T> {
     sb.append("Get options help for this SKETCH").append(LS + LS);
     sb.append("  ds man          ");
     sb.append("Print the entire manual").append(LS + LS);
+    sb.append("  ds serve <OPT>  ");
+    sb.append("Run ds commands sent by ds client in one long-running JVM, and hold").append(LS);
+    sb.append(spaces + "sketches named with --name between commands.").append(LS + LS);
+    sb.append("  ds client PORT SKETCH <OPT>").append(LS);
+    sb.append(spaces + "Run this SKETCH command on ds serve. Setting " + SketchClient.SERVER_ENV
+        + "=PORT").append(LS);
+    sb.append(spaces + "sends every ds SKETCH command to the server.").append(LS + LS);
+    sb.append("  ds gen DIST <OPT>").append(LS);
+    sb.append(spaces + "Write seeded synthetic input lines: zipf items, unique ids, lognormal")
+        .append(LS);
+    sb.append(spaces + "latencies or weighted items.").append(LS + LS);
+    sb.append("  ds bundle FILE [KEYS]").append(LS);
+    sb.append(spaces + "List the sketches of a bundle written with -o bundle:FILE, or those")
+        .append(LS);
+    sb.append(spaces + "selected by KEYS, e.g. 2018-06-01..2018-06-07,us").append(LS + LS);
 
     sb.append(BOLD + "SKETCH DESCRIPTIONS" + OFF).append(LS);
 
@@ -380,10 +1580,16 @@ public abstract class SketchCommandLineParser<T> {
     sb.append("HyperLogLog (HLL) sketch for estimating cardinalities from a stream of items.")
         .append(LS + LS);
 
+    sb.append("  ds multi        ");
+    sb.append("Builds several sketches in a single pass over the input, e.g.")
+        .append(LS);
+    sb.append(spaces + "ds multi -d FILE hll -lgk 14 theta -o t.bin quant -h freq -T")
+        .append(LS + LS);
+
     sb.append("  ds quant        ");
     sb.append("Quantiles sketch for estimating distributions from a stream of numeric values.")
         .append(LS);
-    sb.append(spaces + "Output with no options is deciles.")
+    sb.append(spaces + "Output with no options is deciles. --kll uses the smaller KLL sketch.")
         .append(LS + LS);
 
     sb.append("  ds rsamp        ");
@@ -394,6 +1600,12 @@ public abstract class SketchCommandLineParser<T> {
     sb.append("Theta sketch for estimating set expression cardinalities of a stream of items.")
         .append(LS + LS);
 
+    sb.append("  ds tuple        ");
+    sb.append("Tuple sketch for estimating distinct keys and the sum, min or max of their")
+        .append(LS);
+    sb.append(spaces + "values, e.g. distinct users and their total spend. Each line is a key and "
+        + "a value.").append(LS + LS);
+
     sb.append("  ds vsamp        ");
     sb.append("Varopt sketch for weighted sampling of a stream of pre-aggregated, weighted items")
         .append(LS);
@@ -402,7 +1614,7 @@ public abstract class SketchCommandLineParser<T> {
     sb.append(spaces + "The default file format is each line is a single item with an assumed "
         + "weight of 1.0.");
 
-    println(sb.toString());
+    System.out.println(sb.toString());
   }
 
 }
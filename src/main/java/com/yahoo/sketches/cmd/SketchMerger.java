@@ -0,0 +1,25 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+/**
+ * Merges sketches, one at a time, into a single union held for the purpose.
+ *
+ * @param <T> Sketch Type
+ */
+interface SketchMerger<T> {
+
+  /**
+   * Merges the given sketch into the union. The sketch is not modified or kept.
+   * @param sketch the sketch to merge
+   */
+  void update(T sketch);
+
+  /**
+   * @return a new sketch of the union of all sketches merged so far
+   */
+  T getResult();
+}
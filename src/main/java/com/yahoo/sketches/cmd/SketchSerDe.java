@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import com.yahoo.memory.Memory;
+
+/**
+ * Serializes and deserializes the sketches of a sketch type. Implemented by the parsers of every
+ * sketch type, which then also take the options that read and write sketches: "-s", "-o",
+ * bundles, and per-file, group and window output. MultiCL, whose sketch is a list of the sketches
+ * of its sections, does not implement it; each section reads and writes its own sketch.
+ *
+ * @param <T> Sketch Type
+ */
+interface SketchSerDe<T> {
+
+  /**
+   * @param bytes the serialized sketch
+   * @return the sketch
+   */
+  T deserializeSketch(byte[] bytes);
+
+  /**
+   * Returns the sketch of a "-s" file, given as read-only memory that is either memory mapped or,
+   * for small files, a byte array. By default, the memory is copied to a byte array for
+   * {@link #deserializeSketch(byte[])}. Sketch types override this to read the memory without that
+   * copy: theta and quantiles sketches wrap it in place, and the others heapify from it, as
+   * sketches-core cannot wrap them or, for HLL, as a union reads a heap sketch faster.
+   * @param mem the contents of the file
+   * @return the sketch
+   */
+  default T wrapSketch(final Memory mem) {
+    final byte[] bytes = new byte[(int) mem.getCapacity()];
+    mem.getByteArray(0, bytes, 0, bytes.length);
+    return deserializeSketch(bytes);
+  }
+
+  /**
+   * @param sketch the sketch
+   * @return the serialized sketch
+   */
+  byte[] serializeSketch(T sketch);
+}
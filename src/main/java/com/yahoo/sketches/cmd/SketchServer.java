@@ -0,0 +1,201 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Runs ds commands sent by SketchClient in a long-running JVM, so that a command does not pay for
+ * JVM startup, and holds named sketches between commands, so that a query of a named sketch
+ * does not read and deserialize it. See {@link ServerProtocol}.
+ *
+ * <p>Each connection runs one command on its own thread, with the client's stdin as its input and
+ * its output sent back to the client. Commands given "--name" update and query the sketches of a
+ * {@link SketchStore}.</p>
+ *
+ * <p>The server has no authentication, so it listens only on the loopback address, and it reads
+ * and writes only the files under its root directory: file names are resolved against the root,
+ * and those that lead outside it are rejected.</p>
+ */
+public class SketchServer {
+  static final int DEFAULT_PORT = 7466;
+  private static final int DRAIN_MILLIS = 10000;
+
+  private final Options options = new Options();
+  private final SketchStore store = new SketchStore(Runtime.getRuntime().availableProcessors());
+
+  SketchServer() {
+    options.addOption(Option.builder()
+        .longOpt("port")
+        .desc("listen on PORT, default " + DEFAULT_PORT)
+        .hasArg()
+        .argName("PORT")
+        .build());
+    options.addOption(Option.builder()
+        .longOpt("root")
+        .desc("resolve the file names of commands against DIR and reject those outside it, "
+            + "default the current directory")
+        .hasArg()
+        .argName("DIR")
+        .build());
+    options.addOption(Option.builder("help")
+        .desc("usage/help")
+        .build());
+  }
+
+  void showHelp() {
+    final HelpFormatter helpf = new HelpFormatter();
+    helpf.setOptionComparator(null);
+    helpf.printHelp("ds serve", options);
+    System.out.println("  Listens on the loopback address. Then run commands with ds client PORT "
+        + "COMMAND, or set " + SketchClient.SERVER_ENV + "=PORT.");
+  }
+
+  void runCommandLineUtil(final String[] args) {
+    final CommandLine cl;
+    try {
+      cl = new DefaultParser().parse(options, args);
+    } catch (final ParseException e) {
+      System.err.println("runCommandLineUtil Error: ");
+      throw new RuntimeException(e);
+    }
+    if (cl.hasOption("help")) {
+      showHelp();
+      return;
+    }
+    final int port = cl.hasOption("port")
+        ? Integer.parseInt(cl.getOptionValue("port")) : DEFAULT_PORT;
+    try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+      final Path root = Paths.get(cl.getOptionValue("root", "")).toRealPath();
+      System.out.println("Serving " + root + " on " + server.getLocalSocketAddress());
+      serve(server, root);
+    } catch (final IOException e) {
+      System.err.println("Serve Error: " + e.getMessage());
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Accepts connections until the server socket is closed.
+   * @param server the bound server socket
+   * @param root the real path of the directory of the files that commands may read and write
+   */
+  void serve(final ServerSocket server, final Path root) {
+    final ExecutorService pool = Executors.newCachedThreadPool(r -> {
+      final Thread thread = new Thread(r, "ds-request");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      while (!server.isClosed()) {
+        final Socket socket;
+        try {
+          socket = server.accept();
+        } catch (final IOException e) {
+          if (server.isClosed()) { break; }
+          System.err.println("Accept Error: " + e.getMessage());
+          continue;
+        }
+        pool.execute(() -> handle(socket, root));
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private void handle(final Socket socket, final Path root) {
+    try (Socket s = socket) {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+      final DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+      if (in.readInt() != ServerProtocol.MAGIC) {
+        throw new IOException("Not a ds client, or a different version");
+      }
+      final String[] args = ServerProtocol.readArgs(in);
+      final int status = run(root, args, new ServerProtocol.ChunkedInputStream(in),
+          new ServerProtocol.FrameOutputStream(out, ServerProtocol.STDOUT),
+          new ServerProtocol.FrameOutputStream(out, ServerProtocol.STDERR));
+      synchronized (out) {
+        out.writeByte(ServerProtocol.END);
+        out.writeInt(status);
+        out.flush();
+      }
+      s.shutdownOutput();
+      drain(s, in); //until the client closes, so that unread input does not reset the connection
+    } catch (final IOException e) {
+      System.err.println("Request Error: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Runs one command with its output sent to the given streams.
+   * @return the status sent to the client
+   */
+  private int run(final Path root, final String[] args,
+      final ServerProtocol.ChunkedInputStream stdIn, final OutputStream stdOut,
+      final OutputStream stdErr) throws UnsupportedEncodingException {
+    final PrintStream out = new PrintStream(stdOut, false, "UTF-8");
+    final PrintStream err = new PrintStream(stdErr, true, "UTF-8");
+    try {
+      final SketchCommandLineParser<?> parser =
+          (args.length > 0) ? SketchCommandLineParser.newParser(args) : null;
+      if (parser == null) {
+        err.println("Unrecognized Sketch Type: " + ((args.length > 0) ? args[0] : ""));
+        return 1;
+      }
+      parser.root = root;
+      parser.stdIn = Channels.newChannel(stdIn);
+      parser.store = store;
+      parser.out = out;
+      parser.err = err;
+      parser.runCommandLineUtil(args);
+      return 0;
+    } catch (final RuntimeException e) {
+      for (Throwable t = e; t != null; t = t.getCause()) {
+        if (t.getMessage() != null) { err.println(t); }
+      }
+      return 1;
+    } finally {
+      out.flush();
+      err.flush();
+    }
+  }
+
+  private static void drain(final Socket socket, final DataInputStream in) throws IOException {
+    socket.setSoTimeout(DRAIN_MILLIS);
+    final byte[] buf = new byte[ServerProtocol.CHUNK_BYTES];
+    try {
+      while (in.read(buf) >= 0) {
+        //discard
+      }
+    } catch (final SocketTimeoutException e) {
+      //the client did not close
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The named sketches held by SketchServer. Each named sketch is striped: it is the union of
+ * several sketches, each guarded by its own lock, so that requests that update the same name at
+ * the same time usually union their input into different stripes without waiting for each other.
+ * Queries union the stripes.
+ *
+ * <p>The stripes are replaced, never modified, because the unions build new sketches, so a stripe
+ * read under its lock may be used after the lock is released.</p>
+ */
+final class SketchStore {
+  private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final int stripes;
+
+  /**
+   * @param stripes the number of stripes of each named sketch
+   */
+  SketchStore(final int stripes) {
+    this.stripes = Math.max(1, stripes);
+  }
+
+  /**
+   * Unions the given sketch into the named sketch, creating it if needed.
+   * @param name the name of the sketch
+   * @param parser the parser that built the given sketch and whose union is used
+   * @param sketch the sketch to add
+   * @param <T> Sketch Type
+   */
+  <T> void update(final String name, final SketchCommandLineParser<T> parser, final T sketch) {
+    final Entry entry = entries.computeIfAbsent(name, n -> new Entry(parser.getClass(), stripes));
+    checkType(name, entry, parser);
+    final int first = ThreadLocalRandom.current().nextInt(stripes);
+    int stripe = first;
+    while (!entry.locks[stripe].tryLock()) { //try the other stripes before waiting
+      stripe = (stripe + 1) % stripes;
+      if (stripe == first) {
+        entry.locks[stripe].lock();
+        break;
+      }
+    }
+    try {
+      @SuppressWarnings("unchecked")
+      final T current = (T) entry.sketches[stripe];
+      entry.sketches[stripe] = (current == null) ? sketch
+          : parser.union(Arrays.asList(current, sketch));
+    } finally {
+      entry.locks[stripe].unlock();
+    }
+  }
+
+  /**
+   * @param name the name of the sketch
+   * @param parser the parser whose union combines the stripes
+   * @param <T> Sketch Type
+   * @return the named sketch, or null if there is none
+   */
+  <T> T get(final String name, final SketchCommandLineParser<T> parser) {
+    final Entry entry = entries.get(name);
+    if (entry == null) { return null; }
+    checkType(name, entry, parser);
+    final List<T> sketches = new ArrayList<>();
+    for (int i = 0; i < stripes; i++) {
+      entry.locks[i].lock();
+      try {
+        @SuppressWarnings("unchecked")
+        final T sketch = (T) entry.sketches[i];
+        if (sketch != null) { sketches.add(sketch); }
+      } finally {
+        entry.locks[i].unlock();
+      }
+    }
+    if (sketches.isEmpty()) { return null; }
+    return (sketches.size() == 1) ? sketches.get(0) : parser.union(sketches);
+  }
+
+  private static void checkType(final String name, final Entry entry,
+      final SketchCommandLineParser<?> parser) {
+    if (entry.type != parser.getClass()) {
+      throw new IllegalArgumentException("Sketch " + name + " was built by "
+          + entry.type.getSimpleName() + ", not " + parser.getClass().getSimpleName());
+    }
+  }
+
+  private static final class Entry {
+    final Class<?> type;
+    final Object[] sketches;
+    final ReentrantLock[] locks;
+
+    Entry(final Class<?> type, final int stripes) {
+      this.type = type;
+      sketches = new Object[stripes];
+      locks = new ReentrantLock[stripes];
+      for (int i = 0; i < stripes; i++) {
+        locks[i] = new ReentrantLock();
+      }
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A ring of the sketches of the last few windows, or slots, whose union is the sketch of a
+ * sliding window. The union is kept with two stacks so that it is never rebuilt from all slots:
+ *
+ * <ul>
+ * <li>The older slots are frozen, with the union of each frozen slot and all newer frozen slots
+ * cached, so evicting the oldest slot only drops its cached union.</li>
+ * <li>The newer slots are folded into a running union as they are added.</li>
+ * </ul>
+ *
+ * <p>The sliding window's sketch is then the union of at most two sketches. When the frozen slots
+ * run out, the newer slots are frozen in turn, which takes one union per slot. Each slot added
+ * therefore costs a constant number of unions, amortized, whatever the number of slots.</p>
+ *
+ * <p>Unions are built with the sketch type's {@link SketchCommandLineParser#union(List)}, which
+ * does not modify its inputs, so cached unions may be shared.</p>
+ *
+ * @param <T> Sketch Type
+ */
+final class SlidingWindow<T> {
+  private final SketchCommandLineParser<T> parser;
+  private final int slots;
+  private final List<T> frozenUnions = new ArrayList<>(); //[i] = union of frozen slots i..end
+  private final List<Long> frozenLines = new ArrayList<>();
+  private int oldest;                                      //first live index of the frozen lists
+  private final List<T> newSlots = new ArrayList<>();
+  private final List<Long> newLines = new ArrayList<>();
+  private T newUnion;
+  private long lines;
+
+  /**
+   * @param parser the parser whose union combines the slots
+   * @param slots the number of slots in the sliding window
+   */
+  SlidingWindow(final SketchCommandLineParser<T> parser, final int slots) {
+    if (slots < 1) { throw new IllegalArgumentException("Slots must be at least 1: " + slots); }
+    this.parser = parser;
+    this.slots = slots;
+  }
+
+  /**
+   * Adds the sketch of the newest slot, evicting the oldest slot if the ring is full.
+   * @param sketch the sketch of the newest slot
+   * @param slotLines the number of lines in the newest slot
+   */
+  void add(final T sketch, final long slotLines) {
+    if ((frozenUnions.size() - oldest + newSlots.size()) == slots) {
+      if (oldest == frozenUnions.size()) { freeze(); }
+      lines -= frozenLines.get(oldest);
+      frozenUnions.set(oldest, null);
+      oldest++;
+    }
+    newSlots.add(sketch);
+    newLines.add(slotLines);
+    newUnion = (newUnion == null) ? sketch : union(newUnion, sketch);
+    lines += slotLines;
+  }
+
+  /**
+   * @return the union of the live slots, or null if no slot has been added
+   */
+  T getResult() {
+    final T frozenUnion = (oldest < frozenUnions.size()) ? frozenUnions.get(oldest) : null;
+    if (frozenUnion == null) { return newUnion; }
+    return (newUnion == null) ? frozenUnion : union(frozenUnion, newUnion);
+  }
+
+  /**
+   * @return the number of lines in the live slots
+   */
+  long getLines() {
+    return lines;
+  }
+
+  /**
+   * Moves the new slots to the frozen side, caching the union of each slot and all newer slots.
+   */
+  private void freeze() {
+    final int n = newSlots.size();
+    frozenUnions.clear();
+    frozenLines.clear();
+    oldest = 0;
+    T union = null;
+    for (int i = n - 1; i >= 0; i--) {
+      union = (union == null) ? newSlots.get(i) : union(newSlots.get(i), union);
+      frozenUnions.add(union);
+    }
+    Collections.reverse(frozenUnions);
+    frozenLines.addAll(newLines);
+    newSlots.clear();
+    newLines.clear();
+    newUnion = null;
+  }
+
+  private T union(final T a, final T b) {
+    return parser.union(Arrays.asList(a, b));
+  }
+}
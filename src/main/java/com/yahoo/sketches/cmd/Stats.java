@@ -0,0 +1,333 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times the phases of a command for "--stats" and shows "--progress". For each phase, e.g.
+ * update, load, merge, query and save, it adds up the wall time, the lines and bytes read, the
+ * bytes allocated and the GC time, and reports them at the end, as a table or as JSON on stderr.
+ * Each phase is also a {@link PhaseEvent} for JFR, if the JVM has it.
+ *
+ * <p>Lines and bytes are counted by the LineUpdaters from {@link #count(LineUpdater)}, which add
+ * them to shared counters every few thousand lines. The bytes allocated are those of the thread
+ * that runs the phase, plus those of the threads whose counted LineUpdaters finished in it, e.g.
+ * the threads of "--threads".</p>
+ */
+final class Stats {
+  private static final int FLUSH_LINES = 1 << 12;
+  private static final long PROGRESS_MILLIS = 1000;
+  private static final boolean JFR = hasJfr();
+
+  private final String command;
+  private final String format;
+  private final PrintStream err;
+  private final long start = System.nanoTime();
+  private final LongAdder lines = new LongAdder();
+  private final LongAdder bytes = new LongAdder();
+  private final LongAdder workerAllocated = new LongAdder();
+  private final Map<String, Phase> phases = new LinkedHashMap<>();
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private volatile long expectedBytes;
+  private volatile String phaseName;
+  private volatile Thread phaseThread;
+  private long phaseStart;
+  private long phaseLines;
+  private long phaseBytes;
+  private long phaseAllocated;
+  private long phaseWorkerAllocated;
+  private long phaseGcMillis;
+  private Object event;
+  private Thread progress;
+
+  /**
+   * @param command the command line, for the report and the JFR events
+   * @param format the report format, "text" or "json", or null for no report
+   * @param err the stream of the progress and the report
+   */
+  Stats(final String command, final String format, final PrintStream err) {
+    if ((format != null) && !format.equalsIgnoreCase("text") && !format.equalsIgnoreCase("json")) {
+      throw new IllegalArgumentException("Unrecognized stats format: " + format
+          + ", expected text or json");
+    }
+    this.command = command;
+    this.err = err;
+    this.format = format;
+  }
+
+  /**
+   * Starts a phase. Phases with the same name are added up.
+   * @param name the phase name
+   */
+  synchronized void begin(final String name) {
+    phaseName = name;
+    phaseThread = Thread.currentThread();
+    phaseStart = System.nanoTime();
+    phaseLines = lines.sum();
+    phaseBytes = bytes.sum();
+    phaseAllocated = allocatedBytes();
+    phaseWorkerAllocated = workerAllocated.sum();
+    phaseGcMillis = gcMillis();
+    event = JFR ? PhaseEvent.start() : null;
+  }
+
+  /**
+   * Ends the phase started by the last {@link #begin(String)}.
+   */
+  synchronized void end() {
+    if (phaseName == null) { return; }
+    Phase phase = phases.get(phaseName);
+    if (phase == null) {
+      phase = new Phase();
+      phases.put(phaseName, phase);
+    }
+    final long phaseLinesRead = lines.sum() - phaseLines;
+    final long phaseBytesRead = bytes.sum() - phaseBytes;
+    phase.calls++;
+    phase.nanos += System.nanoTime() - phaseStart;
+    phase.lines += phaseLinesRead;
+    phase.bytes += phaseBytesRead;
+    phase.allocated += (allocatedBytes() - phaseAllocated)
+        + (workerAllocated.sum() - phaseWorkerAllocated);
+    phase.gcMillis += gcMillis() - phaseGcMillis;
+    if (event != null) {
+      PhaseEvent.commit(event, command, phaseName, phaseLinesRead, phaseBytesRead);
+      event = null;
+    }
+    phaseName = null;
+    phaseThread = null;
+  }
+
+  /**
+   * Wraps the given LineUpdater so that it counts the lines and bytes it is given.
+   * @param updater the LineUpdater to count
+   * @param <T> Sketch Type
+   * @return the counting LineUpdater
+   */
+  <T> LineUpdater<T> count(final LineUpdater<T> updater) {
+    final boolean worker = Thread.currentThread() != phaseThread;
+    return new LineUpdater<T>() {
+      private long startAllocated = worker ? allocatedBytes() : -1;
+      private int pendingLines;
+      private long pendingBytes;
+
+      @Override
+      public void update(final LineReader line) {
+        updater.update(line);
+        pendingBytes += line.length() + 1;
+        if (++pendingLines == FLUSH_LINES) { flush(); }
+      }
+
+      @Override
+      public T getResult() {
+        flush();
+        if (startAllocated >= 0) {
+          final long allocated = allocatedBytes();
+          workerAllocated.add(allocated - startAllocated);
+          startAllocated = allocated;
+        }
+        return updater.getResult();
+      }
+
+      private void flush() {
+        lines.add(pendingLines);
+        bytes.add(pendingBytes);
+        pendingLines = 0;
+        pendingBytes = 0;
+      }
+    };
+  }
+
+  /**
+   * Counts input that is not read through {@link #count(LineUpdater)}, e.g. binary values.
+   * @param inputBytes the number of bytes read
+   */
+  void addBytes(final long inputBytes) {
+    bytes.add(inputBytes);
+  }
+
+  /**
+   * @param inputBytes the total size of the input, for the progress percentage and ETA
+   */
+  void expectBytes(final long inputBytes) {
+    expectedBytes = inputBytes;
+  }
+
+  /**
+   * Starts printing the progress of the input to stderr every second.
+   */
+  void startProgress() {
+    progress = new Thread(() -> {
+      try {
+        while (true) {
+          Thread.sleep(PROGRESS_MILLIS);
+          err.print("\r" + progressLine());
+          err.flush();
+        }
+      } catch (final InterruptedException e) {
+        err.println("\r" + progressLine());
+      }
+    }, "ds-progress");
+    progress.setDaemon(true);
+    progress.start();
+  }
+
+  /**
+   * Stops the progress, if started, after printing it one last time, so that it does not run
+   * into the output of the query.
+   */
+  synchronized void stopProgress() {
+    if (progress == null) { return; }
+    progress.interrupt();
+    try {
+      progress.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    progress = null;
+  }
+
+  /**
+   * Stops the progress and prints the report of the phases to stderr, if a format was given.
+   * @param sketchBytes the size of the sketch saved to "-o", or -1 if none was saved
+   */
+  synchronized void finish(final long sketchBytes) {
+    stopProgress();
+    if (format == null) { return; }
+    final Phase total = new Phase();
+    total.nanos = System.nanoTime() - start;
+    total.lines = lines.sum();
+    total.bytes = bytes.sum();
+    for (Phase phase : phases.values()) {
+      total.allocated += phase.allocated;
+      total.gcMillis += phase.gcMillis;
+    }
+    err.println(format.equalsIgnoreCase("json")
+        ? json(total, sketchBytes) : table(total, sketchBytes));
+  }
+
+  private String table(final Phase total, final long sketchBytes) {
+    final StringBuilder sb = new StringBuilder();
+    final String header = "%-8s %6s %10s %12s %10s %12s %9s %10s %7s";
+    final String row = "%-8s %6s %10.1f %12d %10.1f %12s %9s %10.1f %7d";
+    sb.append(String.format(header, "phase", "calls", "wall ms", "lines", "MB", "lines/s", "MB/s",
+        "alloc MB", "gc ms"));
+    for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+      final Phase p = entry.getValue();
+      sb.append(SketchCommandLineParser.LS).append(String.format(Locale.ROOT, row, entry.getKey(),
+          p.calls, p.nanos / 1e6, p.lines, p.bytes / 1e6, rate(p.lines, p.nanos, 1, "%.0f"),
+          rate(p.bytes, p.nanos, 1e6, "%.1f"), p.allocated / 1e6, p.gcMillis));
+    }
+    sb.append(SketchCommandLineParser.LS).append(String.format(Locale.ROOT, row, "total", "",
+        total.nanos / 1e6, total.lines, total.bytes / 1e6,
+        rate(total.lines, total.nanos, 1, "%.0f"), rate(total.bytes, total.nanos, 1e6, "%.1f"),
+        total.allocated / 1e6, total.gcMillis));
+    if (sketchBytes >= 0) {
+      sb.append(SketchCommandLineParser.LS).append("sketch   ").append(sketchBytes)
+          .append(" bytes");
+    }
+    return sb.toString();
+  }
+
+  private String json(final Phase total, final long sketchBytes) {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("{\"command\":\"").append(command.replace("\\", "\\\\").replace("\"", "\\\""))
+        .append("\",\"phases\":[");
+    String sep = "";
+    for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+      sb.append(sep).append("{\"phase\":\"").append(entry.getKey()).append("\",");
+      entry.getValue().appendJson(sb);
+      sb.append('}');
+      sep = ",";
+    }
+    sb.append("],\"total\":{");
+    total.appendJson(sb);
+    sb.append("}");
+    if (sketchBytes >= 0) {
+      sb.append(",\"sketchBytes\":").append(sketchBytes);
+    }
+    return sb.append('}').toString();
+  }
+
+  private String progressLine() {
+    final String name = phaseName;
+    final double seconds = (System.nanoTime() - start) / 1e9;
+    final long read = bytes.sum();
+    final double bytesPerSecond = read / seconds;
+    final StringBuilder sb = new StringBuilder();
+    sb.append(String.format(Locale.ROOT, "%-7s %,d lines %.1f MB/s",
+        (name == null) ? "" : name, lines.sum(), bytesPerSecond / 1e6));
+    final long expected = expectedBytes;
+    if ((expected > 0) && (read > 0)) {
+      final long eta = (long) (Math.max(0, expected - read) / bytesPerSecond);
+      sb.append(String.format(Locale.ROOT, " %5.1f%% ETA %d:%02d", (100.0 * read) / expected,
+          eta / 60, eta % 60));
+    }
+    return sb.toString();
+  }
+
+  private static String rate(final long amount, final long nanos, final double unit,
+      final String format) {
+    if ((amount == 0) || (nanos == 0)) { return "-"; }
+    return String.format(Locale.ROOT, format, (amount * 1e9) / nanos / unit);
+  }
+
+  /**
+   * @return the bytes allocated by the current thread, or 0 if the JVM does not tell
+   */
+  private long allocatedBytes() {
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return Math.max(0, ((com.sun.management.ThreadMXBean) threads)
+          .getThreadAllocatedBytes(Thread.currentThread().getId()));
+    }
+    return 0;
+  }
+
+  private static long gcMillis() {
+    long millis = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      millis += Math.max(0, gc.getCollectionTime());
+    }
+    return millis;
+  }
+
+  private static boolean hasJfr() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      return true;
+    } catch (final ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  private static final class Phase {
+    long calls;
+    long nanos;
+    long lines;
+    long bytes;
+    long allocated;
+    long gcMillis;
+
+    void appendJson(final StringBuilder sb) {
+      sb.append("\"calls\":").append(calls)
+          .append(",\"wallMillis\":").append(nanos / 1000000)
+          .append(",\"lines\":").append(lines)
+          .append(",\"bytes\":").append(bytes)
+          .append(",\"linesPerSecond\":").append((nanos == 0) ? 0 : (long) ((lines * 1e9) / nanos))
+          .append(",\"bytesPerSecond\":").append((nanos == 0) ? 0 : (long) ((bytes * 1e9) / nanos))
+          .append(",\"allocatedBytes\":").append(allocated)
+          .append(",\"gcMillis\":").append(gcMillis);
+    }
+  }
+}
@@ -1,12 +1,14 @@
 package com.yahoo.sketches.cmd;
 
-import java.io.BufferedReader;
-import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
-import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 
 import com.yahoo.memory.Memory;
+import com.yahoo.memory.WritableMemory;
 import com.yahoo.sketches.theta.AnotB;
 import com.yahoo.sketches.theta.Intersection;
 import com.yahoo.sketches.theta.SetOperation;
@@ -17,7 +19,12 @@ import com.yahoo.sketches.theta.Union;
 import com.yahoo.sketches.theta.UpdateSketch;
 import com.yahoo.sketches.theta.UpdateSketchBuilder;
 
-public class ThetaCL extends SketchCommandLineParser<Sketch> {
+public class ThetaCL extends SketchCommandLineParser<Sketch>
+    implements SketchSerDe<Sketch>, DirectSketch<Sketch> {
+  static final String INPUT_NAME = "input"; //the "-d" or stdin sketch in --expr
+
+  //the names of the "-s" sketches on the list, set with --overlap-matrix
+  private List<String> names;
 
    ThetaCL() {
       super();
@@ -36,50 +43,101 @@ public class ThetaCL extends SketchCommandLineParser<Sketch> {
           .desc("AnotB: From the first sketch subtract all others. "
           + "If '-d' is specified, it becomes the 'A' sketch.")
           .build());
+      options.addOption(Option.builder()
+          .longOpt("expr")
+          .desc("evaluate a set expression over the \"-s\" sketches, named by file name without "
+          + "extension or by bundle key, and \"" + INPUT_NAME + "\" for the \"-d\" sketch, "
+          + "e.g. \"(us | ca) & active - churned\", where | is union, & intersection and - "
+          + "difference. Quote names with ' if they hold spaces or operators, including the - of "
+          + "dates: '2018-06-01' is a name, 2018-06-01 a difference")
+          .hasArg()
+          .argName("EXPR")
+          .build());
+      options.addOption(Option.builder()
+          .longOpt("overlap-matrix")
+          .desc("write the intersection, union and Jaccard estimates of every pair of \"-s\" "
+          + "sketches as TSV, computed with -threads threads")
+          .build());
       options.addOption(Option.builder("b")
           .longOpt("bounds")
           .desc("output the 95% confidence bounds along with the estimate")
           .build());
-   }
+     }
 
   @Override
   protected void showHelp() {
-    final HelpFormatter helpf = new HelpFormatter();
-    helpf.setOptionComparator(null);
-    helpf.printHelp("ds theta", options);
+    printHelp("ds theta");
   }
 
 
   protected UpdateSketch buildSketch() {
+    return builder().build();
+  }
+
+  private UpdateSketchBuilder builder() {
     final UpdateSketchBuilder bldr = Sketches.updateSketchBuilder();
     if (cl.hasOption("k")) {
       bldr.setNominalEntries(Integer.parseInt(cl.getOptionValue("k")));  // user defined k
     }
-    return bldr.build();
+    return bldr;
+  }
+
+  @Override
+  public LineUpdater<Sketch> newDirectUpdater(final WritableMemory mem, final boolean create) {
+    final UpdateSketchBuilder bldr = builder();
+    final UpdateSketch sketch = create ? bldr.build(mem) : UpdateSketch.wrap(mem);
+    if (cl.hasOption("k") && (sketch.getLgNomLongs() != bldr.getLgNominalEntries())) {
+      throw new IllegalArgumentException("The \"-o\" sketch has k " + (1 << sketch.getLgNomLongs())
+          + ", not " + (1 << bldr.getLgNominalEntries()));
+    }
+    return new LineUpdater<Sketch>() {
+      @Override
+      public void update(final LineReader line) {
+        if (line.length() == 0) { return; }
+        sketch.update(line.toByteArray());
+      }
+
+      @Override
+      public Sketch getResult() {
+        return sketch.compact(); //on heap, the update sketch stays in the file
+      }
+    };
+  }
+
+  @Override
+  public long directSketchBytes() {
+    return Sketch.getMaxUpdateSketchBytes(1 << builder().getLgNominalEntries());
   }
 
   @Override
-  protected void updateSketch(final BufferedReader br) {
+  protected LineUpdater<Sketch> newLineUpdater() {
     final UpdateSketch updateSketch = buildSketch();
-    String itemStr = "";
-    try {
-      while ((itemStr = br.readLine()) != null) {
-        updateSketch.update(itemStr);
+    return new LineUpdater<Sketch>() {
+      @Override
+      public void update(final LineReader line) {
+        if (line.length() == 0) { return; }
+        updateSketch.update(line.toByteArray()); //same hash as update(String) of the UTF-8 line
       }
-      sketchList.add(updateSketch.compact());
-    } catch (final IOException e) {
-      printlnErr("Read Error: Item: " + itemStr + ", " + br.toString());
-      throw new RuntimeException(e);
-    }
+
+      @Override
+      public Sketch getResult() {
+        return updateSketch.compact();
+      }
+    };
   }
 
   @Override
-  protected Sketch deserializeSketch(final byte[] bytes) {
+  public Sketch deserializeSketch(final byte[] bytes) {
     return Sketch.wrap(Memory.wrap(bytes));
   }
 
   @Override
-  protected byte[] serializeSketch(final Sketch sketch) {
+  public Sketch wrapSketch(final Memory mem) {
+    return Sketch.wrap(mem);
+  }
+
+  @Override
+  public byte[] serializeSketch(final Sketch sketch) {
     if (sketch instanceof UpdateSketch) {
       return ((UpdateSketch) sketch).compact().toByteArray();
     }
@@ -87,8 +145,40 @@ public class ThetaCL extends SketchCommandLineParser<Sketch> {
   }
 
 
+  @Override
+  boolean parseCommandLine(final String[] args) {
+    if (!super.parseCommandLine(args)) { return false; }
+    if (cl.hasOption("expr") && (!cl.hasOption("s") || cl.hasOption("i") || cl.hasOption("m"))) {
+      throw new IllegalArgumentException("--expr reads the sketches it names from \"-s\", "
+          + "and cannot be used with -i or -m");
+    }
+    if (cl.hasOption("overlap-matrix") && (!cl.hasOption("s") || cl.hasOption("d")
+        || cl.hasOption("o") || cl.hasOption("i") || cl.hasOption("m") || cl.hasOption("expr"))) {
+      throw new IllegalArgumentException("--overlap-matrix reads only \"-s\" sketches, and "
+          + "cannot be used with -d, -o, -i, -m or --expr");
+    }
+    return true;
+  }
+
+  @Override
+  protected void addInputSketches() {
+    if (cl.hasOption("overlap-matrix")) {
+      names = new ArrayList<>();
+      loadInputSketches(names);
+    } else if (!cl.hasOption("expr")) { //--expr loads only what it needs
+      super.addInputSketches();
+    }
+  }
+
   @Override
   protected void mergeSketches() {
+    //PAIRS, written by queryCurrentSketch()
+    if (cl.hasOption("overlap-matrix")) { return; }
+    //SET EXPRESSION
+    if (cl.hasOption("expr")) {
+      sketchList.add(evaluateExpression()); //add result at the end of list
+      return;
+    }
     //INTERSECTION
     if (cl.hasOption("i")) { //-i and -m are mutually exclusive
       final Intersection intersection = SetOperation.builder().buildIntersection();
@@ -100,33 +190,81 @@ public class ThetaCL extends SketchCommandLineParser<Sketch> {
     }
     //A NOT B
     if (cl.hasOption("m")) {
-      final Union union = SetOperation.builder().buildUnion();
       //union all sketches in list except the first one
-      for (int i = 1; i < sketchList.size(); i++) { //skip the first one
-        union.update(sketchList.get(i));
-      }
-
+      final Sketch b = union(sketchList.subList(1, sketchList.size()));
       final AnotB aNotB = Sketches.setOperationBuilder().buildANotB();
-      aNotB.update(sketchList.get(0), union.getResult()); //A = first one, B = Union
+      aNotB.update(sketchList.get(0), b); //A = first one, B = Union
       sketchList.add(aNotB.getResult()); //add result at the end of list
       return;
     }
 
     // otherwise union
+    sketchList.add(union(sketchList)); //add result at the end
+    return;
+  }
+
+  @Override
+  protected boolean mergeIsUnion() {
+    return !cl.hasOption("i") && !cl.hasOption("m");
+  }
+
+  /**
+   * Evaluates "--expr" over the named "-s" sketches, loading only those it names, each once.
+   * @return the result
+   */
+  private Sketch evaluateExpression() {
+    final ThetaExpression expr = new ThetaExpression(cl.getOptionValue("expr"));
+    final List<Bundle> bundles = new ArrayList<>();
+    try {
+      final Map<String, SketchInput> inputs = namedInputSketches(bundles);
+      final boolean hasInput = !sketchList.isEmpty();
+      for (final String name : expr.names()) {
+        if (!(hasInput && name.equals(INPUT_NAME)) && (inputs.get(name) == null)) {
+          throw new IllegalArgumentException((inputs.containsKey(name) ? "Several" : "No")
+              + " \"-s\" sketches named " + name + " in --expr");
+        }
+      }
+      return expr.evaluate(name -> (hasInput && name.equals(INPUT_NAME))
+          ? sketchList.get(0) : loadSketch(inputs.get(name)), setOperationBuilder());
+    } catch (final UncheckedIOException e) {
+      printlnErr("Deserialize Input Sketches Error: " + e.getCause().getMessage());
+      throw new RuntimeException(e);
+    } finally {
+      closeAll(bundles);
+    }
+  }
+
+  private SetOperationBuilder setOperationBuilder() {
     final SetOperationBuilder builder = SetOperation.builder();
     if (cl.hasOption("k")) { // user defined k
       builder.setNominalEntries(Integer.parseInt(cl.getOptionValue("k")));
     }
-    final Union union = builder.buildUnion();
-    for (Sketch sketch: sketchList) {
-      union.update(sketch);
-    }
-    sketchList.add(union.getResult()); //add result at the end
-    return;
+    return builder;
+  }
+
+  @Override
+  protected SketchMerger<Sketch> newMerger() {
+    final Union union = setOperationBuilder().buildUnion();
+    return new SketchMerger<Sketch>() {
+      @Override
+      public void update(final Sketch sketch) {
+        union.update(sketch);
+      }
+
+      @Override
+      public Sketch getResult() {
+        return union.getResult();
+      }
+    };
   }
 
   @Override
   protected void queryCurrentSketch() {
+    if (cl.hasOption("overlap-matrix")) {
+      new OverlapMatrix(names, sketchList, cl.hasOption("b"))
+          .write(sketchThreads(), this::println);
+      return;
+    }
     if (sketchList.size() > 0) {
       final Sketch sketch = sketchList.get(sketchList.size() - 1);
       final double est = sketch.getEstimate();
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+import com.yahoo.sketches.theta.AnotB;
+import com.yahoo.sketches.theta.Intersection;
+import com.yahoo.sketches.theta.SetOperationBuilder;
+import com.yahoo.sketches.theta.Sketch;
+import com.yahoo.sketches.theta.Union;
+
+/**
+ * A set expression over theta sketches for "ds theta --expr", e.g. <i>(us | ca) &amp; active -
+ * churned</i>, where | (or ∪) is union, &amp; (or ∩) is intersection and - (or −) is set
+ * difference. &amp; binds tighter than | and -, which apply from left to right, and parentheses
+ * group. The operands are names of sketches, quoted with ' or " if they hold spaces or operator
+ * characters. A name with a - in it must be quoted: unquoted, <i>2018-06-01 | us</i> is the
+ * difference of the sketches 2018, 06 and 01, unioned with us, so the date keys of a bundle are
+ * written <i>'2018-06-01' | us</i>.
+ *
+ * <p>The expression is parsed into a graph in which equal subexpressions are one node: unions and
+ * intersections are flattened and their operands put in a canonical order, so that in
+ * <i>(a | b) &amp; c - (b | a) &amp; d</i> the union is evaluated once. Each operand is loaded
+ * once, when first needed. An intersection evaluates its operands in ascending order of an upper
+ * bound of their estimates, which keeps the running result small, and stops at the first empty
+ * result without evaluating the rest. A difference does not evaluate its right side when its left
+ * side is empty.</p>
+ */
+final class ThetaExpression {
+  private static final String OPERATORS = "()|&-∪∩−'\"";
+
+  private final String text;
+  private final Map<String, Node> nodes = new HashMap<>(); //by canonical form
+  private final Set<String> names = new LinkedHashSet<>();
+  private final Node root;
+  private int pos;
+
+  /**
+   * Parses an expression.
+   * @param text the expression
+   * @throws IllegalArgumentException if the expression is malformed
+   */
+  ThetaExpression(final String text) {
+    this.text = text;
+    root = parseExpr();
+    skipSpaces();
+    if (pos < text.length()) { throw error("unexpected '" + text.charAt(pos) + "'"); }
+  }
+
+  /**
+   * @return the operand names, in the order they first appear
+   */
+  Set<String> names() {
+    return Collections.unmodifiableSet(names);
+  }
+
+  /**
+   * Evaluates the expression.
+   * @param operands gives the sketch of an operand name, called once per name at most
+   * @param builder builds the set operations, with the nominal entries of the unions
+   * @return the result
+   */
+  Sketch evaluate(final Function<String, Sketch> operands, final SetOperationBuilder builder) {
+    return root.result(new Context(operands, builder));
+  }
+
+  //PARSER
+
+  private Node parseExpr() { //term (('|' | '-') term)*
+    Node left = parseTerm();
+    while (true) {
+      final char op = peek();
+      if ((op == '|') || (op == '∪')) {
+        pos++;
+        left = union(left, parseTerm());
+      } else if ((op == '-') || (op == '−')) {
+        pos++;
+        left = minus(left, parseTerm());
+      } else {
+        return left;
+      }
+    }
+  }
+
+  private Node parseTerm() { //factor ('&' factor)*
+    Node left = parseFactor();
+    while ((peek() == '&') || (peek() == '∩')) {
+      pos++;
+      left = intersection(left, parseFactor());
+    }
+    return left;
+  }
+
+  private Node parseFactor() { //'(' expr ')' | name
+    final char c = peek();
+    if (c == '(') {
+      pos++;
+      final Node node = parseExpr();
+      if (peek() != ')') { throw error("expected ')'"); }
+      pos++;
+      return node;
+    }
+    final String name;
+    if ((c == '\'') || (c == '"')) {
+      final int end = text.indexOf(c, pos + 1);
+      if (end < 0) { throw error("unterminated quote"); }
+      name = text.substring(pos + 1, end);
+      pos = end + 1;
+    } else {
+      final int start = pos;
+      while ((pos < text.length()) && !Character.isWhitespace(text.charAt(pos))
+          && (OPERATORS.indexOf(text.charAt(pos)) < 0)) {
+        pos++;
+      }
+      if (pos == start) {
+        throw error((pos < text.length()) ? "unexpected '" + c + "'" : "unexpected end");
+      }
+      name = text.substring(start, pos);
+    }
+    names.add(name);
+    return intern(new Leaf(name));
+  }
+
+  private char peek() {
+    skipSpaces();
+    return (pos < text.length()) ? text.charAt(pos) : 0;
+  }
+
+  private void skipSpaces() {
+    while ((pos < text.length()) && Character.isWhitespace(text.charAt(pos))) { pos++; }
+  }
+
+  private IllegalArgumentException error(final String message) {
+    return new IllegalArgumentException("Bad --expr at position " + pos + ": " + message + ": "
+        + text);
+  }
+
+  //PLAN
+
+  private Node union(final Node left, final Node right) {
+    final List<Node> operands = operands(left, right, UnionNode.class);
+    return (operands.size() == 1) ? operands.get(0) : intern(new UnionNode(operands));
+  }
+
+  private Node intersection(final Node left, final Node right) {
+    final List<Node> operands = operands(left, right, IntersectionNode.class);
+    return (operands.size() == 1) ? operands.get(0) : intern(new IntersectionNode(operands));
+  }
+
+  private Node minus(final Node left, final Node right) {
+    return intern(new MinusNode(left, right));
+  }
+
+  /**
+   * @return the distinct operands of left and right in canonical order, with those of a left or
+   * right node of the given class flattened into them
+   */
+  private static List<Node> operands(final Node left, final Node right,
+      final Class<?> flattened) {
+    final TreeSet<Node> operands = new TreeSet<>(Comparator.comparing((Node n) -> n.canonical));
+    for (final Node node : new Node[] {left, right}) {
+      if (flattened.isInstance(node)) {
+        operands.addAll(((NaryNode) node).operands);
+      } else {
+        operands.add(node);
+      }
+    }
+    return new ArrayList<>(operands);
+  }
+
+  private Node intern(final Node node) {
+    final Node known = nodes.putIfAbsent(node.canonical, node);
+    return (known == null) ? node : known;
+  }
+
+  //EVALUATION
+
+  private static final class Context {
+    final Function<String, Sketch> operands;
+    final SetOperationBuilder builder;
+
+    Context(final Function<String, Sketch> operands, final SetOperationBuilder builder) {
+      this.operands = operands;
+      this.builder = builder;
+    }
+  }
+
+  private abstract static class Node {
+    final String canonical;
+    private Sketch result;
+    private double bound = -1;
+
+    Node(final String canonical) {
+      this.canonical = canonical;
+    }
+
+    /**
+     * @return the result, computed once
+     */
+    final Sketch result(final Context ctx) {
+      if (result == null) { result = compute(ctx); }
+      return result;
+    }
+
+    /**
+     * @return an upper bound of the estimate of the result, from the operand estimates if the
+     * result is not known yet
+     */
+    final double bound(final Context ctx) {
+      if (result != null) { return result.getEstimate(); }
+      if (bound < 0) { bound = computeBound(ctx); }
+      return bound;
+    }
+
+    abstract Sketch compute(Context ctx);
+
+    abstract double computeBound(Context ctx);
+  }
+
+  private static final class Leaf extends Node {
+    private final String name;
+
+    Leaf(final String name) {
+      super("'" + name + "'");
+      this.name = name;
+    }
+
+    @Override
+    Sketch compute(final Context ctx) {
+      return ctx.operands.apply(name);
+    }
+
+    @Override
+    double computeBound(final Context ctx) {
+      return result(ctx).getEstimate();
+    }
+  }
+
+  private abstract static class NaryNode extends Node {
+    final List<Node> operands;
+
+    NaryNode(final List<Node> operands, final String op) {
+      super(canonical(operands, op));
+      this.operands = operands;
+    }
+
+    private static String canonical(final List<Node> operands, final String op) {
+      final StringBuilder sb = new StringBuilder("(");
+      for (final Node node : operands) {
+        if (sb.length() > 1) { sb.append(op); }
+        sb.append(node.canonical);
+      }
+      return sb.append(')').toString();
+    }
+  }
+
+  private static final class UnionNode extends NaryNode {
+    UnionNode(final List<Node> operands) {
+      super(operands, "|");
+    }
+
+    @Override
+    Sketch compute(final Context ctx) {
+      final Union union = ctx.builder.buildUnion();
+      for (final Node node : operands) {
+        union.update(node.result(ctx));
+      }
+      return union.getResult();
+    }
+
+    @Override
+    double computeBound(final Context ctx) {
+      double sum = 0;
+      for (final Node node : operands) {
+        sum += node.bound(ctx);
+      }
+      return sum;
+    }
+  }
+
+  private static final class IntersectionNode extends NaryNode {
+    IntersectionNode(final List<Node> operands) {
+      super(operands, "&");
+    }
+
+    @Override
+    Sketch compute(final Context ctx) {
+      final List<Node> ordered = new ArrayList<>(operands);
+      ordered.sort(Comparator.comparingDouble((Node node) -> node.bound(ctx)));
+      final Intersection intersection = ctx.builder.buildIntersection();
+      for (int i = 0; i < ordered.size(); i++) {
+        final Sketch sketch = ordered.get(i).result(ctx);
+        intersection.update(sketch);
+        if ((i == (ordered.size() - 1)) || (sketch.getRetainedEntries(true) == 0)) { break; }
+        //unordered, so as not to sort the entries of a result that is only counted
+        if (intersection.getResult(false, null).getRetainedEntries(true) == 0) {
+          break; //empty, whatever the remaining operands are
+        }
+      }
+      return intersection.getResult();
+    }
+
+    @Override
+    double computeBound(final Context ctx) {
+      double min = Double.MAX_VALUE;
+      for (final Node node : operands) {
+        min = Math.min(min, node.bound(ctx));
+      }
+      return min;
+    }
+  }
+
+  private static final class MinusNode extends Node {
+    private final Node left;
+    private final Node right;
+
+    MinusNode(final Node left, final Node right) {
+      super("(" + left.canonical + "-" + right.canonical + ")");
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    Sketch compute(final Context ctx) {
+      final Sketch a = left.result(ctx);
+      if (a.getRetainedEntries(true) == 0) { return a; } //nothing to subtract from
+      final AnotB aNotB = ctx.builder.buildANotB();
+      aNotB.update(a, right.result(ctx));
+      return aNotB.getResult();
+    }
+
+    @Override
+    double computeBound(final Context ctx) {
+      return left.bound(ctx);
+    }
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import org.apache.commons.cli.Option;
+
+import com.yahoo.memory.Memory;
+import com.yahoo.sketches.tuple.AnotB;
+import com.yahoo.sketches.tuple.DoubleSummary;
+import com.yahoo.sketches.tuple.DoubleSummaryDeserializer;
+import com.yahoo.sketches.tuple.DoubleSummaryFactory;
+import com.yahoo.sketches.tuple.DoubleSummarySetOperations;
+import com.yahoo.sketches.tuple.Intersection;
+import com.yahoo.sketches.tuple.Sketch;
+import com.yahoo.sketches.tuple.SketchIterator;
+import com.yahoo.sketches.tuple.Sketches;
+import com.yahoo.sketches.tuple.Union;
+import com.yahoo.sketches.tuple.UpdatableSketch;
+import com.yahoo.sketches.tuple.UpdatableSketchBuilder;
+
+/**
+ * Tuple sketch of distinct keys, each with a metric aggregated over its lines, e.g. the distinct
+ * users and their total spend. Each line is a key and a value separated by a tab, comma or spaces,
+ * and a line with only a key has value 1. The keys are hashed as by ThetaCL, so the distinct
+ * counts of a tuple and a theta sketch of the same keys agree.
+ */
+public class TupleCL extends SketchCommandLineParser<Sketch<DoubleSummary>>
+    implements SketchSerDe<Sketch<DoubleSummary>> {
+
+  TupleCL() {
+    super();
+    // input options
+    options.addOption(Option.builder("k")
+        .desc("parameter k")
+        .hasArg()
+        .build());
+    options.addOption(Option.builder()
+        .longOpt("mode")
+        .desc("aggregate the values of each key, and of a key in merged sketches, as their sum, "
+            + "min or max, default sum")
+        .hasArg()
+        .argName("sum|min|max")
+        .build());
+    // sketch level operators
+    options.addOption(Option.builder("i")
+        .longOpt("intersection")
+        .desc("intersection of sketches")
+        .build());
+    options.addOption(Option.builder("m")
+        .longOpt("set-minus")
+        .desc("AnotB: From the first sketch subtract all others. "
+        + "If '-d' is specified, it becomes the 'A' sketch.")
+        .build());
+    // output options
+    options.addOption(Option.builder("b")
+        .longOpt("bounds")
+        .desc("output the 95% confidence bounds along with the estimate")
+        .build());
+  }
+
+  @Override
+  protected void showHelp() {
+    printHelp("ds tuple");
+  }
+
+  private DoubleSummary.Mode mode() {
+    final String mode = cl.getOptionValue("mode", "sum");
+    switch (mode.toLowerCase()) {
+      case "sum": return DoubleSummary.Mode.Sum;
+      case "min": return DoubleSummary.Mode.Min;
+      case "max": return DoubleSummary.Mode.Max;
+      default: throw new IllegalArgumentException("Unrecognized mode: " + mode
+          + ", expected sum, min or max");
+    }
+  }
+
+  protected UpdatableSketch<Double, DoubleSummary> buildSketch() {
+    final UpdatableSketchBuilder<Double, DoubleSummary> bldr =
+        new UpdatableSketchBuilder<>(new DoubleSummaryFactory(mode()));
+    if (cl.hasOption("k")) {
+      bldr.setNominalEntries(Integer.parseInt(cl.getOptionValue("k")));  // user defined k
+    }
+    return bldr.build();
+  }
+
+  @Override
+  protected LineUpdater<Sketch<DoubleSummary>> newLineUpdater() {
+    final UpdatableSketch<Double, DoubleSummary> sketch = buildSketch();
+    return new LineUpdater<Sketch<DoubleSummary>>() {
+      @Override
+      public void update(final LineReader line) {
+        final int len = line.length();
+        if (len == 0) { return; }
+        final int sep = LineParser.indexOfSeparator(line, 0);
+        if (sep == 0) { return; } //no key
+        final int valueStart = LineParser.skipSeparators(line, sep);
+        sketch.update(line.toByteArray(0, sep),
+            (valueStart < len) ? LineParser.parseDouble(line, valueStart, len) : 1.0);
+      }
+
+      @Override
+      public Sketch<DoubleSummary> getResult() {
+        return sketch.compact();
+      }
+    };
+  }
+
+  @Override
+  public Sketch<DoubleSummary> deserializeSketch(final byte[] bytes) {
+    return wrapSketch(Memory.wrap(bytes));
+  }
+
+  @Override
+  public Sketch<DoubleSummary> wrapSketch(final Memory mem) {
+    return Sketches.heapifySketch(mem, new DoubleSummaryDeserializer());
+  }
+
+  @Override
+  public byte[] serializeSketch(final Sketch<DoubleSummary> sketch) {
+    return sketch.toByteArray();
+  }
+
+  @Override
+  protected void mergeSketches() {
+    //INTERSECTION
+    if (cl.hasOption("i")) { //-i and -m are mutually exclusive
+      final Intersection<DoubleSummary> intersection =
+          new Intersection<>(new DoubleSummarySetOperations(mode()));
+      for (Sketch<DoubleSummary> sketch: sketchList) { //intersect all sketches in list
+        intersection.update(sketch);
+      }
+      sketchList.add(intersection.getResult()); //add result at the end of list
+      return;
+    }
+    //A NOT B
+    if (cl.hasOption("m")) {
+      //union all sketches in list except the first one
+      final Sketch<DoubleSummary> b = union(sketchList.subList(1, sketchList.size()));
+      final AnotB<DoubleSummary> aNotB = new AnotB<>();
+      aNotB.update(sketchList.get(0), b); //A = first one, B = Union
+      sketchList.add(aNotB.getResult()); //add result at the end of list
+      return;
+    }
+
+    // otherwise union
+    sketchList.add(union(sketchList)); //add result at the end
+  }
+
+  @Override
+  protected boolean mergeIsUnion() {
+    return !cl.hasOption("i") && !cl.hasOption("m");
+  }
+
+  @Override
+  protected SketchMerger<Sketch<DoubleSummary>> newMerger() {
+    final DoubleSummarySetOperations setOps = new DoubleSummarySetOperations(mode());
+    final Union<DoubleSummary> union = cl.hasOption("k") // user defined k
+        ? new Union<>(Integer.parseInt(cl.getOptionValue("k")), setOps) : new Union<>(setOps);
+    return new SketchMerger<Sketch<DoubleSummary>>() {
+      @Override
+      public void update(final Sketch<DoubleSummary> sketch) {
+        union.update(sketch);
+      }
+
+      @Override
+      public Sketch<DoubleSummary> getResult() {
+        return union.getResult();
+      }
+    };
+  }
+
+  /**
+   * Prints the estimate of the distinct keys and the aggregate of their values: the estimated
+   * total for sum, scaled up from the retained keys, and the least or greatest retained value for
+   * min or max.
+   */
+  @Override
+  protected void queryCurrentSketch() {
+    if (sketchList.size() > 0) {
+      final Sketch<DoubleSummary> sketch = sketchList.get(sketchList.size() - 1);
+      final DoubleSummary.Mode mode = mode();
+      double aggregate = (mode == DoubleSummary.Mode.Sum) ? 0
+          : (mode == DoubleSummary.Mode.Min) ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+      final SketchIterator<DoubleSummary> it = sketch.iterator();
+      while (it.next()) {
+        final double value = it.getSummary().getValue();
+        switch (mode) {
+          case Min: aggregate = Math.min(aggregate, value); break;
+          case Max: aggregate = Math.max(aggregate, value); break;
+          default: aggregate += value; break;
+        }
+      }
+      if (mode == DoubleSummary.Mode.Sum) {
+        aggregate /= sketch.getTheta();
+      } else if (sketch.getRetainedEntries() == 0) {
+        aggregate = Double.NaN;
+      }
+      final double est = sketch.getEstimate();
+      final String s;
+
+      if (cl.hasOption("b")) {
+        final double lb = sketch.getLowerBound(2);
+        final double ub = sketch.getUpperBound(2);
+        s = String.format("%.0f   %.0f   %.0f   %f", lb, est, ub, aggregate);
+      } else {
+        s = String.format("%.0f   %f", est, aggregate);
+      }
+      println(s);
+    }
+  }
+}
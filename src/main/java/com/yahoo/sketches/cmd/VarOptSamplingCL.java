@@ -2,12 +2,10 @@ package com.yahoo.sketches.cmd;
 
 import static com.yahoo.sketches.Util.TAB;
 
-import java.io.BufferedReader;
-import java.io.IOException;
+import java.util.List;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
-import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 
 import com.yahoo.memory.Memory;
@@ -17,7 +15,8 @@ import com.yahoo.sketches.sampling.VarOptItemsSamples;
 import com.yahoo.sketches.sampling.VarOptItemsSketch;
 import com.yahoo.sketches.sampling.VarOptItemsUnion;
 
-public class VarOptSamplingCL extends SketchCommandLineParser<VarOptItemsSketch<String>> {
+public class VarOptSamplingCL extends SketchCommandLineParser<VarOptItemsSketch<String>>
+    implements SketchSerDe<VarOptItemsSketch<String>> {
 
   VarOptSamplingCL() {
     super();
@@ -53,9 +52,7 @@ public class VarOptSamplingCL extends SketchCommandLineParser<VarOptItemsSketch<
 
   @Override
   protected void showHelp() {
-    final HelpFormatter helpf = new HelpFormatter();
-      helpf.setOptionComparator(null);
-      helpf.printHelp( "ds vsamp", options);
+    printHelp("ds vsamp");
   }
 
   protected VarOptItemsSketch<String> buildSketch() {
@@ -64,54 +61,84 @@ public class VarOptSamplingCL extends SketchCommandLineParser<VarOptItemsSketch<
   }
 
   @Override
-  protected void updateSketch(final BufferedReader br) {
+  protected LineUpdater<VarOptItemsSketch<String>> newLineUpdater() {
     final VarOptItemsSketch<String> sketch = buildSketch();
-    String itemStr = "";
-    try {
-      if (cl.hasOption("w")) {
-        while ((itemStr = br.readLine()) != null) {
-          if (itemStr.isEmpty()) { continue; }
-          final String[] tokens = itemStr.split("[\\t, ]+", 2);
-          if (tokens.length < 2) {
-            sketch.update(tokens[1], 1.0);
-          } else {
-            sketch.update(tokens[1], Double.parseDouble(tokens[0]));
+    final boolean weighted = cl.hasOption("w");
+    return new LineUpdater<VarOptItemsSketch<String>>() {
+      @Override
+      public void update(final LineReader line) {
+        final int len = line.length();
+        if (len == 0) { return; }
+        if (weighted) {
+          final int sep = LineParser.indexOfSeparator(line, 0);
+          final int itemStart = LineParser.skipSeparators(line, sep);
+          if (itemStart < len) {
+            sketch.update(line.toString(itemStart, len), LineParser.parseDouble(line, 0, sep));
+          } else if (sep > 0) { //a single token is the item
+            sketch.update(line.toString(0, sep), 1.0);
           }
-        }
-      } else { //assume entire line is item
-        while ((itemStr = br.readLine()) != null) {
-          if (itemStr.isEmpty()) { continue; }
-          sketch.update(itemStr, 1.0);
+        } else { //assume entire line is item
+          sketch.update(line.toString(), 1.0);
         }
       }
-      sketchList.add(sketch);
-    } catch (final IOException | NumberFormatException e) {
-      printlnErr("Read Error: Item: " + itemStr + ", " + br.toString());
-      throw new RuntimeException(e);
-    }
+
+      @Override
+      public VarOptItemsSketch<String> getResult() {
+        return sketch;
+      }
+    };
   }
 
   @Override
-  protected VarOptItemsSketch<String>  deserializeSketch(final byte[] bytes) {
-    final Memory mem = Memory.wrap(bytes);
-    final VarOptItemsSketch<String> sketch =
-        VarOptItemsSketch.heapify(mem, new ArrayOfStringsSerDe());
-    return sketch;
+  public VarOptItemsSketch<String>  deserializeSketch(final byte[] bytes) {
+    return wrapSketch(Memory.wrap(bytes));
   }
 
   @Override
-  protected byte[] serializeSketch(final VarOptItemsSketch<String> sketch) {
+  public VarOptItemsSketch<String> wrapSketch(final Memory mem) {
+    return VarOptItemsSketch.heapify(mem, new ArrayOfStringsSerDe());
+  }
+
+  @Override
+  public byte[] serializeSketch(final VarOptItemsSketch<String> sketch) {
     return sketch.toByteArray(new ArrayOfStringsSerDe());
   }
 
   @Override
-  protected void mergeSketches() {
-    final int k = sketchList.get(sketchList.size() - 1).getK();
+  protected VarOptItemsSketch<String> union(final List<VarOptItemsSketch<String>> sketches) {
+    final int k = sketches.get(sketches.size() - 1).getK();
     final VarOptItemsUnion<String> union = VarOptItemsUnion.newInstance(k);
-    for (VarOptItemsSketch<String>  sketch: sketchList) {
+    for (VarOptItemsSketch<String>  sketch: sketches) {
       union.update(sketch);
     }
-    sketchList.add(union.getResult());
+    return union.getResult();
+  }
+
+  /**
+   * Merges the sketches into a union of the k of the first, where {@link #union(List)} takes the k
+   * of the last, which a merger does not know until its result is taken.
+   */
+  @Override
+  protected SketchMerger<VarOptItemsSketch<String>> newMerger() {
+    return new SketchMerger<VarOptItemsSketch<String>>() {
+      private VarOptItemsUnion<String> union;
+
+      @Override
+      public void update(final VarOptItemsSketch<String> sketch) {
+        if (union == null) { union = VarOptItemsUnion.newInstance(sketch.getK()); }
+        union.update(sketch);
+      }
+
+      @Override
+      public VarOptItemsSketch<String> getResult() {
+        return union.getResult();
+      }
+    };
+  }
+
+  @Override
+  protected void mergeSketches() {
+    sketchList.add(union(sketchList));
   }
 
   @Override
@@ -149,7 +176,7 @@ public class VarOptSamplingCL extends SketchCommandLineParser<VarOptItemsSketch<
         final VarOptItemsSamples<String> samples = sketch.getSketchSamples();
         println("\nItems" + TAB + "Weights");
         for (VarOptItemsSamples<String>.WeightedSample ws : samples) {
-          System.out.println(ws.getItem() + "\t" + ws.getWeight());
+          println(ws.getItem() + "\t" + ws.getWeight());
         }
       }
     }
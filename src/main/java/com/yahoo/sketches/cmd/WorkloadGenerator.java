@@ -0,0 +1,405 @@
+/*
+ * Copyright 2018, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Writes seeded synthetic input for the sketch commands, <i>ds gen DIST</i>:
+ *
+ * <ul>
+ * <li>zipf: Zipf-distributed item ranks, e.g. for freq</li>
+ * <li>ids: uniform ids, all distinct by default, e.g. for hll, theta and rsamp</li>
+ * <li>lognormal: log-normal latencies with three decimals, e.g. for quant</li>
+ * <li>weighted: a log-normal integer weight, a tab and a Zipf item, for freq -w and vsamp -w</li>
+ * </ul>
+ *
+ * <p>The lines are generated in chunks of {@link #CHUNK_LINES} lines by a pool of threads, each
+ * chunk from its own random generator seeded with the seed and the chunk number, and written in
+ * order. The output therefore depends on the seed and the options, not on the thread count.</p>
+ */
+final class WorkloadGenerator {
+  static final int CHUNK_LINES = 1 << 16;
+  private static final long DEFAULT_LINES = 1000000;
+  private static final int DEFAULT_ITEMS = 1000000;
+
+  /**
+   * The distributions of the generated lines, as given after "ds gen".
+   */
+  enum Distribution {
+    ZIPF, IDS, LOGNORMAL, WEIGHTED;
+
+    /**
+     * @param name one of zipf, ids, lognormal or weighted, in any case
+     * @return the distribution of the given name
+     */
+    static Distribution of(final String name) {
+      for (Distribution distribution : values()) {
+        if (distribution.name().equalsIgnoreCase(name)) { return distribution; }
+      }
+      throw new IllegalArgumentException("Unrecognized distribution: " + name
+          + ", expected zipf, ids, lognormal or weighted");
+    }
+  }
+
+  private final Options options = new Options();
+
+  WorkloadGenerator() {
+    options.addOption(Option.builder("n")
+        .longOpt("lines")
+        .desc("write N lines, default " + DEFAULT_LINES)
+        .hasArg()
+        .argName("N")
+        .build());
+    options.addOption(Option.builder("o")
+        .longOpt("output")
+        .desc("write to FILE instead of stdout")
+        .hasArg()
+        .argName("FILE")
+        .build());
+    options.addOption(Option.builder()
+        .longOpt("seed")
+        .desc("random seed, default 1")
+        .hasArg()
+        .argName("LONG")
+        .build());
+    options.addOption(Option.builder()
+        .longOpt("cardinality")
+        .desc("number of distinct items: default " + DEFAULT_ITEMS + " for zipf and weighted, "
+            + "2^63 for ids")
+        .hasArg()
+        .argName("N")
+        .build());
+    options.addOption(Option.builder()
+        .longOpt("exponent")
+        .desc("Zipf exponent, default 1.1")
+        .hasArg()
+        .argName("DOUBLE")
+        .build());
+    options.addOption(Option.builder()
+        .longOpt("mu")
+        .desc("mean of the log of the lognormal values and weights, default 3")
+        .hasArg()
+        .argName("DOUBLE")
+        .build());
+    options.addOption(Option.builder()
+        .longOpt("sigma")
+        .desc("standard deviation of the log of the lognormal values and weights, default 1")
+        .hasArg()
+        .argName("DOUBLE")
+        .build());
+    options.addOption(Option.builder("threads")
+        .longOpt("threads")
+        .desc("generate with N threads, default the number of processors")
+        .hasArg()
+        .argName("N")
+        .build());
+    options.addOption(Option.builder("help")
+        .desc("usage/help")
+        .build());
+  }
+
+  void showHelp() {
+    final HelpFormatter helpf = new HelpFormatter();
+    helpf.setOptionComparator(null);
+    helpf.printHelp("ds gen zipf|ids|lognormal|weighted", options);
+  }
+
+  void runCommandLineUtil(final String[] args) {
+    final CommandLine cl;
+    try {
+      cl = new DefaultParser().parse(options, args);
+    } catch (final ParseException e) {
+      System.err.println("runCommandLineUtil Error: ");
+      throw new RuntimeException(e);
+    }
+    final List<String> dist = cl.getArgList(); //"gen" DIST
+    if (cl.hasOption("help") || (dist.size() != 2)) {
+      showHelp();
+      return;
+    }
+    final Workload workload = new Workload(Distribution.of(dist.get(1)),
+        Long.parseLong(cl.getOptionValue("seed", "1")),
+        cl.hasOption("cardinality") ? Long.parseLong(cl.getOptionValue("cardinality")) : 0,
+        Double.parseDouble(cl.getOptionValue("exponent", "1.1")),
+        Double.parseDouble(cl.getOptionValue("mu", "3")),
+        Double.parseDouble(cl.getOptionValue("sigma", "1")));
+    final long lines = cl.hasOption("n") ? Long.parseLong(cl.getOptionValue("n")) : DEFAULT_LINES;
+    final int threads = cl.hasOption("threads") ? Integer.parseInt(cl.getOptionValue("threads"))
+        : Runtime.getRuntime().availableProcessors();
+    try {
+      if (cl.hasOption("o")) {
+        try (OutputStream out = Files.newOutputStream(Paths.get(cl.getOptionValue("o")))) {
+          write(workload, lines, threads, out);
+        }
+      } else {
+        write(workload, lines, threads, System.out);
+      }
+    } catch (final IOException e) {
+      System.err.println("Generate Error: " + e.getMessage());
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Generates the given number of lines with the given number of threads and writes them in
+   * order to the given stream.
+   * @param workload what to generate
+   * @param lines the number of lines
+   * @param threads the number of generating threads
+   * @param out the output, which is flushed but not closed
+   * @throws IOException if writing fails
+   */
+  static void write(final Workload workload, final long lines, final int threads,
+      final OutputStream out) throws IOException {
+    final long chunks = (lines + CHUNK_LINES - 1) / CHUNK_LINES;
+    final ExecutorService pool = Executors.newFixedThreadPool(threads);
+    final Deque<Future<LineBuffer>> pending = new ArrayDeque<>();
+    try {
+      long chunk = 0;
+      while ((chunk < chunks) || !pending.isEmpty()) {
+        while ((chunk < chunks) && (pending.size() < (2 * threads))) { //bounds the buffered chunks
+          final long c = chunk++;
+          final int n = (int) Math.min(CHUNK_LINES, lines - (c * CHUNK_LINES));
+          pending.add(pool.submit(() -> workload.chunk(c, n)));
+        }
+        pending.poll().get().writeTo(out);
+      }
+    } catch (final InterruptedException | ExecutionException e) {
+      throw new RuntimeException(e);
+    } finally {
+      pool.shutdownNow();
+    }
+    out.flush();
+  }
+
+  /**
+   * A distribution and its parameters.
+   */
+  static final class Workload {
+    private final Distribution distribution;
+    private final long seed;
+    private final long cardinality;
+    private final double mu;
+    private final double sigma;
+    private final ZipfSampler zipf;
+
+    /**
+     * @param distribution the distribution of the lines
+     * @param seed the random seed
+     * @param cardinality the number of distinct items, or 0 for the default
+     * @param exponent the Zipf exponent
+     * @param mu the mean of the log of lognormal values
+     * @param sigma the standard deviation of the log of lognormal values
+     */
+    Workload(final Distribution distribution, final long seed, final long cardinality,
+        final double exponent, final double mu, final double sigma) {
+      if (cardinality < 0) {
+        throw new IllegalArgumentException("Cardinality must be positive: " + cardinality);
+      }
+      this.distribution = distribution;
+      this.seed = seed;
+      this.cardinality = cardinality;
+      this.mu = mu;
+      this.sigma = sigma;
+      final boolean zipfItems =
+          (distribution == Distribution.ZIPF) || (distribution == Distribution.WEIGHTED);
+      if (zipfItems && (cardinality > Integer.MAX_VALUE)) {
+        throw new IllegalArgumentException("Zipf cardinality must be at most "
+            + Integer.MAX_VALUE + ": " + cardinality);
+      }
+      zipf = zipfItems
+          ? new ZipfSampler((cardinality == 0) ? DEFAULT_ITEMS : (int) cardinality, exponent)
+          : null;
+    }
+
+    /**
+     * @param chunk the chunk number
+     * @param lines the number of lines in the chunk
+     * @return the lines of the chunk
+     */
+    LineBuffer chunk(final long chunk, final int lines) {
+      final SplittableRandom random = new SplittableRandom(mix(seed + mix(chunk)));
+      final LineBuffer buf = new LineBuffer(lines * 12);
+      for (int i = 0; i < lines; i++) {
+        switch (distribution) {
+          case ZIPF:
+            buf.appendLong(zipf.sample(random));
+            break;
+          case IDS:
+            buf.appendLong((cardinality == 0)
+                ? (random.nextLong() >>> 1) : random.nextLong(cardinality));
+            break;
+          case LOGNORMAL:
+            buf.appendFixed3(lognormal(random));
+            break;
+          default: //WEIGHTED
+            buf.appendLong(1 + (long) lognormal(random));
+            buf.append('\t');
+            buf.appendLong(zipf.sample(random));
+            break;
+        }
+        buf.append('\n');
+      }
+      return buf;
+    }
+
+    private double lognormal(final SplittableRandom random) {
+      final double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble())) //Box-Muller
+          * Math.cos(2 * Math.PI * random.nextDouble());
+      return Math.exp(mu + (sigma * gaussian));
+    }
+
+    private static long mix(final long z) { //the finalizer of MurmurHash3
+      long h = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+      h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+      return h ^ (h >>> 33);
+    }
+  }
+
+  /**
+   * Samples ranks 1..n with probability proportional to 1 / rank^exponent in constant expected
+   * time, by the rejection-inversion method of Hormann and Derflinger, "Rejection-inversion to
+   * generate variates from monotone discrete distributions" (1996).
+   */
+  static final class ZipfSampler {
+    private final int n;
+    private final double exponent;
+    private final double hIntegralX1;
+    private final double hIntegralN;
+    private final double s;
+
+    ZipfSampler(final int n, final double exponent) {
+      if ((n < 1) || !(exponent > 0)) {
+        throw new IllegalArgumentException("Zipf needs n >= 1 and exponent > 0: " + n + ", "
+            + exponent);
+      }
+      this.n = n;
+      this.exponent = exponent;
+      hIntegralX1 = hIntegral(1.5) - 1;
+      hIntegralN = hIntegral(n + 0.5);
+      s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    int sample(final SplittableRandom random) {
+      while (true) {
+        final double u = hIntegralN + (random.nextDouble() * (hIntegralX1 - hIntegralN));
+        final double x = hIntegralInverse(u);
+        final int k = (int) Math.max(1, Math.min(n, (long) (x + 0.5)));
+        if (((k - x) <= s) || (u >= (hIntegral(k + 0.5) - h(k)))) {
+          return k;
+        }
+      }
+    }
+
+    private double h(final double x) {
+      return Math.exp(-exponent * Math.log(x));
+    }
+
+    private double hIntegral(final double x) {
+      final double logX = Math.log(x);
+      return expm1Div((1 - exponent) * logX) * logX;
+    }
+
+    private double hIntegralInverse(final double x) {
+      final double t = Math.max(-1, x * (1 - exponent));
+      return Math.exp(log1pDiv(t) * x);
+    }
+
+    private static double log1pDiv(final double x) { //log(1 + x) / x
+      return (Math.abs(x) > 1e-8) ? (Math.log1p(x) / x)
+          : (1 - (x * ((1.0 / 2) - (x * ((1.0 / 3) - (x / 4))))));
+    }
+
+    private static double expm1Div(final double x) { //(exp(x) - 1) / x
+      return (Math.abs(x) > 1e-8) ? (Math.expm1(x) / x)
+          : (1 + ((x / 2) * (1 + ((x / 3) * (1 + (x / 4))))));
+    }
+  }
+
+  /**
+   * A growable byte array of ASCII lines, formatted without Strings.
+   */
+  static final class LineBuffer {
+    private byte[] bytes;
+    private int size;
+
+    LineBuffer(final int capacity) {
+      bytes = new byte[Math.max(capacity, 32)];
+    }
+
+    void append(final char c) {
+      ensure(1);
+      bytes[size++] = (byte) c;
+    }
+
+    /**
+     * @param v a non-negative long
+     */
+    void appendLong(final long v) {
+      ensure(20);
+      int end = size;
+      long rest = v;
+      do {
+        bytes[end++] = (byte) ('0' + (rest % 10));
+        rest /= 10;
+      } while (rest > 0);
+      for (int i = size, j = end - 1; i < j; i++, j--) { //the digits were written in reverse
+        final byte b = bytes[i];
+        bytes[i] = bytes[j];
+        bytes[j] = b;
+      }
+      size = end;
+    }
+
+    /**
+     * @param v a non-negative double, written rounded to three decimals
+     */
+    void appendFixed3(final double v) {
+      final long thousandths = Math.round(v * 1000);
+      appendLong(thousandths / 1000);
+      ensure(4);
+      final int frac = (int) (thousandths % 1000);
+      bytes[size++] = '.';
+      bytes[size++] = (byte) ('0' + (frac / 100));
+      bytes[size++] = (byte) ('0' + ((frac / 10) % 10));
+      bytes[size++] = (byte) ('0' + (frac % 10));
+    }
+
+    void writeTo(final OutputStream out) throws IOException {
+      out.write(bytes, 0, size);
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(bytes, size);
+    }
+
+    private void ensure(final int more) {
+      if ((size + more) > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + more));
+      }
+    }
+  }
+}
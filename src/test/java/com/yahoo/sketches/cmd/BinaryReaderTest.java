@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018, Yahoo! Inc. Licensed under the terms of the
+ * Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class BinaryReaderTest {
+
+  @Test
+  public void checkFormats() throws IOException {
+    final ByteBuffer f64 = littleEndian(24).putDouble(1.5).putDouble(-2).putDouble(1e300);
+    assertEquals(readStream(f64.array(), 10, BinaryReader.Format.F64LE).toArray(),
+        new Double[] {1.5, -2.0, 1e300});
+    final ByteBuffer i64 = littleEndian(16).putLong(Long.MAX_VALUE).putLong(-7);
+    assertEquals(readStream(i64.array(), 8, BinaryReader.Format.I64LE).toArray(),
+        new Double[] {(double) Long.MAX_VALUE, -7.0});
+    final ByteBuffer f32 = littleEndian(12).putFloat(0.25f).putFloat(3).putFloat(-1);
+    assertEquals(readStream(f32.array(), 5, BinaryReader.Format.F32LE).toArray(),
+        new Double[] {0.25, 3.0, -1.0});
+    assertEquals(readStream(new byte[0], 8, BinaryReader.Format.F64LE).size(), 0);
+    assertEquals(BinaryReader.Format.of("I64LE"), BinaryReader.Format.I64LE);
+  }
+
+  @Test
+  public void checkLongValue() throws IOException {
+    final ByteBuffer f64 = littleEndian(16).putDouble(42).putDouble(0.5);
+    try (BinaryReader br = BinaryReader.of(Channels.newChannel(
+        new ByteArrayInputStream(f64.array())), 64, BinaryReader.Format.F64LE)) {
+      br.next();
+      assertEquals(br.longValue(), 42L);
+      br.next();
+      try {
+        br.longValue();
+        fail();
+      } catch (final NumberFormatException e) {
+        //expected
+      }
+    }
+  }
+
+  @Test
+  public void checkTrailingBytes() throws IOException {
+    try {
+      readStream(new byte[12], 64, BinaryReader.Format.F64LE);
+      fail();
+    } catch (final IOException e) {
+      //expected
+    }
+  }
+
+  @Test
+  public void checkSplitValues() throws IOException {
+    final ByteBuffer buf = littleEndian(8 * 1001);
+    for (int i = 0; i < 1001; i++) {
+      buf.putLong(i);
+    }
+    final File file = File.createTempFile("binaryReader", ".bin");
+    file.deleteOnExit();
+    Files.write(file.toPath(), buf.array());
+    try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final long[] splits = BinaryReader.splitValues(fc.size(), BinaryReader.Format.I64LE, 7);
+      assertEquals(splits.length, 8);
+      assertEquals(splits[7], fc.size());
+      long expected = 0;
+      for (int i = 0; i < (splits.length - 1); i++) {
+        assertEquals(splits[i] % 8, 0);
+        try (BinaryReader br =
+            BinaryReader.open(fc, splits[i], splits[i + 1], BinaryReader.Format.I64LE)) {
+          while (br.next()) {
+            assertEquals(br.longValue(), expected++);
+          }
+        }
+      }
+      assertEquals(expected, 1001);
+      assertEquals(BinaryReader.splitValues(16, BinaryReader.Format.F64LE, 8).length - 1, 2);
+    } finally {
+      Files.delete(file.toPath());
+    }
+  }
+
+  private static ByteBuffer littleEndian(final int bytes) {
+    return ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static List<Double> readStream(final byte[] bytes, final int bufferBytes,
+      final BinaryReader.Format format) throws IOException {
+    final List<Double> values = new ArrayList<>();
+    try (BinaryReader br = BinaryReader.of(
+        Channels.newChannel(new ByteArrayInputStream(bytes)), bufferBytes, format)) {
+      while (br.next()) {
+        values.add(br.doubleValue());
+      }
+    }
+    return values;
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2018, Yahoo! Inc. Licensed under the terms of the
+ * Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.yahoo.memory.Memory;
+
+public class BundleTest {
+  private Path dir;
+  private Path path;
+
+  @BeforeMethod
+  public void createDir() throws IOException {
+    dir = Files.createTempDirectory("bundle");
+    path = dir.resolve("test.bundle");
+  }
+
+  @AfterMethod
+  public void deleteDir() throws IOException {
+    Files.deleteIfExists(path);
+    Files.deleteIfExists(dir.resolve("test.bundle.tmp"));
+    Files.delete(dir);
+  }
+
+  @Test
+  public void checkRoundTrip() throws IOException {
+    //added out of order, one of them large enough to be memory mapped
+    write("hll", "-lgk 12", "b", "a", "é", "c", "big");
+    try (Bundle bundle = Bundle.open(path)) {
+      assertEquals(bundle.type, "hll");
+      assertEquals(bundle.params, "-lgk 12");
+      assertEquals(keys(bundle, bundle.select(null)), "[a, b, big, c, é]"); //unsigned bytes
+      for (int i = 0; i < bundle.size(); i++) {
+        final String key = new String(bundle.key(i), UTF_8);
+        final byte[] expected = sketch(key);
+        assertEquals(bundle.length(i), expected.length);
+        final Memory mem = bundle.sketch(i);
+        final byte[] bytes = new byte[(int) mem.getCapacity()];
+        mem.getByteArray(0, bytes, 0, bytes.length);
+        assertEquals(bytes, expected);
+      }
+    }
+  }
+
+  @Test
+  public void checkSelect() throws IOException {
+    write("hll", "", "2018-06-01", "2018-06-02", "2018-06-03", "2018-06-10", "ca", "us");
+    try (Bundle bundle = Bundle.open(path)) {
+      assertEquals(keys(bundle, bundle.select("us")), "[us]");
+      assertEquals(keys(bundle, bundle.select("uk")), "[]");
+      assertEquals(keys(bundle, bundle.select("us,ca,us")), "[ca, us]");
+      assertEquals(keys(bundle, bundle.select("2018-06-02..2018-06-03")),
+          "[2018-06-02, 2018-06-03]");
+      //the bounds need not be keys, and are inclusive when they are
+      assertEquals(keys(bundle, bundle.select("2018-06-015..2018-06-2")),
+          "[2018-06-02, 2018-06-03, 2018-06-10]");
+      assertEquals(keys(bundle, bundle.select("..2018-06-01")), "[2018-06-01]");
+      assertEquals(keys(bundle, bundle.select("ca..")), "[ca, us]");
+      assertEquals(keys(bundle, bundle.select("..")).split(",").length, 6);
+      assertEquals(keys(bundle, bundle.select("us..ca")), "[]");
+      assertEquals(keys(bundle, bundle.select("2018-06-03..2018-06-03,2018-06-01..2018-06-02")),
+          "[2018-06-01, 2018-06-02, 2018-06-03]");
+    }
+  }
+
+  @Test
+  public void checkReplace() throws IOException {
+    write("theta", "-k 1024", "a", "b", "c");
+    try (Bundle.Writer writer = new Bundle.Writer(path, "theta", "-k 1024")) {
+      writer.add("b".getBytes(UTF_8), new byte[] {42});
+      writer.add("d".getBytes(UTF_8), sketch("d"));
+      writer.commit();
+    }
+    try (Bundle bundle = Bundle.open(path)) {
+      assertEquals(keys(bundle, bundle.select(null)), "[a, b, c, d]");
+      assertEquals(bundle.length(1), 1); //b replaced
+      assertEquals(bundle.length(2), sketch("c").length); //c kept
+    }
+    //a writer that is not committed leaves the bundle as it was
+    final byte[] before = Files.readAllBytes(path);
+    try (Bundle.Writer writer = new Bundle.Writer(path, "theta", "-k 1024")) {
+      writer.add("a".getBytes(UTF_8), new byte[] {1, 2, 3});
+    }
+    assertEquals(Files.readAllBytes(path), before);
+    assertFalse(Files.exists(dir.resolve("test.bundle.tmp")));
+  }
+
+  @Test
+  public void checkMismatchOnCommit() throws IOException {
+    write("theta", "-k 1024", "a");
+    for (String[] typeParams : new String[][] {{"hll", "-k 1024"}, {"theta", "-k 4096"},
+        {"theta", ""}}) {
+      try (Bundle.Writer writer = new Bundle.Writer(path, typeParams[0], typeParams[1])) {
+        writer.add("b".getBytes(UTF_8), sketch("b"));
+        writer.commit();
+        fail(Arrays.toString(typeParams));
+      } catch (final IllegalArgumentException e) {
+        //expected
+      }
+    }
+    try (Bundle bundle = Bundle.open(path)) {
+      assertEquals(keys(bundle, bundle.select(null)), "[a]");
+    }
+  }
+
+  @Test
+  public void checkMismatchOnRead() throws IOException {
+    final Path data = dir.resolve("data.txt");
+    Files.write(data, "1\n2\n3\n".getBytes(UTF_8));
+    try {
+      final String bundle = Bundle.PREFIX + path;
+      SketchCommandLineParser.main(new String[] {"theta", "-k", "1024", "-d", data.toString(),
+          "-o", bundle, "--key", "a"});
+      SketchCommandLineParser.main(new String[] {"theta", "-k", "1024", "-s", bundle});
+      SketchCommandLineParser.main(new String[] {"theta", "-s", bundle}); //no params given
+      for (String[] args : new String[][] {{"theta", "-k", "4096", "-s", bundle},
+          {"hll", "-s", bundle}}) {
+        try {
+          SketchCommandLineParser.main(args);
+          fail(Arrays.toString(args));
+        } catch (final RuntimeException e) {
+          //expected
+        }
+      }
+    } finally {
+      Files.delete(data);
+    }
+  }
+
+  /**
+   * Writes a new bundle of the given keys, each with the sketch of {@link #sketch(String)}.
+   */
+  private void write(final String type, final String params, final String... keys)
+      throws IOException {
+    try (Bundle.Writer writer = new Bundle.Writer(path, type, params)) {
+      for (String key : keys) {
+        writer.add(key.getBytes(UTF_8), sketch(key));
+      }
+      writer.commit();
+    }
+  }
+
+  /**
+   * @return distinct stand-in sketch bytes for the key, of at least MAP_MIN_BYTES for "big"
+   */
+  private static byte[] sketch(final String key) {
+    final int length = key.equals("big") ? SketchCommandLineParser.MAP_MIN_BYTES + 1
+        : key.length() + 8;
+    final byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) (key.hashCode() + i);
+    }
+    return bytes;
+  }
+
+  private static String keys(final Bundle bundle, final int[] entries) {
+    final List<String> keys = new ArrayList<>();
+    for (int entry : entries) {
+      keys.add(new String(bundle.key(entry), UTF_8));
+    }
+    return keys.toString();
+  }
+}
@@ -6,17 +6,36 @@
 package com.yahoo.sketches.cmd;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.Test;
 
+import com.yahoo.memory.Memory;
+import com.yahoo.sketches.hll.HllSketch;
+import com.yahoo.sketches.theta.SetOperation;
+import com.yahoo.sketches.theta.Union;
+import com.yahoo.sketches.theta.UpdateSketch;
+
 /**
  * @author Lee Rhodes
  */
@@ -30,6 +49,13 @@ public class CommandLineTest {
   String freqQueryFileName = "freqQuery.txt";
   String serFileName1 = "ser1.bin";
   String serFileName2 = "ser2.bin";
+  String perFileDirName = "perFileSketches";
+  String csvFileName = "data.csv";
+  String binFileName = "data.f64";
+  String groupFileName = "groups.bin";
+  String directFileName = "direct.bin";
+  String bundleFileName = "sketches.bundle";
+  String spendFileName = "spend.txt";
 
   @AfterClass
   public void deleteFiles() {
@@ -41,6 +67,15 @@ public class CommandLineTest {
     deleteFile(freqQueryFileName);
     deleteFile(serFileName1);
     deleteFile(serFileName2);
+    deleteFile(perFileDirName + "/" + dataFileName1 + ".bin");
+    deleteFile(perFileDirName + "/" + dataFileName2 + ".bin");
+    deleteFile(perFileDirName);
+    deleteFile(csvFileName);
+    deleteFile(binFileName);
+    deleteFile(groupFileName);
+    deleteFile(directFileName);
+    deleteFile(bundleFileName);
+    deleteFile(spendFileName);
   }
 
   @Test
@@ -58,8 +93,12 @@ public class CommandLineTest {
     println("");
     SketchCommandLineParser.main(new String[] {"theta", "-help"});
     println("");
+    SketchCommandLineParser.main(new String[] {"tuple", "-help"});
+    println("");
     SketchCommandLineParser.main(new String[] {"vsamp", "-help"});
     println("");
+    SketchCommandLineParser.main(new String[] {"multi", "-help"});
+    println("");
     SketchCommandLineParser.main(new String[] { "-help" });
     println("");
     SketchCommandLineParser.main(new String[] { "help" });
@@ -94,21 +133,41 @@ public class CommandLineTest {
     callMain("theta -k 4096 -d " + dataFileName1 + " -o " + serFileName1);
 
 
+    println("\nUpdating Theta Sketch 1 with 4 threads:");
+    callMain("theta -k 4096 -b --threads 4 -d " + dataFileName1);
+
     println("\nUpdating Theta Sketch 2:");
     callMain("theta -k 4096 -d " + dataFileName2 + " -o " + serFileName2);
 
     println("\nMerge Theta Sketches 1 and 2:");
     callMain("theta -k 4096 -s " + serFileName1 + " " + serFileName2);
 
+    println("\nMerge Theta Sketches matching a glob pattern:");
+    callMain("theta -k 4096 -s ser?.bin");
+
     println("\nIntersect Theta Sketches 1 and 2:");
     callMain("theta -k 4096 -i -s " + serFileName1 + " " + serFileName2);
 
     println("\nTheta Sketch 1 minus Theta Sketch 2 and Summarize:");
     callMain("theta -k 4096 -p -m -s " + serFileName1 + " " + serFileName2);
 
+    println("\nEvaluating set expressions over named Theta Sketches:");
+    callMain("theta -k 4096 -b -s ser?.bin --expr (ser1|ser2)&ser1-ser2");
+    callMain("theta -k 4096 -d " + dataFileName2 + " -s ser?.bin --expr input&ser1∩(ser2∪ser1)");
+
     //-d and -s together
     println("\nUpdating from -d and Merging with -s");
     callMain("theta -k 4096 -p -d " + dataFileName2 + " -s " + serFileName1);
+
+    println("\nUpdating a direct Theta Sketch in place from two runs, then reading it with -s");
+    deleteFile(directFileName);
+    callMain("theta -k 4096 --direct -d " + dataFileName1 + " -o " + directFileName);
+    callMain("theta -k 4096 --direct -b -d " + dataFileName2 + " -o " + directFileName);
+    callMain("theta -k 4096 -s " + directFileName);
+
+    println("\nOverlap of every pair of Theta Sketches, one of them unordered:");
+    callMain("theta -k 4096 -b -threads 2 --overlap-matrix -s " + serFileName1 + " " + serFileName2
+        + " " + directFileName);
   }
 
   @Test
@@ -130,12 +189,290 @@ public class CommandLineTest {
     println("\nUpdating HLL Sketch 2:");
     callMain("hll -lgk 12 -d " + dataFileName2 + " -o " + serFileName2);
 
+    println("\nUpdating HLL Sketch 1 with 4 threads:");
+    callMain("hll -lgk 12 -threads 4 -d " + dataFileName1);
+
     println("\nMerge HLL Sketch 1 and 2 and Summarize:");
     callMain("hll -lgk 12 -p -s " + serFileName1 + " " + serFileName2);
 
     //-d and -s together
     println("\nUpdating from -d and Merging with -s");
     callMain("hll -lgk 12 -p -d " + dataFileName2 + " -s " + serFileName1);
+
+    //many -d files
+    println("\nUpdating from two -d files");
+    callMain("hll -lgk 12 -d " + dataFileName1 + " " + dataFileName2);
+
+    println("\nUpdating from a -d glob pattern, saving a sketch per file");
+    callMain("hll -lgk 12 -d data?.txt --per-file-output " + perFileDirName);
+
+    println("\nMerge the per-file HLL sketches");
+    callMain("hll -lgk 12 -s " + perFileDirName + "/" + dataFileName1 + ".bin "
+        + perFileDirName + "/" + dataFileName2 + ".bin");
+
+    println("\nMerge the per-file HLL sketches of a directory on 2 threads");
+    callMain("hll -lgk 12 -threads 2 -s " + perFileDirName);
+
+    println("\nUpdating a direct HLL Sketch in place from two runs, then reading it with -s");
+    deleteFile(directFileName);
+    callMain("hll -lgk 12 --direct -d " + dataFileName1 + " -o " + directFileName);
+    callMain("hll -lgk 12 --direct -d " + dataFileName2 + " -o " + directFileName);
+    callMain("hll -lgk 12 -s " + directFileName);
+
+    println("\nUpdating HLL Sketch 1 with stats and progress");
+    callMain("hll -lgk 12 -threads 2 --stats --progress -d " + dataFileName1 + " -o "
+        + serFileName1);
+
+    println("\nMerge HLL Sketch 1 and 2 with json stats");
+    callMain("hll -lgk 12 --stats json -s " + serFileName1 + " " + serFileName2);
+  }
+
+  @Test
+  public void checkStdIn() throws IOException {
+    println("\nCHECK STDIN");
+    deleteFile(serFileName1);
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      sb.append(i).append(LS);
+    }
+    callMain("hll -lgk 12 -o " + serFileName1, sb.toString());
+    final HllSketch sketch =
+        HllSketch.heapify(Memory.wrap(Files.readAllBytes(Paths.get(serFileName1))));
+    assertEquals(sketch.getEstimate(), 20000, 20000 * 0.05);
+
+    final String deciles = callMain("quant -k 256", sb.toString());
+    assertTrue(deciles.contains("0.0\t0.0" + LS), deciles);
+    assertTrue(deciles.contains("1.0\t19999.0" + LS), deciles);
+  }
+
+  @Test
+  public void checkDirect() throws IOException {
+    println("\nCHECK DIRECT");
+    final Path data1 = Files.createTempFile("direct", ".txt");
+    final Path data2 = Files.createTempFile("direct", ".txt");
+    final Path ser1 = Files.createTempFile("direct", ".bin");
+    final Path ser2 = Files.createTempFile("direct", ".bin");
+    final Path direct = Files.createTempFile("direct", ".bin");
+    try {
+      Files.write(data1, lines(0, 6000).getBytes(UTF_8));
+      Files.write(data2, lines(4500, 6000).getBytes(UTF_8)); //overlap is 1500
+      callMain("theta -k 16384 -d " + data1 + " -o " + ser1);
+      callMain("theta -k 16384 -d " + data2 + " -o " + ser2);
+      final String union = lastLine(callMain("theta -k 16384 -s " + ser1 + " " + ser2, ""));
+      assertEquals(union, "10500");
+      Files.delete(direct);
+      callMain("theta -k 16384 --direct -d " + data1 + " -o " + direct);
+      assertEquals(lastLine(callMain("theta -k 16384 --direct -d " + data2 + " -o " + direct, "")),
+          union);
+      assertEquals(lastLine(callMain("theta -k 16384 -s " + direct, "")), union);
+
+      //a failed run does not leave a new file behind, nor delete an existing one
+      Files.delete(direct);
+      try {
+        callMain("hll --direct -d " + data1 + " missing.txt -o " + direct);
+        fail();
+      } catch (final RuntimeException e) {
+        //expected
+      }
+      assertTrue(!Files.exists(direct));
+      callMain("hll --direct -d " + data1 + " -o " + direct);
+      try {
+        callMain("hll --direct -d missing.txt -o " + direct);
+        fail();
+      } catch (final RuntimeException e) {
+        //expected
+      }
+      assertEquals(hllEstimate(callMain("hll -s " + direct, "")), 6000, 6000 * 0.05);
+    } finally {
+      Files.deleteIfExists(data1);
+      Files.deleteIfExists(data2);
+      Files.deleteIfExists(ser1);
+      Files.deleteIfExists(ser2);
+      Files.deleteIfExists(direct);
+    }
+  }
+
+  @Test
+  public void checkWindowLines() {
+    println("\nCHECK WINDOW LINES");
+    final String out = callMain("hll -lgk 12 --window-lines 4000", lines(0, 10000));
+    final String[] windows = out.split("Window ");
+    assertEquals(windows.length, 4, out);
+    assertTrue(windows[1].startsWith("1: 4000 lines,"), out);
+    assertTrue(windows[2].startsWith("2: 4000 lines,"), out);
+    assertTrue(windows[3].startsWith("3: 2000 lines,"), out); //the rest at EOF
+    assertEquals(hllEstimate(windows[1]), 4000, 4000 * 0.05);
+    assertEquals(hllEstimate(windows[3]), 2000, 2000 * 0.05);
+
+    final String slid = callMain("hll -lgk 12 --window-lines 4000 --window-slots 2",
+        lines(0, 10000));
+    assertTrue(slid.contains("Window 3: 2000 lines, 6000 in the last 2 windows"), slid);
+  }
+
+  @Test
+  public void checkWindowSeconds() throws Exception {
+    println("\nCHECK WINDOW SECONDS");
+    final PipedOutputStream pipe = new PipedOutputStream();
+    final PipedInputStream stdIn = new PipedInputStream(pipe);
+    final Thread writer = new Thread(() -> {
+      try {
+        pipe.write(lines(0, 100).getBytes(UTF_8));
+        pipe.flush();
+        Thread.sleep(1000); //closed by the timer while stdin is idle
+        pipe.write(lines(100, 50).getBytes(UTF_8));
+        pipe.close();
+      } catch (IOException | InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    writer.start();
+    final String out = callMain("hll -lgk 12 --window-seconds 0.2", stdIn);
+    writer.join();
+    final String[] windows = out.split("Window ");
+    assertTrue(windows.length >= 3, out);
+    long total = 0;
+    for (int i = 1; i < windows.length; i++) {
+      final long lines = Long.parseLong(windows[i].substring(windows[i].indexOf(' ') + 1,
+          windows[i].indexOf(" lines")));
+      assertTrue(lines > 0, out); //windows without lines are skipped
+      total += lines;
+    }
+    assertEquals(total, 150, out);
+  }
+
+  @Test
+  public void checkWindowTimerFailure() throws Exception {
+    println("\nCHECK WINDOW TIMER FAILURE");
+    final PipedOutputStream pipe = new PipedOutputStream();
+    final PipedInputStream stdIn = new PipedInputStream(pipe);
+    final Thread writer = new Thread(() -> {
+      try {
+        for (int i = 0; i < 3; i++) {
+          pipe.write(lines(i * 10, 10).getBytes(UTF_8));
+          pipe.flush();
+          Thread.sleep(600);
+        }
+        pipe.close();
+      } catch (IOException | InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    writer.start();
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final PrintStream out = System.out;
+    try {
+      System.setOut(new PrintStream(bytes, true, "UTF-8"));
+      callMain("hll -lgk 12 --window-seconds 0.2 -o no-such-dir/window.bin", stdIn);
+      fail();
+    } catch (RuntimeException e) {
+      //expected: the "-o" file of every window fails
+    } finally {
+      System.setOut(out);
+    }
+    writer.join();
+    final String output = new String(bytes.toByteArray(), UTF_8);
+    assertTrue(output.contains("Window 3: "), output); //later windows still closed on time
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void checkZeroWindowSeconds() {
+    callMain("hll --window-seconds 0", "");
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void checkZeroWindowLines() {
+    callMain("hll --window-lines 0", "");
+  }
+
+  private static String lines(int start, int len) {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = start; i < (start + len); i++) {
+      sb.append(i).append(LS);
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void checkMappedSketchFiles() throws IOException {
+    println("\nCHECK MAPPED SKETCH FILES");
+    final Path data = Files.createTempFile("mapped", ".txt");
+    final Path saved = Files.createTempFile("mapped", ".bin");
+    try {
+      Files.write(data, lines(0, 10000).getBytes(UTF_8));
+      //theta wraps the mapped file, tuple heapifies from it
+      for (String type : new String[] {"theta", "tuple --mode max"}) {
+        final String built =
+            lastLine(callMain(type + " -k 16384 -d " + data + " -o " + saved, ""));
+        assertTrue(Files.size(saved) >= SketchCommandLineParser.MAP_MIN_BYTES);
+        assertEquals(lastLine(callMain(type + " -k 16384 -s " + saved, "")), built);
+        assertEquals(lastLine(callMain(type + " -k 16384 -threads 2 -s " + saved + " " + saved,
+            "")), built);
+      }
+    } finally {
+      Files.delete(data);
+      Files.delete(saved);
+    }
+  }
+
+  @Test
+  public void checkMergeTree() throws IOException {
+    println("\nCHECK MERGE TREE");
+    final int threads = 4;
+    final int files = (SketchCommandLineParser.MERGE_RANGE * threads) + 37; //several tasks each
+    final Path dir = Files.createTempDirectory("merge");
+    final Union union = SetOperation.builder().setNominalEntries(1024).buildUnion();
+    try {
+      for (int f = 0; f < files; f++) {
+        final UpdateSketch sketch = UpdateSketch.builder().setNominalEntries(1024).build();
+        for (int i = 0; i < 1000; i++) {
+          sketch.update((f * 500L) + i); //overlaps the next file by half
+        }
+        union.update(sketch);
+        Files.write(dir.resolve("sketch" + f + ".bin"), sketch.compact().toByteArray());
+      }
+      final String expected = String.format("%.0f", union.getResult().getEstimate());
+      assertEquals(lastLine(callMain("theta -k 1024 -threads " + threads + " -s " + dir, "")),
+          expected);
+      assertEquals(lastLine(callMain("theta -k 1024 -threads 1 -s " + dir, "")), expected);
+      //an HLL range is merged into one HLL union, whatever the order
+      final com.yahoo.sketches.hll.Union hllUnion = new com.yahoo.sketches.hll.Union(12);
+      for (int f = 0; f < files; f++) {
+        final HllSketch sketch = new HllSketch(12);
+        for (int i = 0; i < 1000; i++) {
+          sketch.update((f * 500L) + i);
+        }
+        hllUnion.update(sketch);
+        Files.write(dir.resolve("sketch" + f + ".bin"), sketch.toCompactByteArray());
+      }
+      final double hllExpected = hllUnion.getResult().getEstimate();
+      assertEquals(hllEstimate(callMain("hll -lgk 12 -threads " + threads + " -s " + dir, "")),
+          hllExpected, 0.5);
+      assertEquals(hllEstimate(callMain("hll -lgk 12 -threads 1 -s " + dir, "")), hllExpected,
+          0.5);
+    } finally {
+      for (File file : dir.toFile().listFiles()) {
+        Files.delete(file.toPath());
+      }
+      Files.delete(dir);
+    }
+  }
+
+  private static String lastLine(String output) {
+    final String[] lines = output.trim().split(LS);
+    return lines[lines.length - 1];
+  }
+
+  /**
+   * @return the estimate of the "lb est ub" line of HLL output
+   */
+  static double hllEstimate(String output) {
+    for (String line : output.split(LS)) {
+      final String[] tokens = line.trim().split(" ");
+      if ((tokens.length == 3) && tokens[1].matches("[0-9.]+")) {
+        return Double.parseDouble(tokens[1]);
+      }
+    }
+    throw new AssertionError("No HLL estimate in " + output);
   }
 
   //TEST QUANTILES
@@ -151,6 +488,14 @@ public class CommandLineTest {
     println("\nUpdating Quantiles Sketch 1, default deciles");
     callMain("quant -k 256 -d " + dataFileName1 + " -o " + serFileName1);
 
+    println("\nUpdating Quantiles Sketch 1 with 4 threads, default deciles");
+    callMain("quant -k 256 -threads 4 -d " + dataFileName1);
+
+    createBinaryFile(0, 20000, binFileName);
+    println("\nUpdating Quantiles Sketch from little-endian doubles with 4 threads, "
+        + "default deciles");
+    callMain("quant -k 256 --input-format f64le -threads 4 -d " + binFileName);
+
     println("\nUpdating Quantiles Sketch 2, default deciles");
     callMain("quant -k 256 -d " + dataFileName1 + " -o " + serFileName2);
 
@@ -173,6 +518,65 @@ public class CommandLineTest {
     createValuesFile(valuesFileName);
     println("\nQuery specific values to ranks from file from Sketch 1");
     callMain("quant -k 256 -s " + serFileName1 + " -V " + valuesFileName);
+
+    println("\nUpdating KLL Sketches 1 and 2, default deciles");
+    callMain("quant --kll -k 256 -d " + dataFileName1 + " -o " + serFileName1);
+    callMain("quant --kll -threads 4 --input-format f64le -d " + binFileName + " -o "
+        + serFileName2);
+
+    println("\nMerge KLL Sketch 1 and 2, summarize, histograms and queries");
+    callMain("quant --kll -p -s " + serFileName1 + " " + serFileName2
+        + " -b 30 -h -lh 1 -r 0 .5 1 -v 1 10000 -R " + ranksFileName + " -V " + valuesFileName);
+  }
+
+  @Test
+  public void checkKllSelection() {
+    assertKll(true, "quant", "--kll");
+    assertKll(true, "quant", "-k", "256", "--kl"); //abbreviated
+    assertKll(false, "quant", "-k", "256");
+    assertKll(false, "quant", "-d", "data.txt", "--", "--kll"); //an argument, not the option
+    //a command line that does not parse gets the classic parser, whose parse then fails
+    final SketchCommandLineParser<?> parser =
+        SketchCommandLineParser.newParser("quant", "--kll", "--bogus");
+    assertTrue(parser instanceof QuantilesCL);
+    try {
+      parser.parseCommandLine(new String[] {"quant", "--kll", "--bogus"});
+      fail();
+    } catch (final RuntimeException e) {
+      //expected
+    }
+  }
+
+  private static void assertKll(final boolean kll, final String... args) {
+    final SketchCommandLineParser<?> parser = SketchCommandLineParser.newParser(args);
+    assertEquals(parser instanceof KllCL, kll, Arrays.toString(args));
+    assertEquals(parser.type, kll ? "quant --kll" : "quant");
+  }
+
+  //TEST TUPLE
+  @Test
+  public void checkTuple() {
+    println("\nCHECK TUPLE");
+    println("Creating Data Files...");
+    deleteFile(serFileName1);
+    deleteFile(serFileName2);
+
+    createSpendFile(spendFileName);
+    createUniquesFile(1, 20000, dataFileName1);
+
+    println("\nUpdating Tuple Sketch of users and their total spend:");
+    callMain("tuple -k 4096 -b -d " + spendFileName + " -o " + serFileName1);
+
+    println("\nUpdating Tuple Sketch of users and their largest spend with 4 threads:");
+    callMain("tuple -k 4096 --mode max -threads 4 -d " + spendFileName);
+
+    println("\nUpdating Tuple Sketch from lines of keys only:");
+    callMain("tuple -k 4096 -d " + dataFileName1 + " -o " + serFileName2);
+
+    println("\nMerge, intersect and subtract Tuple Sketches 1 and 2:");
+    callMain("tuple -k 4096 -s " + serFileName1 + " " + serFileName2);
+    callMain("tuple -k 4096 -i -s " + serFileName1 + " " + serFileName2);
+    callMain("tuple -k 4096 -m -s " + serFileName1 + " " + serFileName2);
   }
 
   //TEST FREQUENT ITEMS
@@ -192,6 +596,9 @@ public class CommandLineTest {
     println("\nUpdating Freq Items Sketch 1, print error, N, top ids, top ids + freq.");
     callMain("freq -k 256 -w -e -n -t -T -d " + freqDataFileName + " -o " + serFileName1);
 
+    println("\nUpdating Freq Items Sketch 1 with 4 threads, top ids + freq.");
+    callMain("freq -k 256 -w -T -threads 4 -d " + freqDataFileName);
+
     println("\nUpdating Freq Items Sketch 2, default output.");
     callMain("freq -k 256 -w -d " + freqDataFileName + " -o " + serFileName2);
 
@@ -221,6 +628,13 @@ public class CommandLineTest {
     println("\nUpdating Reservior Sketch 1");
     callMain("rsamp -k 25  -d " + dataFileName1 + " -o " + serFileName1);
 
+    println("\nUpdating Reservior Sketch 1 with 4 threads and summary");
+    callMain("rsamp -k 25 -p -threads 4 -d " + dataFileName1);
+
+    createBinaryFile(0, 20000, binFileName);
+    println("\nUpdating Reservior Sketch from little-endian doubles");
+    callMain("rsamp -k 25 --input-format f64le -d " + binFileName);
+
     println("\nUpdating Reservior Sketch 2 with summary");
     callMain("rsamp -k 25 -p -d " + dataFileName1 + " -o " + serFileName2);
 
@@ -247,6 +661,9 @@ public class CommandLineTest {
     println("\nUpdating VarOpt Items Sketch 2: weighted samples, serialize sketch");
     callMain("vsamp -k 64 -w -d " + freqDataFileName + " -o " + serFileName2);
 
+    println("\nUpdating VarOpt Items Sketch 1 with 4 threads: weighted samples, summary");
+    callMain("vsamp -k 64 -w -p -threads 4 -d " + freqDataFileName);
+
     println("\nMerge VarOpt Sketch 1 and 2 with summary");
     callMain("vsamp -k 64 -p -s " + serFileName1 + " " + serFileName2);
 
@@ -254,6 +671,52 @@ public class CommandLineTest {
     callMain("vsamp -k 64 -w -T -x ^H -d " + freqDataFileName);
   }
 
+  //TEST MULTI
+  @Test
+  public void checkMulti() {
+    println("\nCHECK MULTI");
+    println("Creating Data Files...");
+    deleteFile(serFileName1);
+    deleteFile(serFileName2);
+
+    createUniquesFile(0, 20000, dataFileName1);
+
+    println("\nUpdating HLL, Theta, Quantiles and Freq Items Sketches in one pass");
+    callMain("multi -d " + dataFileName1 + " hll -lgk 12 -o " + serFileName1
+        + " theta -k 4096 -b quant -k 256 -r 0 .5 1 -o " + serFileName2 + " freq -k 256 -n");
+
+    println("\nMerge the HLL and Quantiles Sketches saved by multi");
+    callMain("hll -lgk 12 -s " + serFileName1);
+    callMain("quant -k 256 -s " + serFileName2);
+
+    println("\nUpdating a sketch per column of a CSV file in one pass");
+    createCsvFile(csvFileName);
+    callMain("multi -d " + csvFileName + " --delimiter , hll --field 1 quant --field 2 -h"
+        + " freq --field 3 -T");
+
+    println("\nUpdating a sketch of users per endpoint");
+    callMain("hll --group-by 3 --field 1 --delimiter , -d " + csvFileName
+        + " --group-output " + groupFileName);
+
+    println("\nSaving the sketch of each endpoint, and of each file, to a bundle");
+    callMain("hll --group-by 3 --field 1 --delimiter , -d " + csvFileName
+        + " -o bundle:" + bundleFileName);
+    callMain("hll -d data?.txt --per-file-output bundle:" + bundleFileName);
+    callMain("hll -d " + dataFileName1 + " -o bundle:" + bundleFileName + " --key all");
+    callMain("bundle " + bundleFileName);
+
+    println("\nMerging the sketches of a bundle selected by key");
+    callMain("hll -s bundle:" + bundleFileName + " --keys ../api/v1");
+    callMain("hll -s bundle:" + bundleFileName + " --keys " + dataFileName1 + "," + dataFileName2);
+
+    println("\nUpdating a sketch from the first column of a CSV file");
+    callMain("theta --field 1 --delimiter , -d " + csvFileName);
+
+    println("\nUpdating with 4 threads and merging with -s in a section");
+    callMain("multi -threads 4 -d " + dataFileName1 + " hll -lgk 12 -p -s " + serFileName1
+        + " rsamp -k 8");
+  }
+
   private static void createUniquesFile(int start, int len, String fileName) {
     File file = new File(fileName);
     if (file.exists()) { return; }
@@ -264,6 +727,39 @@ public class CommandLineTest {
     }
   }
 
+  private static void createBinaryFile(int start, int len, String fileName) {
+    final java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate(8 * len)
+        .order(java.nio.ByteOrder.LITTLE_ENDIAN);
+    for (int i = start; i < (start + len); i++) {
+      buf.putDouble(i);
+    }
+    try {
+      java.nio.file.Files.write(new File(fileName).toPath(), buf.array());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void createSpendFile(String fileName) {
+    File file = new File(fileName);
+    if (file.exists()) { return; }
+    try (PrintWriter out = getPrintWriter(file)) {
+      for (int i = 0; i < 100000; i++) { //user, spend
+        out.print((i % 30000) + "," + (i % 100) + ".5" + LS);
+      }
+    }
+  }
+
+  private static void createCsvFile(String fileName) {
+    File file = new File(fileName);
+    if (file.exists()) { return; }
+    try (PrintWriter out = getPrintWriter(file)) {
+      for (int i = 0; i < 10000; i++) { //user, latency, "endpoint"
+        out.print("u" + (i % 5000) + "," + (i % 100) + ",\"/api/v" + (i % 3) + ",x\"" + LS);
+      }
+    }
+  }
+
   private static void createRanksFile(String fileName) {
     File file = new File(fileName);
     if (file.exists()) { return; }
@@ -294,6 +790,7 @@ public class CommandLineTest {
       for (int i = 19976; i <= 20000; i++) { //Heavy items, weight first
         out.print(i + "\t" + "H" + i + LS);
       }
+      out.print("single" + LS); //one token is the item with weight 1
     }
   }
 
@@ -313,6 +810,40 @@ public class CommandLineTest {
     SketchCommandLineParser.main(cl);
   }
 
+  /**
+   * Runs ds with the given stdin, which is restored after.
+   * @param s the command line
+   * @param stdIn the input lines
+   * @return the output, which is also printed
+   */
+  static String callMain(String s, String stdIn) {
+    return callMain(s, new ByteArrayInputStream(stdIn.getBytes(UTF_8)));
+  }
+
+  /**
+   * Runs ds with the given stdin, which is restored after.
+   * @param s the command line
+   * @param stdIn the input
+   * @return the output, which is also printed, if the command fails too
+   */
+  static String callMain(String s, InputStream stdIn) {
+    final InputStream in = System.in;
+    final PrintStream out = System.out;
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    System.setIn(stdIn);
+    try {
+      System.setOut(new PrintStream(bytes, true, "UTF-8"));
+      callMain(s);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      System.setIn(in);
+      System.setOut(out);
+      print(new String(bytes.toByteArray(), UTF_8)); //also if the command fails
+    }
+    return new String(bytes.toByteArray(), UTF_8);
+  }
+
   private static void deleteFile(String fileName) {
     File file = new File(fileName);
     if (file.exists()) {
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018, Yahoo! Inc. Licensed under the terms of the
+ * Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class FieldSelectorTest {
+
+  @Test
+  public void checkColumns() throws IOException {
+    final String text = "a,b,c\n1,,3\n\"x,y\",\"q\"\"r\",z\nonly\n";
+    assertEquals(select(text, "1", ',').toArray(), new String[] {"a", "1", "x,y", "only"});
+    assertEquals(select(text, "2", ',').toArray(), new String[] {"b", "", "q\"\"r"});
+    assertEquals(select(text, "3", ',').toArray(), new String[] {"c", "3", "z"});
+    assertEquals(select("a\tb\n", "2", '\t').toArray(), new String[] {"b"});
+  }
+
+  @Test
+  public void checkJson() throws IOException {
+    final String text = "{\"user\": \"u1\", \"ms\": 12.5}\n"
+        + "{\"nested\": {\"user\": \"no\", \"a\": [1, \"}\"]}, \"user\":\"u\\\"2\", \"ms\":7}\n"
+        + "{\"ms\": null, \"user\": \"u3\"}\n"
+        + "{\"other\": 1}\n"
+        + "not json\n";
+    assertEquals(select(text, "user", ',').toArray(), new String[] {"u1", "u\\\"2", "u3"});
+    assertEquals(select(text, "ms", ',').toArray(), new String[] {"12.5", "7"});
+    assertEquals(select(text, "nested", ',').toArray(),
+        new String[] {"{\"user\": \"no\", \"a\": [1, \"}\"]}"});
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void checkNonAsciiDelimiter() {
+    new FieldLocator("2", '\u00A7'); //would match the second byte of any two-byte character
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void checkNonAsciiDelimiterOption() {
+    SketchCommandLineParser.main(new String[] {"hll", "--field", "2", "--delimiter", "\u00A7"});
+  }
+
+  private static List<String> select(final String text, final String field, final char delim)
+      throws IOException {
+    final List<String> fields = new ArrayList<>();
+    final LineUpdater<List<String>> recorder = new LineUpdater<List<String>>() {
+      @Override
+      public void update(final LineReader line) {
+        fields.add(line.toString());
+      }
+
+      @Override
+      public List<String> getResult() {
+        return fields;
+      }
+    };
+    final FieldSelector<List<String>> selector = new FieldSelector<>(recorder, field, delim);
+    try (LineReader lr = LineReader.of(
+        Channels.newChannel(new ByteArrayInputStream(text.getBytes(UTF_8))), 64)) {
+      while (lr.next()) {
+        final int len = lr.length();
+        selector.update(lr);
+        assertEquals(lr.length(), len); //line is restored
+      }
+    }
+    return selector.getResult();
+  }
+}
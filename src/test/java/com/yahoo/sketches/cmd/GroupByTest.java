@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018, Yahoo! Inc. Licensed under the terms of the
+ * Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.sketches.theta.Sketch;
+
+public class GroupByTest {
+
+  @Test
+  public void checkGroupsWithSpill() throws IOException {
+    final StringBuilder sb = new StringBuilder();
+    final int[] lines = new int[30];
+    for (int i = 0; i < 3000; i++) { //key k<j> has 100 lines of 10 * (j + 1) distinct items
+      final int j = i % 30;
+      sb.append("k").append(j).append('\t').append(lines[j]++ % (10 * (j + 1))).append('\n');
+    }
+    sb.append("no key field\n");
+    for (int maxGroups : new int[] {5, 13, 1000}) {
+      final ThetaCL parser = new ThetaCL();
+      parser.parseCommandLine(new String[] {"theta", "--field", "2"});
+      final List<String> keys = new ArrayList<>();
+      final List<Double> estimates = new ArrayList<>();
+      try (GroupBy<Sketch> groups = new GroupBy<>(parser, new FieldLocator("1", '\t'), maxGroups);
+          LineReader lr = LineReader.of(
+              Channels.newChannel(new ByteArrayInputStream(sb.toString().getBytes(UTF_8))), 64)) {
+        while (lr.next()) {
+          groups.update(lr);
+        }
+        groups.forEachGroup((key, sketch) -> {
+          keys.add(new String(key, UTF_8));
+          estimates.add(sketch.getEstimate());
+        });
+      }
+      assertEquals(keys.size(), 31); //one key is the whole line "no key field"
+      for (int i = 1; i < keys.size(); i++) {
+        assertEquals(Integer.signum(keys.get(i - 1).compareTo(keys.get(i))), -1);
+      }
+      for (int i = 0; i < 30; i++) {
+        final int k = keys.indexOf("k" + i);
+        assertEquals(estimates.get(k), Math.min(10.0 * (i + 1), 100)); //exact below k
+      }
+    }
+  }
+
+  @Test
+  public void checkMaxGroups() {
+    final ThetaCL parser = new ThetaCL();
+    parser.parseCommandLine(new String[] {"theta"});
+    for (int maxGroups : new int[] {1, GroupBy.MAX_GROUPS + 1, Integer.MAX_VALUE}) {
+      try {
+        new GroupBy<>(parser, new FieldLocator("1", '\t'), maxGroups).close();
+        fail("" + maxGroups);
+      } catch (final IllegalArgumentException | IOException e) {
+        //expected
+      }
+    }
+  }
+
+  @Test
+  public void checkIgnoredOptionsRejected() {
+    for (String options : new String[] {"-threads 2", "-o groups.bin"}) {
+      try {
+        SketchCommandLineParser.main(
+            ("hll --group-by 1 -d no-such-file.txt " + options).split(" "));
+        fail(options);
+      } catch (final IllegalArgumentException e) {
+        //expected
+      }
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018, Yahoo! Inc. Licensed under the terms of the
+ * Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class LineParserTest {
+
+  @Test
+  public void checkParseDouble() throws IOException {
+    final String[] inputs = {"0", "-0", "+1", "1.", ".5", "3.14159", "-2.5e-3", "1E22", "1e23",
+        "123456789012345678", "0.000000000000000000000001", "4.9e-324", "1.7976931348623157e308",
+        " 7", "8 ", "NaN", "-Infinity", "0x1p3", "2d"};
+    for (String s : inputs) {
+      assertEquals(parseDouble(s), Double.parseDouble(s), s);
+    }
+    final Random rand = new Random(1);
+    for (int i = 0; i < 100000; i++) {
+      final double d = rand.nextDouble() * Math.pow(10, rand.nextInt(40) - 20);
+      final String s = (i % 2) == 0 ? Double.toString(d) : String.format("%.6f", d);
+      assertEquals(parseDouble(s), Double.parseDouble(s), s);
+    }
+  }
+
+  @Test
+  public void checkParseLong() throws IOException {
+    final String[] inputs = {"0", "-1", "+42", "123456789012345678", "9223372036854775807",
+        "-9223372036854775808"};
+    for (String s : inputs) {
+      assertEquals(parseLong(s), Long.parseLong(s), s);
+    }
+  }
+
+  @Test
+  public void checkInvalidNumbers() throws IOException {
+    final String[] inputs = {"", "-", ".", "1e", "1.2.3", "abc", "9223372036854775808"};
+    for (String s : inputs) {
+      try {
+        parseLong(s);
+        fail(s);
+      } catch (final NumberFormatException e) {
+        //expected
+      }
+    }
+    for (int i = 0; i < 5; i++) {
+      try {
+        parseDouble(inputs[i]);
+        fail(inputs[i]);
+      } catch (final NumberFormatException e) {
+        //expected
+      }
+    }
+  }
+
+  @Test
+  public void checkSeparators() throws IOException {
+    try (LineReader lr = readerOf("12 ,\tabc def")) {
+      lr.next();
+      final int sep = LineParser.indexOfSeparator(lr, 0);
+      assertEquals(sep, 2);
+      final int itemStart = LineParser.skipSeparators(lr, sep);
+      assertEquals(lr.toString(itemStart, lr.length()), "abc def");
+      assertEquals(LineParser.parseLong(lr, 0, sep), 12L);
+    }
+    try (LineReader lr = readerOf("item")) {
+      lr.next();
+      assertEquals(LineParser.indexOfSeparator(lr, 0), 4);
+      assertEquals(LineParser.skipSeparators(lr, 4), 4);
+    }
+  }
+
+  private static double parseDouble(final String s) throws IOException {
+    try (LineReader lr = readerOf(s)) {
+      lr.next();
+      return LineParser.parseDouble(lr, 0, lr.length());
+    }
+  }
+
+  private static long parseLong(final String s) throws IOException {
+    try (LineReader lr = readerOf(s)) {
+      lr.next();
+      return LineParser.parseLong(lr, 0, lr.length());
+    }
+  }
+
+  private static LineReader readerOf(final String s) {
+    return LineReader.of(Channels.newChannel(new ByteArrayInputStream(s.getBytes(UTF_8))), 64);
+  }
+}
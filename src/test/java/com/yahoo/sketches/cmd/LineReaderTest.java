@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018, Yahoo! Inc. Licensed under the terms of the
+ * Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class LineReaderTest {
+
+  @Test
+  public void checkTerminators() throws IOException {
+    final String text = "a\nbb\r\nccc\rdddd\n\nlast";
+    final String[] expected = {"a", "bb", "ccc", "dddd", "", "last"};
+    assertEquals(readStream(text, 2).toArray(), expected); //forces buffer growth and refills
+    assertEquals(readStream(text, 1024).toArray(), expected);
+    assertEquals(readFile(text).toArray(), expected);
+  }
+
+  @Test
+  public void checkCrLfAcrossRefill() throws IOException {
+    final String text = "ab\r\ncd\r";
+    final String[] expected = {"ab", "cd"};
+    assertEquals(readStream(text, 3).toArray(), expected);
+    assertEquals(readFile(text).toArray(), expected);
+  }
+
+  @Test
+  public void checkEmptyInput() throws IOException {
+    assertEquals(readStream("", 16).size(), 0);
+    assertEquals(readFile("").size(), 0);
+  }
+
+  @Test
+  public void checkBytes() throws IOException {
+    final String text = "été\n42";
+    try (LineReader lr = LineReader.open(writeFile(text).getPath())) {
+      lr.next();
+      assertEquals(lr.toByteArray(), "été".getBytes(UTF_8));
+      lr.next();
+      assertEquals(lr.length(), 2);
+      assertEquals(lr.byteAt(1), (byte) '2');
+    }
+  }
+
+  @Test
+  public void checkSplitLines() throws IOException {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      sb.append(i).append((i % 3) == 0 ? "\r\n" : "\n");
+    }
+    final File file = writeFile(sb.toString());
+    try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final long[] splits = LineReader.splitLines(fc, 7);
+      assertEquals(splits.length, 8);
+      assertEquals(splits[0], 0);
+      assertEquals(splits[7], fc.size());
+      int expected = 0;
+      for (int i = 0; i < (splits.length - 1); i++) {
+        try (LineReader lr = LineReader.open(fc, splits[i], splits[i + 1])) {
+          for (String line : readAll(lr)) {
+            assertEquals(line, Integer.toString(expected++));
+          }
+        }
+      }
+      assertEquals(expected, 1000);
+      assertEquals(LineReader.splitLines(fc, 5000).length - 1, 1000); //at most one range per line
+    } finally {
+      Files.delete(file.toPath());
+    }
+  }
+
+  private static List<String> readStream(final String text, final int bufferBytes)
+      throws IOException {
+    try (LineReader lr = LineReader.of(
+        Channels.newChannel(new ByteArrayInputStream(text.getBytes(UTF_8))), bufferBytes)) {
+      return readAll(lr);
+    }
+  }
+
+  private static List<String> readFile(final String text) throws IOException {
+    final File file = writeFile(text);
+    try (LineReader lr = LineReader.open(file.getPath())) {
+      return readAll(lr);
+    } finally {
+      Files.delete(file.toPath());
+    }
+  }
+
+  private static List<String> readAll(final LineReader lr) throws IOException {
+    final List<String> lines = new ArrayList<>();
+    while (lr.next()) {
+      lines.add(lr.toString());
+    }
+    return lines;
+  }
+
+  private static File writeFile(final String text) throws IOException {
+    final File file = File.createTempFile("lineReader", ".txt");
+    file.deleteOnExit();
+    Files.write(file.toPath(), text.getBytes(UTF_8));
+    return file;
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018, Yahoo! Inc. Licensed under the terms of the
+ * Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.apache.commons.cli.Options;
+import org.testng.annotations.Test;
+
+import com.yahoo.memory.Memory;
+import com.yahoo.sketches.theta.Sketch;
+import com.yahoo.sketches.theta.Sketches;
+
+public class MultiCLTest {
+
+  @Test
+  public void checkNextSection() {
+    final Options multi = new MultiCL().options;
+    final Options theta = new ThetaCL().options;
+    final Options quant = new QuantilesCL().options;
+    final Options hll = new HllCL().options;
+    assertEquals(next(multi, "multi", "-d", "hll", "theta", "-k", "64"), 3); //a file named hll
+    assertEquals(next(multi, "multi", "-d", "a", "b", "theta"), 4);
+    assertEquals(next(multi, "multi", "--threads", "2", "-d", "a", "hll"), 5);
+    assertEquals(next(multi, "multi", "-d", "a"), 3);
+    assertEquals(next(theta, "theta", "-o", "hll", "-k", "64", "hll", "-lgk", "10"), 5);
+    assertEquals(next(theta, "theta", "--sketch-output-file=hll", "hll"), 2);
+    assertEquals(next(theta, "theta", "--sketch-out", "quant", "hll"), 3); //long option prefix
+    assertEquals(next(quant, "quant", "-r", "0", ".5", "1", "freq", "-T"), 5);
+    assertEquals(next(quant, "quant", "-v", "-1", "2e3", "-k", "64", "hll"), 6);
+    assertEquals(next(hll, "hll", "--stats", "theta"), 2); //optional value
+    assertEquals(next(hll, "hll", "--stats", "json", "theta"), 3);
+    assertEquals(next(hll, "hll", "-p", "-o"), 3); //missing value
+  }
+
+  private static int next(final Options options, final String... args) {
+    return MultiCL.nextSection(options, args, 1);
+  }
+
+  @Test
+  public void checkFilesNamedLikeSketchTypes() throws IOException {
+    final Path data = Paths.get("hll");
+    final Path saved = Paths.get("theta");
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      sb.append(i).append('\n');
+    }
+    Files.write(data, sb.toString().getBytes(UTF_8));
+    try {
+      SketchCommandLineParser.main(
+          new String[] {"multi", "-d", "hll", "theta", "-o", "theta", "hl"});
+      assertFalse(Files.exists(saved)); //stops at the unrecognized section, before any input
+      SketchCommandLineParser.main(
+          new String[] {"multi", "-d", "hll", "theta", "-o", "theta", "hll", "-lgk", "10"});
+      final Sketch sketch = Sketches.wrapSketch(Memory.wrap(Files.readAllBytes(saved)));
+      assertEquals(sketch.getEstimate(), 1000.0);
+    } finally {
+      Files.deleteIfExists(data);
+      Files.deleteIfExists(saved);
+    }
+  }
+}
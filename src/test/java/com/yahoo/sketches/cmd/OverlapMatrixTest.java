@@ -0,0 +1,154 @@
+/*
+ * Copyright 2018, Yahoo! Inc. Licensed under the terms of the
+ * Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.memory.Memory;
+import com.yahoo.memory.WritableMemory;
+import com.yahoo.sketches.theta.CompactSketch;
+import com.yahoo.sketches.theta.Intersection;
+import com.yahoo.sketches.theta.PairwiseSetOperations;
+import com.yahoo.sketches.theta.SetOperation;
+import com.yahoo.sketches.theta.Sketch;
+import com.yahoo.sketches.theta.UpdateSketch;
+
+public class OverlapMatrixTest {
+  private static final int UNION_K = 1 << 16; //more than any sketch here holds, so not trimmed
+
+  @Test
+  public void checkSameAsSetOperations() {
+    final List<String> names = new ArrayList<>();
+    final List<Sketch> sketches = new ArrayList<>();
+    //exact mode
+    add(names, sketches, "exact1", sketch(4096, 0, 1000).compact());
+    add(names, sketches, "exact2", sketch(4096, 500, 2000).compact());
+    //estimation mode, with different thetas
+    add(names, sketches, "est1", sketch(512, 0, 20000).compact());
+    add(names, sketches, "est2", sketch(1024, 10000, 40000).compact());
+    //empty
+    add(names, sketches, "empty", sketch(4096, 0, 0).compact());
+    //unordered, on the heap and off it
+    add(names, sketches, "unordered", sketch(4096, 1500, 3000));
+    final UpdateSketch direct = UpdateSketch.builder().setNominalEntries(1024)
+        .build(WritableMemory.allocate(Sketch.getMaxUpdateSketchBytes(1024)));
+    for (int i = 5000; i < 25000; i++) {
+      direct.update(i);
+    }
+    assertTrue(direct.isDirect());
+    add(names, sketches, "direct", direct);
+    //ordered, wrapped off the heap
+    final Sketch wrapped =
+        Sketch.wrap(Memory.wrap(sketch(2048, 15000, 30000).compact().toByteArray()));
+    assertTrue(wrapped.isDirect());
+    add(names, sketches, "wrapped", wrapped);
+
+    for (int threads : new int[] {1, 3}) {
+      final List<String> lines = new ArrayList<>();
+      new OverlapMatrix(names, sketches, true)
+          .write(threads, row -> lines.addAll(Arrays.asList(row.split("\\R"))));
+      assertEquals(lines.get(0), "a\tb\ta_estimate\tb_estimate"
+          + "\tintersection_lb\tintersection\tintersection_ub\tunion_lb\tunion\tunion_ub"
+          + "\tjaccard_lb\tjaccard\tjaccard_ub");
+      final int n = sketches.size();
+      assertEquals(lines.size(), 1 + ((n * (n - 1)) / 2));
+      int line = 1;
+      for (int i = 0; i < n; i++) {
+        for (int j = i + 1; j < n; j++) {
+          checkPair(lines.get(line++).split("\t"), names.get(i), sketches.get(i),
+              names.get(j), sketches.get(j));
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks a line of the matrix against the set operations of the pair.
+   */
+  private static void checkPair(final String[] columns, final String nameA, final Sketch a,
+      final String nameB, final Sketch b) {
+    final String pair = nameA + " " + nameB;
+    assertEquals(columns.length, 13, pair);
+    assertEquals(columns[0], nameA);
+    assertEquals(columns[1], nameB);
+    assertEquals(Long.parseLong(columns[2]), Math.round(a.getEstimate()), pair);
+    assertEquals(Long.parseLong(columns[3]), Math.round(b.getEstimate()), pair);
+
+    final CompactSketch orderedA = ordered(a);
+    final CompactSketch orderedB = ordered(b);
+    final CompactSketch intersection = PairwiseSetOperations.intersect(orderedA, orderedB);
+    final Intersection intersectionOp = SetOperation.builder().buildIntersection();
+    intersectionOp.update(a);
+    intersectionOp.update(b);
+    assertEquals(intersectionOp.getResult().getEstimate(), intersection.getEstimate(), pair);
+    final CompactSketch union = PairwiseSetOperations.union(orderedA, orderedB, UNION_K);
+
+    assertEquals(Long.parseLong(columns[5]), Math.round(intersection.getEstimate()), pair);
+    assertEquals(Long.parseLong(columns[8]), Math.round(union.getEstimate()), pair);
+    assertBounds(columns, 4, intersection, pair);
+    assertBounds(columns, 7, union, pair);
+    final int all = union.getRetainedEntries(true);
+    final double jaccard = (all > 0) ? (double) intersection.getRetainedEntries(true) / all : 0;
+    assertEquals(columns[11], String.format(Locale.ROOT, "%.4f", jaccard), pair);
+    assertTrue(Double.parseDouble(columns[10]) <= Double.parseDouble(columns[11]), pair);
+    assertTrue(Double.parseDouble(columns[11]) <= Double.parseDouble(columns[12]), pair);
+    assertFalse(Double.parseDouble(columns[12]) > 1.0, pair);
+  }
+
+  /**
+   * Checks the lower bound, estimate and upper bound columns from the given index.
+   */
+  private static void assertBounds(final String[] columns, final int index, final Sketch sketch,
+      final String pair) {
+    assertEquals(Long.parseLong(columns[index]), Math.round(sketch.getLowerBound(2)), pair);
+    assertEquals(Long.parseLong(columns[index + 2]), Math.round(sketch.getUpperBound(2)), pair);
+  }
+
+  @Test
+  public void checkNoPairs() {
+    for (int n : new int[] {0, 1}) {
+      final List<String> lines = new ArrayList<>();
+      new OverlapMatrix(Arrays.asList("a").subList(0, n),
+          Arrays.<Sketch>asList(sketch(4096, 0, 10)).subList(0, n), false)
+          .write(2, lines::add);
+      assertEquals(lines.toString(),
+          "[a\tb\ta_estimate\tb_estimate\tintersection\tunion\tjaccard]");
+    }
+  }
+
+  private static void add(final List<String> names, final List<Sketch> sketches,
+      final String name, final Sketch sketch) {
+    names.add(name);
+    sketches.add(sketch);
+  }
+
+  /**
+   * @return an update sketch of k nominal entries of the integers from start, inclusive, to
+   * end, exclusive
+   */
+  private static UpdateSketch sketch(final int k, final int start, final int end) {
+    final UpdateSketch sketch = UpdateSketch.builder().setNominalEntries(k).build();
+    for (int i = start; i < end; i++) {
+      sketch.update(i);
+    }
+    return sketch;
+  }
+
+  private static CompactSketch ordered(final Sketch sketch) {
+    final Intersection copy = SetOperation.builder().buildIntersection();
+    copy.update(sketch);
+    return copy.getResult(true, null);
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018, Yahoo! Inc. Licensed under the terms of the
+ * Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.memory.Memory;
+import com.yahoo.sketches.kll.KllFloatsSketch;
+import com.yahoo.sketches.quantiles.DoublesSketch;
+import com.yahoo.sketches.quantiles.UpdateDoublesSketch;
+
+public class QuantilesViewTest {
+
+  @Test
+  public void checkSameAsSketch() {
+    final Random rand = new Random(1);
+    for (int k : new int[] {16, 128}) {
+      for (int n : new int[] {0, 1, 7, 31, 32, 33, 1000, 12345, 100000}) {
+        final UpdateDoublesSketch sketch = DoublesSketch.builder().setK(k).build();
+        for (int i = 0; i < n; i++) {
+          sketch.update(Math.floor(rand.nextGaussian() * 100)); //with duplicates
+        }
+        check(sketch);
+        check(DoublesSketch.wrap(Memory.wrap(sketch.toByteArray(true)))); //compact
+        check(DoublesSketch.wrap(Memory.wrap(sketch.toByteArray()))); //direct
+      }
+    }
+  }
+
+  @Test
+  public void checkSameAsKllSketch() {
+    final Random rand = new Random(1);
+    for (int k : new int[] {8, 200}) {
+      for (int n : new int[] {0, 1, 7, 200, 201, 1000, 12345, 100000}) {
+        final KllFloatsSketch sketch = new KllFloatsSketch(k);
+        for (int i = 0; i < n; i++) {
+          sketch.update((float) (rand.nextGaussian() * 100)); //not whole, to check query rounding
+        }
+        check(sketch);
+        check(KllFloatsSketch.heapify(Memory.wrap(sketch.toByteArray())));
+      }
+    }
+  }
+
+  private static void check(final KllFloatsSketch sketch) {
+    final QuantilesView view = QuantilesView.of(sketch);
+    final String id = "n=" + sketch.getN();
+    assertEquals(view.getN(), sketch.getN(), id);
+    for (int i = 0; i <= 1000; i++) {
+      final double rank = i / 1000.0;
+      assertEquals(view.quantile(rank), (double) sketch.getQuantile(rank), id + " rank=" + rank);
+    }
+    for (int i = -4000; i <= 4000; i++) {
+      final double value = (i / 10.0) + 0.001;
+      assertEquals(view.rank(value), sketch.getRank((float) value), id + " value=" + value);
+    }
+  }
+
+  private static void check(final DoublesSketch sketch) {
+    final QuantilesView view = QuantilesView.of(sketch);
+    final String id = "k=" + sketch.getK() + " n=" + sketch.getN();
+    assertEquals(view.getN(), sketch.getN(), id);
+    for (int i = 0; i <= 1000; i++) {
+      final double rank = i / 1000.0;
+      assertEquals(view.quantile(rank), sketch.getQuantile(rank), id + " rank=" + rank);
+    }
+    if (sketch.isEmpty()) {
+      assertTrue(Double.isNaN(view.rank(0)));
+      return;
+    }
+    final double[] values = new double[801];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i - 400;
+    }
+    final double[] cdf = sketch.getCDF(values);
+    for (int i = 0; i < values.length; i++) {
+      assertEquals(view.rank(values[i]), cdf[i], id + " value=" + values[i]);
+    }
+  }
+
+  @Test
+  public void checkFormatValue() {
+    final double[] values = {0, -0.0, 1, -1, 0.005, 1.005, 0.125, -2.675, 0.07, 99.995, 1e-4,
+        123456.789, 1e7, 1e15, 1e300, -1e-300, Double.NaN, Double.NEGATIVE_INFINITY,
+        Double.MAX_VALUE};
+    for (double value : values) {
+      checkFormat(value);
+    }
+    final Random rand = new Random(1);
+    for (int i = 0; i < 100000; i++) {
+      final double value = rand.nextGaussian() * Math.pow(10, rand.nextInt(12) - 4);
+      final double rounded = Math.rint(value * 1000) / 1000;
+      checkFormat(value);
+      checkFormat(rounded);
+    }
+    //from 2^52 hundredths, value * 100 is a whole number whatever the decimals of the value
+    final double[] large = {4.9568236299005555E13, 6.4243121264684125E13, -4.9568236299005555E13,
+        (1L << 52) / 100.0, Math.nextDown((1L << 52) / 100.0), 9.007199254740991E13};
+    for (double value : large) {
+      checkFormat(value);
+    }
+    for (int i = 0; i < 100000; i++) {
+      final double value = rand.nextDouble() * Math.pow(10, 7 + rand.nextInt(10));
+      checkFormat(value);
+    }
+  }
+
+  private static void checkFormat(final double value) {
+    assertEquals(AbstractQuantilesCL.formatValue(value), String.format("%.2f", value), "" + value);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void checkBadRank() {
+    final UpdateDoublesSketch sketch = DoublesSketch.builder().build();
+    sketch.update(1);
+    QuantilesView.of(sketch).quantile(1.5);
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018, Yahoo! Inc. Licensed under the terms of the
+ * Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.memory.Memory;
+import com.yahoo.sketches.quantiles.DoublesSketch;
+import com.yahoo.sketches.quantiles.UpdateDoublesSketch;
+
+public class QuantilesWeightsTest {
+
+  @Test
+  public void checkRepeatedValueSameAsUpdates() {
+    for (int k : new int[] {16, 128}) {
+      for (long count : new long[] {1, 31, 32, 33, 255, 256, 1000, 12345}) {
+        final UpdateDoublesSketch sketch = DoublesSketch.builder().setK(k).build();
+        for (long i = 0; i < count; i++) {
+          sketch.update(2.5);
+        }
+        final Memory mem = QuantilesCL.repeatedValue(k, 2.5, count);
+        final byte[] bytes = new byte[(int) mem.getCapacity()];
+        mem.getByteArray(0, bytes, 0, bytes.length);
+        assertEquals(bytes, sketch.toByteArray(true), "k=" + k + " count=" + count);
+      }
+    }
+  }
+
+  @Test
+  public void checkWeightedSameAsExpanded() throws IOException {
+    final Random rand = new Random(1);
+    final StringBuilder weighted = new StringBuilder();
+    final StringBuilder expanded = new StringBuilder();
+    for (int bucket = 0; bucket < 100; bucket++) {
+      final int count = ((bucket % 10) == 0) ? 0 : rand.nextInt(2000);
+      weighted.append(bucket).append(',').append(count).append('\n');
+      for (int i = 0; i < count; i++) {
+        expanded.append(bucket).append('\n');
+      }
+    }
+    weighted.append("100\n"); //count 1
+    expanded.append("100\n");
+    for (String[] args : new String[][] {{"quant", "-k", "64"}, {"quant", "--kll"}}) {
+      final QuantilesView w = view(args, "-w", weighted.toString());
+      final QuantilesView e = view(args, null, expanded.toString());
+      assertEquals(w.getN(), e.getN());
+      assertEquals(w.getMaxValue(), 100.0);
+      for (int i = 0; i <= 100; i++) {
+        final double value = i + 0.5;
+        assertTrue(Math.abs(w.rank(value) - e.rank(value)) < 0.05, args[1] + " value=" + value);
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static QuantilesView view(final String[] args, final String option, final String lines)
+      throws IOException {
+    final AbstractQuantilesCL<Object> parser =
+        (AbstractQuantilesCL<Object>) SketchCommandLineParser.newParser(args);
+    final String[] all = new String[args.length + ((option == null) ? 0 : 1)];
+    System.arraycopy(args, 0, all, 0, args.length);
+    if (option != null) { all[args.length] = option; }
+    parser.parseCommandLine(all);
+    try (LineReader lr = LineReader.of(Channels.newChannel(new ByteArrayInputStream(
+        lines.getBytes(UTF_8))), 64)) {
+      return parser.view(parser.updateSketch(lr));
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2018, Yahoo! Inc. Licensed under the terms of the
+ * Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.yahoo.memory.Memory;
+import com.yahoo.sketches.hll.HllSketch;
+
+public class SketchServerTest {
+  private Path root;
+  private ServerSocket socket;
+  private String address;
+
+  @BeforeMethod
+  public void startServer() throws IOException {
+    root = Files.createTempDirectory("server").toRealPath();
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      sb.append(i).append('\n');
+    }
+    Files.write(root.resolve("data.txt"), sb.toString().getBytes(UTF_8));
+    socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    final Thread server = new Thread(() -> new SketchServer().serve(socket, root));
+    server.setDaemon(true);
+    server.start();
+    address = "localhost:" + socket.getLocalPort();
+  }
+
+  @AfterMethod
+  public void stopServer() throws IOException {
+    socket.close();
+    try (Stream<Path> files = Files.walk(root)) {
+      files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+
+  @Test
+  public void checkNamedSketches() throws IOException {
+    SketchClient.run(address, new String[] {"hll", "--name", "users", "-d", "data.txt"});
+    SketchClient.run(address, new String[] {"hll", "--name", "users", "-d", "data.txt",
+        "-o", "saved.bin"});
+    final HllSketch sketch =
+        HllSketch.heapify(Memory.wrap(Files.readAllBytes(root.resolve("saved.bin"))));
+    assertEquals(sketch.getEstimate(), 1000.0, 50.0); //same 1000 items twice
+    try {
+      SketchClient.run(address, new String[] {"quant", "--name", "users"});
+      fail();
+    } catch (final RuntimeException e) {
+      //expected: users is an HLL sketch
+    }
+  }
+
+  @Test
+  public void checkFilesOutsideRoot() throws IOException {
+    final Path outside = Files.createTempFile("server", ".bin");
+    try {
+      Files.delete(outside);
+      checkRejected("hll", "-d", root.resolve("data.txt").toString(), "-o", outside.toString());
+      checkRejected("hll", "-d", "data.txt", "-o", "../" + outside.getFileName());
+      checkRejected("hll", "-d", "data.txt", "-o", "sub/../../" + outside.getFileName());
+      assertFalse(Files.exists(outside));
+      Files.createSymbolicLink(root.resolve("link"), outside.getParent());
+      checkRejected("hll", "-d", "data.txt", "-o", "link/" + outside.getFileName());
+      assertFalse(Files.exists(outside));
+      //inside the root, an absolute name is allowed
+      SketchClient.run(address, new String[] {"hll", "-d", root.resolve("data.txt").toString(),
+          "-o", root.resolve("saved.bin").toString()});
+      assertEquals(HllSketch.heapify(Memory.wrap(Files.readAllBytes(root.resolve("saved.bin"))))
+          .getEstimate(), 1000.0, 50.0);
+    } finally {
+      Files.deleteIfExists(outside);
+    }
+  }
+
+  private void checkRejected(final String... command) {
+    try {
+      SketchClient.run(address, command);
+      fail();
+    } catch (final RuntimeException e) {
+      //expected
+    }
+  }
+
+  @Test
+  public void checkBadFrames() throws IOException {
+    checkClosed(new int[] {ServerProtocol.MAGIC, -1});
+    checkClosed(new int[] {ServerProtocol.MAGIC, Integer.MAX_VALUE});
+    checkClosed(new int[] {ServerProtocol.MAGIC, 1, -1});
+    checkClosed(new int[] {ServerProtocol.MAGIC, 1, Integer.MAX_VALUE});
+    checkClosed(new int[] {ServerProtocol.MAGIC - 1});
+    //an input chunk longer than CHUNK_BYTES ends the command's input with an error
+    try (Socket s = new Socket(InetAddress.getLoopbackAddress(), socket.getLocalPort())) {
+      final DataOutputStream out = new DataOutputStream(s.getOutputStream());
+      out.writeInt(ServerProtocol.MAGIC);
+      ServerProtocol.writeArgs(out, new String[] {"hll"});
+      out.writeInt(ServerProtocol.CHUNK_BYTES + 1);
+      out.flush();
+      assertEquals(readStatus(new DataInputStream(s.getInputStream())), 1);
+    }
+    //the server still runs commands
+    SketchClient.run(address, new String[] {"hll", "-d", "data.txt"});
+  }
+
+  /**
+   * Sends the given ints as a request and checks that the server closes the connection without
+   * running a command or allocating what the request claims.
+   */
+  private void checkClosed(final int[] request) throws IOException {
+    try (Socket s = new Socket(InetAddress.getLoopbackAddress(), socket.getLocalPort())) {
+      final DataOutputStream out = new DataOutputStream(s.getOutputStream());
+      for (int i : request) {
+        out.writeInt(i);
+      }
+      out.flush();
+      try {
+        readStatus(new DataInputStream(s.getInputStream()));
+        fail();
+      } catch (final EOFException e) {
+        //expected
+      }
+    }
+  }
+
+  private static int readStatus(final DataInputStream in) throws IOException {
+    while (true) {
+      final byte kind = in.readByte();
+      if (kind == ServerProtocol.END) { return in.readInt(); }
+      in.skipBytes(in.readInt());
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void checkNameWithoutServer() {
+    SketchCommandLineParser.main(new String[] {"hll", "--name", "users"});
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2018, Yahoo! Inc. Licensed under the terms of the
+ * Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.sketches.theta.Sketch;
+import com.yahoo.sketches.theta.UpdateSketch;
+
+public class SlidingWindowTest {
+
+  @Test
+  public void checkSlidingUnion() {
+    final ThetaCL parser = new ThetaCL();
+    parser.parseCommandLine(new String[] {"theta"});
+    for (int slots = 1; slots <= 6; slots++) {
+      final SlidingWindow<Sketch> window = new SlidingWindow<>(parser, slots);
+      assertNull(window.getResult());
+      for (int i = 0; i < 40; i++) {
+        final UpdateSketch sketch = UpdateSketch.builder().build();
+        for (int j = 0; j < 10; j++) { //10 distinct items per slot
+          sketch.update((i * 10) + j);
+        }
+        window.add(sketch, 10 + i);
+        final int live = Math.min(i + 1, slots);
+        assertEquals(window.getResult().getEstimate(), 10.0 * live); //exact below k
+        long lines = 0;
+        for (int k = (i - live) + 1; k <= i; k++) {
+          lines += 10 + k;
+        }
+        assertEquals(window.getLines(), lines);
+      }
+    }
+  }
+}
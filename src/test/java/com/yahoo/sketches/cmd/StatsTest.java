@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018, Yahoo! Inc. Licensed under the terms of the
+ * Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class StatsTest {
+
+  @Test
+  public void checkJson() throws IOException {
+    final Path data = Files.createTempFile("stats", ".txt");
+    final Path saved = Files.createTempFile("stats", ".bin");
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      sb.append(i).append('\n');
+    }
+    Files.write(data, sb.toString().getBytes(UTF_8));
+    try {
+      Map<String, Object> report = runWithStats("hll", "--stats", "json", "-d", data.toString(),
+          "-o", saved.toString());
+      assertEquals(report.get("command"),
+          "hll --stats json -d " + data + " -o " + saved);
+      final List<String> phases = new ArrayList<>();
+      for (Object phase : (List<?>) report.get("phases")) {
+        phases.add((String) ((Map<?, ?>) phase).get("phase"));
+      }
+      assertEquals(phases.toString(), "[update, query, save]");
+      final Map<?, ?> total = (Map<?, ?>) report.get("total");
+      assertEquals(total.get("lines"), 1000.0);
+      assertEquals(total.get("bytes"), (double) Files.size(data));
+      assertTrue((Double) total.get("wallMillis") >= 0);
+      assertEquals(report.get("sketchBytes"), (double) Files.size(saved));
+
+      report = runWithStats("hll", "--stats", "json", "-s", saved.toString());
+      assertEquals(((Map<?, ?>) report.get("total")).get("lines"), 0.0);
+      assertFalse(report.containsKey("sketchBytes")); //nothing saved
+    } finally {
+      Files.delete(data);
+      Files.delete(saved);
+    }
+  }
+
+  /**
+   * Runs the command and parses the json report, the last line of its stderr.
+   */
+  private static Map<String, Object> runWithStats(final String... args) {
+    final PrintStream stdErr = System.err;
+    final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(err, true));
+    try {
+      SketchCommandLineParser.main(args);
+    } finally {
+      System.setErr(stdErr);
+    }
+    final String[] lines = new String(err.toByteArray(), UTF_8).trim().split("\\R");
+    final JsonParser parser = new JsonParser(lines[lines.length - 1]);
+    @SuppressWarnings("unchecked")
+    final Map<String, Object> report = (Map<String, Object>) parser.value();
+    assertEquals(parser.pos, parser.json.length());
+    return report;
+  }
+
+  /**
+   * Parses the objects, arrays, strings and numbers of the report, numbers as doubles.
+   */
+  private static final class JsonParser {
+    final String json;
+    int pos;
+
+    JsonParser(final String json) {
+      this.json = json;
+    }
+
+    Object value() {
+      final char c = json.charAt(pos);
+      if (c == '{') {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        pos++;
+        while (json.charAt(pos) != '}') {
+          final String key = string();
+          expect(':');
+          map.put(key, value());
+          if (json.charAt(pos) == ',') { pos++; }
+        }
+        pos++;
+        return map;
+      }
+      if (c == '[') {
+        final List<Object> list = new ArrayList<>();
+        pos++;
+        while (json.charAt(pos) != ']') {
+          list.add(value());
+          if (json.charAt(pos) == ',') { pos++; }
+        }
+        pos++;
+        return list;
+      }
+      if (c == '"') { return string(); }
+      final int start = pos;
+      while ((pos < json.length()) && ("-+.eE".indexOf(json.charAt(pos)) >= 0
+          || Character.isDigit(json.charAt(pos)))) {
+        pos++;
+      }
+      return Double.parseDouble(json.substring(start, pos));
+    }
+
+    private String string() {
+      expect('"');
+      final StringBuilder sb = new StringBuilder();
+      for (char c = json.charAt(pos++); c != '"'; c = json.charAt(pos++)) {
+        sb.append((c == '\\') ? json.charAt(pos++) : c);
+      }
+      return sb.toString();
+    }
+
+    private void expect(final char c) {
+      assertEquals(json.charAt(pos++), c, json.substring(0, pos));
+    }
+  }
+}
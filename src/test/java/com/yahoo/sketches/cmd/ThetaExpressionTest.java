@@ -0,0 +1,233 @@
+/*
+ * Copyright 2018, Yahoo! Inc. Licensed under the terms of the
+ * Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.yahoo.sketches.theta.AnotB;
+import com.yahoo.sketches.theta.Intersection;
+import com.yahoo.sketches.theta.SetOperation;
+import com.yahoo.sketches.theta.SetOperationBuilder;
+import com.yahoo.sketches.theta.Sketch;
+import com.yahoo.sketches.theta.Union;
+import com.yahoo.sketches.theta.UpdateSketch;
+
+public class ThetaExpressionTest {
+  private final Map<String, Sketch> sketches = new HashMap<>();
+  private final List<String> loaded = new ArrayList<>();
+  private CountingBuilder builder;
+
+  @BeforeMethod
+  public void createSketches() {
+    sketches.put("a", sketch(0, 100));
+    sketches.put("b", sketch(50, 150));
+    sketches.put("c", sketch(90, 300));
+    sketches.put("d", sketch(0, 1000));
+    sketches.put("small1", sketch(0, 10));
+    sketches.put("small2", sketch(10, 20)); //disjoint from small1
+    sketches.put("empty", sketch(0, 0));
+    sketches.put("2018-06-01", sketch(5, 25));
+    sketches.put("a b", sketch(1000, 1010));
+    loaded.clear();
+    builder = new CountingBuilder();
+  }
+
+  @Test
+  public void checkPrecedence() {
+    //- and | apply from left to right
+    assertEquals(estimate("a | b - c"), minus(union("a", "b"), get("c")).getEstimate());
+    assertEquals(estimate("a - c | b"), union(minus(get("a"), get("c")), get("b")).getEstimate());
+    assertEquals(estimate("d - a - c"), minus(minus(get("d"), get("a")), get("c")).getEstimate());
+    //& binds tighter than both
+    assertEquals(estimate("a & b | c"), union(intersect("a", "b"), get("c")).getEstimate());
+    assertEquals(estimate("c | a & b"), union(get("c"), intersect("a", "b")).getEstimate());
+    assertEquals(estimate("d - a & b"), minus(get("d"), intersect("a", "b")).getEstimate());
+    assertEquals(estimate("(a | b) & c"), intersect(union("a", "b"), get("c")).getEstimate());
+    assertEquals(estimate("a ∪ b ∩ c − d"),
+        minus(union(get("a"), intersect("b", "c")), get("d")).getEstimate());
+  }
+
+  @Test
+  public void checkSameAsSetOperations() {
+    assertEquals(estimate("a | b | c"), union("a", "b", "c").getEstimate());
+    assertEquals(estimate("c & a & b"), intersect("a", "b", "c").getEstimate());
+    assertEquals(estimate("d - a"), minus(get("d"), get("a")).getEstimate());
+    assertEquals(estimate("(a | b) & (c - d)"),
+        intersect(union("a", "b"), minus(get("c"), get("d"))).getEstimate());
+    assertEquals(estimate("a & empty"), 0.0);
+    assertEquals(estimate("a | empty"), get("a").getEstimate());
+  }
+
+  @Test
+  public void checkSharedSubexpressions() {
+    final ThetaExpression expr = new ThetaExpression("(a | b) & c - (b | a) & d | (a|b)");
+    assertEquals(expr.names().toString(), "[a, b, c, d]");
+    final Sketch result = expr.evaluate(this::load, builder);
+    final Sketch ab = union("a", "b");
+    assertEquals(result.getEstimate(),
+        union(minus(intersect(ab, get("c")), intersect(ab, get("d"))), ab).getEstimate());
+    assertEquals(loaded.size(), 4, loaded.toString()); //each operand once
+    assertEquals(builder.unions, 2); //a | b, and the outer union
+    assertEquals(builder.intersections, 2);
+    //flattened and reordered, a & (b & a) is a & b
+    loaded.clear();
+    builder = new CountingBuilder();
+    assertEquals(evaluate("a & (b & a) | b & a"), intersect("a", "b").getEstimate());
+    assertEquals(loaded.size(), 2);
+    assertEquals(builder.intersections, 1);
+  }
+
+  @Test
+  public void checkEarlyStop() {
+    //small1 & small2 is empty, so c - d is not computed and d not loaded
+    assertEquals(evaluate("(c - d) & small1 & small2"), 0.0);
+    assertTrue(!loaded.contains("d"), loaded.toString());
+    assertEquals(builder.aNotBs, 0);
+    //an empty operand stops the intersection before the next one is intersected
+    loaded.clear();
+    assertEquals(evaluate("(c - d) & empty"), 0.0);
+    assertTrue(!loaded.contains("d"), loaded.toString());
+    //an empty left side of a difference
+    loaded.clear();
+    assertEquals(evaluate("empty - d"), 0.0);
+    assertEquals(loaded.toString(), "[empty]");
+    assertEquals(builder.aNotBs, 0);
+  }
+
+  @Test
+  public void checkQuoting() {
+    assertEquals(new ThetaExpression("'a b' | \"2018-06-01\"").names().toString(),
+        "[a b, 2018-06-01]");
+    assertEquals(estimate("'a b' | '2018-06-01'"), union("a b", "2018-06-01").getEstimate());
+    assertEquals(new ThetaExpression("'a|b' & \"it's\"").names().toString(), "[a|b, it's]");
+    //unquoted, a date is a difference
+    assertEquals(new ThetaExpression("2018-06-01").names().toString(), "[2018, 06, 01]");
+  }
+
+  @Test
+  public void checkErrors() {
+    checkError("a |", "position 3: unexpected end");
+    checkError("", "position 0: unexpected end");
+    checkError("(a", "position 2: expected ')'");
+    checkError("a | 'b", "position 4: unterminated quote");
+    checkError("a b", "position 2: unexpected 'b'");
+    checkError("a & )", "position 4: unexpected ')'");
+    checkError("(a | b))", "position 7: unexpected ')'");
+  }
+
+  private static void checkError(final String text, final String message) {
+    try {
+      new ThetaExpression(text);
+      fail(text);
+    } catch (final IllegalArgumentException e) {
+      assertEquals(e.getMessage(), "Bad --expr at " + message + ": " + text);
+    }
+  }
+
+  private double estimate(final String text) {
+    return new ThetaExpression(text).evaluate(this::get, SetOperation.builder()).getEstimate();
+  }
+
+  /**
+   * @return the estimate of the expression, loading its operands with {@link #load(String)} and
+   * building its set operations with the counting builder
+   */
+  private double evaluate(final String text) {
+    return new ThetaExpression(text).evaluate(this::load, builder).getEstimate();
+  }
+
+  private Sketch load(final String name) {
+    loaded.add(name);
+    return get(name);
+  }
+
+  private Sketch get(final String name) {
+    return sketches.get(name);
+  }
+
+  private Sketch union(final String... names) {
+    final Sketch[] operands = new Sketch[names.length];
+    for (int i = 0; i < names.length; i++) {
+      operands[i] = get(names[i]);
+    }
+    return union(operands);
+  }
+
+  private static Sketch union(final Sketch... operands) {
+    final Union union = SetOperation.builder().buildUnion();
+    for (Sketch sketch : operands) {
+      union.update(sketch);
+    }
+    return union.getResult();
+  }
+
+  private Sketch intersect(final String... names) {
+    final Sketch[] operands = new Sketch[names.length];
+    for (int i = 0; i < names.length; i++) {
+      operands[i] = get(names[i]);
+    }
+    return intersect(operands);
+  }
+
+  private static Sketch intersect(final Sketch... operands) {
+    final Intersection intersection = SetOperation.builder().buildIntersection();
+    for (Sketch sketch : operands) {
+      intersection.update(sketch);
+    }
+    return intersection.getResult();
+  }
+
+  private static Sketch minus(final Sketch a, final Sketch b) {
+    final AnotB aNotB = SetOperation.builder().buildANotB();
+    aNotB.update(a, b);
+    return aNotB.getResult();
+  }
+
+  /**
+   * @return a sketch of the integers from start, inclusive, to end, exclusive
+   */
+  private static Sketch sketch(final int start, final int end) {
+    final UpdateSketch sketch = UpdateSketch.builder().build();
+    for (int i = start; i < end; i++) {
+      sketch.update(i);
+    }
+    return sketch.compact();
+  }
+
+  private static final class CountingBuilder extends SetOperationBuilder {
+    int unions;
+    int intersections;
+    int aNotBs;
+
+    @Override
+    public Union buildUnion() {
+      unions++;
+      return super.buildUnion();
+    }
+
+    @Override
+    public Intersection buildIntersection() {
+      intersections++;
+      return super.buildIntersection();
+    }
+
+    @Override
+    public AnotB buildANotB() {
+      aNotBs++;
+      return super.buildANotB();
+    }
+  }
+}
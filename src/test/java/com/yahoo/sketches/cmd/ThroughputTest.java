@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018, Yahoo! Inc. Licensed under the terms of the
+ * Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * End-to-end throughput regression suite. Each command runs in its own JVM over a dataset made by
+ * "ds gen", with the heap capped at {@link #MAX_HEAP}, and must sustain a minimum number of lines
+ * per second, JVM startup included. The floors are several times below the rates of a single
+ * core, so that only real regressions fail. As they depend on the machine, the tests are in the
+ * "throughput" group, which runs only with "mvn test -P throughput".
+ */
+@Test(groups = "throughput")
+public class ThroughputTest {
+  private static final int LINES = 2000000;
+  private static final String MAX_HEAP = "-Xmx32m";
+  private Path dir;
+
+  @BeforeClass(groups = "throughput")
+  public void generateDatasets() throws IOException {
+    dir = Files.createTempDirectory("ds-throughput");
+    for (String dist : new String[] {"zipf", "ids", "lognormal", "weighted"}) {
+      SketchCommandLineParser.main(new String[] {"gen", dist, "-n", Integer.toString(LINES),
+          "-o", dir.resolve(dist + ".txt").toString()});
+    }
+  }
+
+  @AfterClass(groups = "throughput")
+  public void deleteDatasets() throws IOException {
+    for (File file : dir.toFile().listFiles()) {
+      Files.delete(file.toPath());
+    }
+    Files.delete(dir);
+  }
+
+  @DataProvider
+  public Object[][] commands() {
+    return new Object[][] {
+      //command, dataset, minimum lines per second
+      {"hll", "ids", 1000000},
+      {"theta", "ids", 1000000},
+      {"freq", "zipf", 500000},
+      {"freq -w", "weighted", 500000},
+      {"quant", "lognormal", 500000},
+      {"rsamp", "ids", 500000},
+      {"vsamp -w", "weighted", 500000},
+    };
+  }
+
+  @Test(dataProvider = "commands")
+  public void checkMinimumLinesPerSecond(final String command, final String dataset,
+      final int minLinesPerSecond) throws IOException, InterruptedException {
+    final List<String> args = new ArrayList<>(Arrays.asList(
+        Paths.get(System.getProperty("java.home"), "bin", "java").toString(), MAX_HEAP,
+        "-cp", System.getProperty("java.class.path"), SketchCommandLineParser.class.getName()));
+    args.addAll(Arrays.asList(command.split(" ")));
+    args.add("-d");
+    args.add(dir.resolve(dataset + ".txt").toString());
+    final File output = dir.resolve("output").toFile();
+    final long start = System.nanoTime();
+    final Process process = new ProcessBuilder(args).redirectErrorStream(true)
+        .redirectOutput(output).start();
+    final int status = process.waitFor();
+    final double linesPerSecond = (LINES * 1e9) / (System.nanoTime() - start);
+    assertEquals(status, 0,
+        command + ": " + new String(Files.readAllBytes(output.toPath()), UTF_8));
+    assertTrue(linesPerSecond >= minLinesPerSecond, String.format(
+        "%s: %.0f lines/s, expected at least %d", command, linesPerSecond, minLinesPerSecond));
+  }
+}
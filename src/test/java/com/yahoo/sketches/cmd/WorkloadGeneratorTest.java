@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018, Yahoo! Inc. Licensed under the terms of the
+ * Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.cmd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.sketches.cmd.WorkloadGenerator.Distribution;
+import com.yahoo.sketches.cmd.WorkloadGenerator.Workload;
+import com.yahoo.sketches.cmd.WorkloadGenerator.ZipfSampler;
+
+public class WorkloadGeneratorTest {
+
+  @Test
+  public void checkSameOutputForAnyThreadCount() throws IOException {
+    final int lines = (2 * WorkloadGenerator.CHUNK_LINES) + 17;
+    for (Distribution distribution : Distribution.values()) {
+      final Workload workload = new Workload(distribution, 42, 0, 1.1, 3, 1);
+      final byte[] one = generate(workload, lines, 1);
+      final byte[] four = generate(workload, lines, 4);
+      assertEquals(four, one, distribution.toString());
+      final String[] split = new String(one, UTF_8).split("\n");
+      assertEquals(split.length, lines);
+      for (String line : split) {
+        final String pattern = (distribution == Distribution.LOGNORMAL) ? "\\d+\\.\\d{3}"
+            : (distribution == Distribution.WEIGHTED) ? "[1-9]\\d*\t[1-9]\\d*" : "\\d+";
+        assertTrue(line.matches(pattern), distribution + ": " + line);
+      }
+    }
+    final Workload other = new Workload(Distribution.IDS, 43, 0, 1.1, 3, 1);
+    assertTrue(!new String(generate(other, 100, 1), UTF_8)
+        .equals(new String(generate(new Workload(Distribution.IDS, 42, 0, 1.1, 3, 1), 100, 1),
+            UTF_8)));
+  }
+
+  @Test
+  public void checkZipfFrequencies() {
+    final int n = 100;
+    final double exponent = 1.1;
+    final ZipfSampler zipf = new ZipfSampler(n, exponent);
+    final SplittableRandom random = new SplittableRandom(1);
+    final int[] counts = new int[n + 1];
+    final int samples = 1000000;
+    for (int i = 0; i < samples; i++) {
+      counts[zipf.sample(random)]++;
+    }
+    double norm = 0;
+    for (int k = 1; k <= n; k++) {
+      norm += Math.pow(k, -exponent);
+    }
+    for (int k : new int[] {1, 2, 10, 100}) {
+      final double expected = (samples * Math.pow(k, -exponent)) / norm;
+      assertEquals(counts[k], expected, 5 * Math.sqrt(expected), "rank " + k);
+    }
+    assertEquals(counts[0], 0);
+  }
+
+  private static byte[] generate(final Workload workload, final int lines, final int threads)
+      throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    WorkloadGenerator.write(workload, lines, threads, out);
+    return out.toByteArray();
+  }
+}
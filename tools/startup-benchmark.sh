@@ -0,0 +1,35 @@
+#!/bin/bash
+# Startup benchmark: the time from launching ds to its first byte of output, for "ds hll" on a
+# tiny file, run in target/ after "mvn package". Reports the minimum and median of RUNS runs
+# (default 20), after 3 warmup runs, for the plain jar and for ds, which also maps the
+# class-data-sharing archive if the build made one for this java.
+#
+# Usage: tools/startup-benchmark.sh [RUNS]
+set -e
+RUNS=${1:-20}
+DS=$(cd "$(dirname "$0")/.." && pwd)/ds
+cd "$(dirname "$0")/../target"
+JAR=$(ls sketches-cmd-*-with-shaded-core.jar | tail -1)
+TINY=$(mktemp)
+trap 'rm -f "$TINY"' EXIT
+printf 'a\nb\nc\n' > "$TINY"
+
+first_output_ms() {
+  local start
+  start=$(date +%s%N)
+  "$@" | { head -c 1 > /dev/null; echo $(( ($(date +%s%N) - start) / 1000000 )); cat > /dev/null; }
+}
+
+report() {
+  local label=$1 times
+  shift
+  for i in 1 2 3; do "$@" > /dev/null; done
+  times=$(for i in $(seq "$RUNS"); do first_output_ms "$@"; done | sort -n)
+  echo "$label: min $(echo "$times" | head -1) ms, median" \
+    "$(echo "$times" | sed -n "$(( (RUNS + 1) / 2 ))p") ms, $RUNS runs"
+}
+
+report "java -jar $JAR hll" java -jar "$JAR" hll -d "$TINY"
+report "ds hll" bash "$DS" hll -d "$TINY"
+ls ds-*.jsa 2> /dev/null \
+  || echo "no class-data-sharing archive, made by -P cds with java 13 or later"